@@ -0,0 +1,265 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.apache.commons.lang3.StringUtils;
+import org.lsc.exception.LscServiceConfigurationException;
+import org.lsc.plugins.connectors.msgraphapi.generated.NotificationsType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Receives the change notifications of the entries of all the tenants, and queues the
+ * changed entries to be synchronized.
+ *
+ * Nothing is started until the first change is asked for, so that synchronous tasks
+ * using the same service neither listen nor subscribe.
+ */
+public class ChangeNotifications implements NotificationReceiver.Listener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChangeNotifications.class);
+    public static final int DEFAULT_PORT = 8080;
+    /**
+     * The default interval between two checks of the queue when it is empty, in milliseconds
+     */
+    public static final int DEFAULT_INTERVAL = 1000;
+    private static final int MAX_CLIENT_STATE_LENGTH = 128;
+
+    private final String notificationURL;
+    private final String path;
+    private final int port;
+    private final String clientState;
+    private final long interval;
+    private final ChangeQueue queue;
+    private final Map<String, MsGraphApiDao> daos;
+    private final Map<String, SubscriptionManager> managers = new LinkedHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+        .setNameFormat("msgraphapi-subscriptions-%d")
+        .setDaemon(true)
+        .build());
+    private NotificationReceiver receiver;
+
+    private ChangeNotifications(NotificationsType configuration, String path, Map<String, MsGraphApiDao> daos, String instance) {
+        this.notificationURL = configuration.getNotificationURL().trim();
+        this.path = path;
+        this.port = Optional.ofNullable(configuration.getPort()).orElse(DEFAULT_PORT);
+        this.clientState = Optional.ofNullable(configuration.getClientState()).filter(StringUtils::isNotBlank)
+            .orElseGet(() -> defaultClientState(instance, notificationURL, daos.keySet()));
+        this.interval = Optional.ofNullable(configuration.getInterval()).orElse(DEFAULT_INTERVAL);
+        this.queue = new ChangeQueue(Optional.ofNullable(configuration.getQueueCapacity()).orElse(ChangeQueue.DEFAULT_CAPACITY));
+        this.daos = daos;
+        String changeType = Optional.ofNullable(configuration.getChangeType()).filter(StringUtils::isNotBlank)
+            .map(type -> type.replaceAll("\\s", "")).orElse(SubscriptionManager.DEFAULT_CHANGE_TYPE);
+        Duration expiration = Duration.ofMinutes(Optional.ofNullable(configuration.getExpiration()).orElse(SubscriptionManager.DEFAULT_EXPIRATION));
+        for (Map.Entry<String, MsGraphApiDao> tenantDao : daos.entrySet()) {
+            MsGraphApiDao dao = tenantDao.getValue();
+            SubscriptionManager.Subscriptions subscriptions = new SubscriptionManager.Subscriptions() {
+                @Override
+                public List<Map<String, Object>> list() {
+                    return dao.getSubscriptions();
+                }
+
+                @Override
+                public Map<String, Object> create(Map<String, Object> subscription) {
+                    return dao.createSubscription(subscription);
+                }
+
+                @Override
+                public void delete(String id) {
+                    dao.deleteSubscription(id);
+                }
+            };
+            managers.put(tenantDao.getKey(), new SubscriptionManager(tenantDao.getKey(), subscriptions, notificationURL, dao.getSubscriptionResource(),
+                changeType, clientState, expiration, scheduler, Clock.systemUTC()));
+        }
+    }
+
+    /**
+     * @param daos the DAO of each tenant
+     * @param instance tells this instance apart from other ones subscribing on the same
+     * URL, it is only used when no client state is configured
+     * @return the change notifications, if they are configured
+     */
+    public static Optional<ChangeNotifications> fromConfiguration(NotificationsType configuration, Map<String, MsGraphApiDao> daos, String instance)
+            throws LscServiceConfigurationException {
+        if (configuration == null) {
+            return Optional.empty();
+        }
+        if (StringUtils.isBlank(configuration.getNotificationURL())) {
+            throw new LscServiceConfigurationException("The notifications have no notification URL");
+        }
+        URI uri;
+        try {
+            uri = new URI(configuration.getNotificationURL().trim());
+        } catch (URISyntaxException e) {
+            throw new LscServiceConfigurationException("Invalid notification URL: " + configuration.getNotificationURL(), e);
+        }
+        if (!uri.isAbsolute()) {
+            throw new LscServiceConfigurationException("The notification URL must be absolute: " + configuration.getNotificationURL());
+        }
+        if (Optional.ofNullable(configuration.getPort()).orElse(DEFAULT_PORT) < 0
+                || Optional.ofNullable(configuration.getExpiration()).orElse(SubscriptionManager.DEFAULT_EXPIRATION) <= 0
+                || Optional.ofNullable(configuration.getExpiration()).orElse(SubscriptionManager.DEFAULT_EXPIRATION) > SubscriptionManager.MAX_EXPIRATION
+                || Optional.ofNullable(configuration.getQueueCapacity()).orElse(ChangeQueue.DEFAULT_CAPACITY) <= 0
+                || Optional.ofNullable(configuration.getInterval()).orElse(DEFAULT_INTERVAL) <= 0) {
+            throw new LscServiceConfigurationException("Invalid notifications configuration: the port must not be negative, the expiration must be between 1 and "
+                + SubscriptionManager.MAX_EXPIRATION + " minutes, the other values must be positive");
+        }
+        if (configuration.getClientState() != null && configuration.getClientState().length() > MAX_CLIENT_STATE_LENGTH) {
+            throw new LscServiceConfigurationException("The client state of the notifications cannot be longer than " + MAX_CLIENT_STATE_LENGTH + " characters");
+        }
+        String path = StringUtils.defaultIfEmpty(uri.getRawPath(), "/");
+        return Optional.of(new ChangeNotifications(configuration, path, daos, instance));
+    }
+
+    /**
+     * Derives the client state when none is configured. It is the same across runs, so
+     * that the subscriptions of the previous run are found and deleted, and stays a
+     * secret as long as the instance holds one, such as the secret of the application.
+     */
+    @VisibleForTesting
+    static String defaultClientState(String instance, String notificationURL, Collection<String> tenants) {
+        return Hashing.sha256().hashString(instance + "\n" + notificationURL + "\n" + String.join(",", tenants), StandardCharsets.UTF_8).toString();
+    }
+
+    /**
+     * Starts receiving notifications and subscribes to them, on first call.
+     */
+    public synchronized void start() throws IOException {
+        if (receiver != null) {
+            return;
+        }
+        receiver = new NotificationReceiver(new InetSocketAddress(port), path, clientState, new ObjectMapper(), this);
+        managers.values().forEach(SubscriptionManager::start);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "msgraphapi-subscriptions-shutdown"));
+    }
+
+    /**
+     * @return the next changed entry, if any
+     */
+    public Optional<ChangeQueue.Change> poll() {
+        return queue.poll();
+    }
+
+    /**
+     * Queues again a change which could not be synchronized.
+     */
+    public void retry(ChangeQueue.Change change) {
+        if (!queue.offer(change)) {
+            LOGGER.warn("The change of {} has been lost, the queue is full", change);
+        }
+    }
+
+    /**
+     * @return the interval between two checks of the queue when it is empty, in milliseconds
+     */
+    public long getInterval() {
+        return interval;
+    }
+
+    @Override
+    public boolean onChange(String subscriptionId, String id, String changeType) {
+        Optional<String> tenant = tenantOf(subscriptionId);
+        if (!tenant.isPresent()) {
+            LOGGER.debug("Ignoring a notification of the unknown subscription {}", subscriptionId);
+            return true;
+        }
+        daos.get(tenant.get()).invalidate(id);
+        if (!queue.offer(new ChangeQueue.Change(tenant.get(), id))) {
+            LOGGER.warn("The queue of changes is full, the notifications are refused until it has room again");
+            return false;
+        }
+        LOGGER.debug("{} of {} in {} queued", changeType, id, tenant.get());
+        return true;
+    }
+
+    @Override
+    public void onLifecycleEvent(String subscriptionId, String lifecycleEvent) {
+        tenantOf(subscriptionId).ifPresent(tenant -> managers.get(tenant).onLifecycleEvent(subscriptionId, lifecycleEvent));
+    }
+
+    /**
+     * A notification may be received before the creation of its subscription returns:
+     * with a single tenant, the notifications with the client state are its own.
+     */
+    private Optional<String> tenantOf(String subscriptionId) {
+        if (managers.size() == 1) {
+            return Optional.of(managers.keySet().iterator().next());
+        }
+        return managers.entrySet().stream()
+            .filter(manager -> manager.getValue().owns(subscriptionId))
+            .map(Map.Entry::getKey)
+            .findFirst();
+    }
+
+    /**
+     * Deletes the subscriptions and stops receiving notifications.
+     */
+    public synchronized void close() {
+        managers.values().forEach(SubscriptionManager::close);
+        if (receiver != null) {
+            receiver.close();
+            receiver = null;
+        }
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * The entries notified as changed, waiting to be synchronized.
+ *
+ * An entry is queued once, however many times it changes before it is synchronized:
+ * its bean is read when it is synchronized, with all its changes.
+ */
+public class ChangeQueue {
+    public static final int DEFAULT_CAPACITY = 100_000;
+
+    /**
+     * A changed entry of a tenant
+     */
+    public static class Change {
+        private final String tenant;
+        private final String id;
+
+        public Change(String tenant, String id) {
+            this.tenant = tenant;
+            this.id = id;
+        }
+
+        public String getTenant() {
+            return tenant;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        private String key() {
+            return tenant + "/" + id;
+        }
+
+        @Override
+        public String toString() {
+            return id + "@" + tenant;
+        }
+    }
+
+    private final BlockingQueue<Change> changes;
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    public ChangeQueue(int capacity) {
+        this.changes = new LinkedBlockingQueue<>(capacity);
+    }
+
+    /**
+     * @return false if the queue is full and the change has not been queued
+     */
+    public boolean offer(Change change) {
+        if (!pending.add(change.key())) {
+            return true;
+        }
+        if (!changes.offer(change)) {
+            pending.remove(change.key());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the oldest change, if any
+     */
+    public Optional<Change> poll() {
+        Change change = changes.poll();
+        if (change == null) {
+            return Optional.empty();
+        }
+        // Changes notified from now on are queued again
+        pending.remove(change.key());
+        return Optional.of(change);
+    }
+
+    public int size() {
+        return changes.size();
+    }
+}
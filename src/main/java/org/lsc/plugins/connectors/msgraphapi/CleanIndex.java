@@ -0,0 +1,87 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import java.util.Optional;
+
+/**
+ * What the clean phase knows of the entries of a tenant without querying them: the
+ * pivots of the last enumeration, and the pivots of the recently deleted entries.
+ */
+public class CleanIndex {
+    private final PivotIndex enumerated;
+    private final PivotIndex deleted;
+    private final long builtAt;
+
+    public CleanIndex(PivotIndex enumerated, PivotIndex deleted, long builtAt) {
+        this.enumerated = enumerated;
+        this.deleted = deleted;
+        this.builtAt = builtAt;
+    }
+
+    /**
+     * @return the id of the entry of this pivot, if it has been enumerated
+     */
+    public Optional<String> getId(String pivotValue) {
+        return enumerated.getId(pivotValue);
+    }
+
+    /**
+     * @return true if the entry of this pivot has been deleted, and not enumerated since
+     */
+    public boolean isDeleted(String pivotValue) {
+        return !enumerated.contains(pivotValue) && deleted.contains(pivotValue);
+    }
+
+    /**
+     * @return when the index has been built, as given by System.nanoTime()
+     */
+    public long getBuiltAt() {
+        return builtAt;
+    }
+
+    @Override
+    public String toString() {
+        return enumerated.size() + " enumerated and " + deleted.size() + " deleted entries";
+    }
+}
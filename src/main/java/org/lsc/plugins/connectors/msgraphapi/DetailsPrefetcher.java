@@ -0,0 +1,200 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import jakarta.ws.rs.NotFoundException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Reads entry details ahead of LSC.
+ *
+ * LSC asks for the details of the entries in the order the pivots were returned by
+ * getListPivots(). Once this order is known, the details of the next entries are
+ * fetched concurrently into a buffer bounded by the window size, so that most calls
+ * to {@link #get(String)} are served from memory.
+ *
+ * Requests arriving out of order (several LSC threads, retries) are supported: the
+ * window is moved to the requested position, and ids which are not buffered are
+ * loaded directly.
+ *
+ * The details are read by the prefetch threads of the connection, shared by its
+ * services and stopped when it is released, see {@link #newExecutor()}.
+ */
+public class DetailsPrefetcher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DetailsPrefetcher.class);
+    public static final int MAX_THREADS = 16;
+
+    private final Function<String, Map<String, Object>> loader;
+    private final int window;
+    private final ExecutorService executor;
+
+    private final Object lock = new Object();
+    private List<String> order = ImmutableList.of();
+    private Map<String, Integer> positions = Collections.emptyMap();
+    private int cursor;
+    private final LinkedHashMap<String, CompletableFuture<Map<String, Object>>> buffer = new LinkedHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public DetailsPrefetcher(Function<String, Map<String, Object>> loader, int window, ExecutorService executor) {
+        if (window < 1) {
+            throw new IllegalArgumentException("The prefetch window must be positive: " + window);
+        }
+        this.loader = loader;
+        this.window = window;
+        this.executor = executor;
+    }
+
+    /**
+     * @return an executor of at most {@link #MAX_THREADS} threads, which are stopped when
+     * they stay idle. A prefetcher never has more loads in progress than its window.
+     */
+    public static ExecutorService newExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), new ThreadFactoryBuilder()
+                .setNameFormat("msgraphapi-prefetch-%d")
+                .setDaemon(true)
+                .build());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Defines the order in which the ids will be requested and starts reading ahead.
+     * Any previously buffered details are discarded.
+     */
+    public void setOrder(List<String> ids) {
+        synchronized (lock) {
+            buffer.values().forEach(future -> future.cancel(true));
+            buffer.clear();
+            order = ImmutableList.copyOf(ids);
+            Map<String, Integer> newPositions = new HashMap<>(ids.size() * 4 / 3 + 1);
+            for (int i = 0; i < order.size(); i++) {
+                newPositions.putIfAbsent(order.get(i), i);
+            }
+            positions = newPositions;
+            cursor = 0;
+            fill(0);
+        }
+    }
+
+    public Map<String, Object> get(String id) {
+        CompletableFuture<Map<String, Object>> future;
+        synchronized (lock) {
+            future = buffer.remove(id);
+            Integer position = positions.get(id);
+            if (position != null) {
+                moveTo(position + 1);
+            }
+        }
+        if (future == null) {
+            misses.incrementAndGet();
+            return loader.apply(id);
+        }
+        hits.incrementAndGet();
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof NotFoundException) {
+                throw (NotFoundException) e.getCause();
+            }
+            LOGGER.debug("Prefetching {} failed ({}), loading it again", id, e.getCause());
+            return loader.apply(id);
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private void moveTo(int position) {
+        if (position > cursor) {
+            cursor = position;
+        }
+        // Entries far behind the requested position will most likely never be asked for:
+        // their loads still queued are cancelled
+        Iterator<Map.Entry<String, CompletableFuture<Map<String, Object>>>> entries = buffer.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String, CompletableFuture<Map<String, Object>>> entry = entries.next();
+            if (positions.get(entry.getKey()) < position - window) {
+                entry.getValue().cancel(true);
+                entries.remove();
+            }
+        }
+        fill(position);
+    }
+
+    private void fill(int position) {
+        while (cursor < order.size() && cursor < position + window && buffer.size() < window) {
+            String id = order.get(cursor++);
+            if (!buffer.containsKey(id)) {
+                buffer.put(id, CompletableFuture.supplyAsync(() -> loader.apply(id), executor));
+            }
+        }
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import jakarta.ws.rs.WebApplicationException;
+
+import org.lsc.exception.LscServiceConfigurationException;
+import org.lsc.plugins.connectors.msgraphapi.generated.ResilienceType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A circuit breaker and a bulkhead around the requests to a class of endpoints: token,
+ * list or details.
+ *
+ * The bulkhead limits the number of concurrent requests, so that slow requests to one
+ * class of endpoints cannot hold all the threads needed by the others. The circuit
+ * breaker opens after consecutive failures: requests then fail fast, without being
+ * sent, until a single trial request succeeds after the open duration.
+ */
+public class EndpointGuard {
+    public static final int DEFAULT_CONNECT_TIMEOUT = 10_000;
+    public static final int DEFAULT_READ_TIMEOUT = 60_000;
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    public static final int DEFAULT_OPEN_DURATION = 30;
+    public static final int DEFAULT_TOKEN_CONCURRENCY = 2;
+    public static final int DEFAULT_LIST_CONCURRENCY = 8;
+    public static final int DEFAULT_DETAILS_CONCURRENCY = 32;
+    private static final Logger LOGGER = LoggerFactory.getLogger(EndpointGuard.class);
+
+    /**
+     * A request, which may throw checked exceptions
+     */
+    @FunctionalInterface
+    public interface Call<T, E extends Exception> {
+        T call() throws E;
+    }
+
+    private enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final String name;
+    private final Semaphore bulkhead;
+    private final long acquireTimeout;
+    private final int failureThreshold;
+    private final long openDuration;
+    private final LongSupplier nanoTime;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+
+    public EndpointGuard(String name, int concurrency, long acquireTimeout, int failureThreshold, long openDuration, LongSupplier nanoTime) {
+        this.name = name;
+        this.bulkhead = new Semaphore(concurrency, true);
+        this.acquireTimeout = acquireTimeout;
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * @return the guard of each endpoint: list and count requests share the list guard,
+     * details and photo requests the details guard
+     */
+    public static Map<MsGraphApiEndpoint, EndpointGuard> fromConfiguration(ResilienceType configuration) throws LscServiceConfigurationException {
+        Optional<ResilienceType> resilience = Optional.ofNullable(configuration);
+        int readTimeout = readTimeout(configuration);
+        int failureThreshold = resilience.map(ResilienceType::getFailureThreshold).orElse(DEFAULT_FAILURE_THRESHOLD);
+        int openDuration = resilience.map(ResilienceType::getOpenDuration).orElse(DEFAULT_OPEN_DURATION);
+        int tokenConcurrency = resilience.map(ResilienceType::getTokenConcurrency).orElse(DEFAULT_TOKEN_CONCURRENCY);
+        int listConcurrency = resilience.map(ResilienceType::getListConcurrency).orElse(DEFAULT_LIST_CONCURRENCY);
+        int detailsConcurrency = resilience.map(ResilienceType::getDetailsConcurrency).orElse(DEFAULT_DETAILS_CONCURRENCY);
+        if (connectTimeout(configuration) <= 0 || readTimeout <= 0 || failureThreshold <= 0 || openDuration <= 0
+                || tokenConcurrency <= 0 || listConcurrency <= 0 || detailsConcurrency <= 0) {
+            throw new LscServiceConfigurationException("Invalid resilience configuration: all the values must be positive");
+        }
+        // Waiting for a slot longer than a request may last is pointless
+        long acquireTimeout = TimeUnit.MILLISECONDS.toNanos(readTimeout);
+        long open = TimeUnit.SECONDS.toNanos(openDuration);
+        EndpointGuard token = new EndpointGuard("token", tokenConcurrency, acquireTimeout, failureThreshold, open, System::nanoTime);
+        EndpointGuard list = new EndpointGuard("list", listConcurrency, acquireTimeout, failureThreshold, open, System::nanoTime);
+        EndpointGuard details = new EndpointGuard("details", detailsConcurrency, acquireTimeout, failureThreshold, open, System::nanoTime);
+        Map<MsGraphApiEndpoint, EndpointGuard> guards = new EnumMap<>(MsGraphApiEndpoint.class);
+        guards.put(MsGraphApiEndpoint.TOKEN, token);
+        guards.put(MsGraphApiEndpoint.LIST, list);
+        guards.put(MsGraphApiEndpoint.COUNT, list);
+        guards.put(MsGraphApiEndpoint.DETAILS, details);
+        guards.put(MsGraphApiEndpoint.PHOTO, details);
+        guards.put(MsGraphApiEndpoint.OTHER, details);
+        return Collections.unmodifiableMap(guards);
+    }
+
+    /**
+     * @return the connect timeout of the requests, in milliseconds
+     */
+    public static int connectTimeout(ResilienceType configuration) {
+        return Optional.ofNullable(configuration).map(ResilienceType::getConnectTimeout).orElse(DEFAULT_CONNECT_TIMEOUT);
+    }
+
+    /**
+     * @return the read timeout of the requests, in milliseconds
+     */
+    public static int readTimeout(ResilienceType configuration) {
+        return Optional.ofNullable(configuration).map(ResilienceType::getReadTimeout).orElse(DEFAULT_READ_TIMEOUT);
+    }
+
+    /**
+     * Sends a request through the bulkhead and the circuit breaker. Any failure but a
+     * client error response, such as not found or throttled, counts as a failure of the
+     * endpoint.
+     *
+     * @throws EndpointUnavailableException if the circuit breaker is open, or no slot is
+     * available in time
+     */
+    public <T, E extends Exception> T execute(Call<T, E> call) throws E {
+        acquirePermission();
+        boolean acquired = false;
+        try {
+            acquired = bulkhead.tryAcquire(acquireTimeout, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!acquired) {
+            // The trial request of a half open breaker has not been sent
+            onFailure(false);
+            throw new EndpointUnavailableException("Too many pending " + name + " requests");
+        }
+        try {
+            T result = call.call();
+            onSuccess();
+            return result;
+        } catch (WebApplicationException e) {
+            if (e.getResponse() != null && e.getResponse().getStatus() < 500) {
+                onSuccess();
+            } else {
+                onFailure(true);
+            }
+            throw e;
+        } catch (ThrottledException e) {
+            // The endpoint works, only the registration has to wait
+            onSuccess();
+            throw e;
+        } catch (Exception e) {
+            // A request cancelled by its caller, such as the loser of a hedge, says nothing of the endpoint
+            onFailure(!Thread.currentThread().isInterrupted());
+            throw e;
+        } finally {
+            bulkhead.release();
+        }
+    }
+
+    private synchronized void acquirePermission() {
+        switch (state) {
+            case OPEN:
+                if (nanoTime.getAsLong() - openedAt < openDuration) {
+                    throw new EndpointUnavailableException("The circuit breaker of the " + name + " requests is open");
+                }
+                LOGGER.info("Trying the {} requests again", name);
+                state = State.HALF_OPEN;
+                break;
+            case HALF_OPEN:
+                throw new EndpointUnavailableException("The circuit breaker of the " + name + " requests is half open");
+            case CLOSED:
+            default:
+                break;
+        }
+    }
+
+    private synchronized void onSuccess() {
+        if (state != State.CLOSED) {
+            LOGGER.info("The circuit breaker of the {} requests is closed", name);
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+    }
+
+    private synchronized void onFailure(boolean sent) {
+        if (state == State.HALF_OPEN) {
+            open();
+        } else if (sent && ++consecutiveFailures >= failureThreshold && state == State.CLOSED) {
+            LOGGER.warn("The circuit breaker of the {} requests is open after {} consecutive failures", name, consecutiveFailures);
+            open();
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = nanoTime.getAsLong();
+    }
+
+    public synchronized boolean isOpen() {
+        return state != State.CLOSED;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getAvailableSlots() {
+        return bulkhead.availablePermits();
+    }
+}
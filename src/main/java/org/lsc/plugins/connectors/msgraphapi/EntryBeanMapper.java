@@ -0,0 +1,168 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import static org.lsc.plugins.connectors.msgraphapi.MsGraphApiDao.TENANT;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.lsc.LscDatasets;
+import org.lsc.beans.IBean;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Builds the beans handed over to LSC from the entries read from the API, or from a
+ * snapshot of it.
+ */
+public class EntryBeanMapper {
+    private final Class<IBean> beanClass;
+    /**
+     * The attributes whose values are shared between beans
+     */
+    private final Set<String> deduplicatedAttributes;
+
+    public EntryBeanMapper(Class<IBean> beanClass, Set<String> deduplicatedAttributes) {
+        this.beanClass = beanClass;
+        this.deduplicatedAttributes = deduplicatedAttributes;
+    }
+
+    /**
+     * @return the attributes of a comma separated list
+     */
+    public static Set<String> parseAttributes(String attributes) {
+        return Optional.ofNullable(attributes)
+            .map(list -> Arrays.stream(list.split(","))
+                .map(String::trim)
+                .filter(attribute -> !attribute.isEmpty())
+                .collect(Collectors.toSet()))
+            .orElse(Collections.emptySet());
+    }
+
+    public IBean toBean(String idValue, Map<String, Object> user, Optional<String> tenant) throws InstantiationException, IllegalAccessException {
+        BeanMappingEvent event = new BeanMappingEvent();
+        event.begin();
+        IBean bean = beanClass.newInstance();
+
+        bean.setMainIdentifier(idValue);
+
+        LscDatasets datasets = new LscDatasets();
+        /* In new version, graphApi uses LinkedHashMap values
+         * like: Key={childKey=value, childKey2=value2, ...}
+         * Then in this case you could retrieve in bean
+         * attribute values as "<Key>/<childKey>" = "<childValue>".
+         * ex: "onPremisesExtensionAttributes/extensionAttribute1" = "toto"
+        */
+        for (Map.Entry entry : user.entrySet()) {
+            if (entry.getValue() instanceof java.util.LinkedHashMap) {
+                LinkedHashMap innerMap = (LinkedHashMap) entry.getValue();
+                Set<String> keys = innerMap.keySet();
+                for ( String key : keys ) {
+                    String name = StringDeduplicator.KEYS.deduplicate(entry.getKey() + "/" + key);
+                    datasets.put(name,
+                        innerMap.get(key) == null ? new LinkedHashSet<>() : deduplicateValue(name, innerMap.get(key)));
+                }
+            }
+            else {
+                String name = StringDeduplicator.KEYS.deduplicate((String) entry.getKey());
+                datasets.put(name,
+                    entry.getValue() == null ? new LinkedHashSet<>() : deduplicateValue(name, entry.getValue()));
+            }
+        }
+        tenant.ifPresent(value -> datasets.put(TENANT, value));
+
+        bean.setDatasets(datasets);
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.setId(idValue);
+            event.setAttributes(user.size());
+            event.commit();
+        }
+        return bean;
+    }
+
+    /**
+     * Values of low cardinality attributes, such as department or city, repeat across
+     * many entries: they are shared instead of being kept once per bean.
+     */
+    private Object deduplicateValue(String attribute, Object value) {
+        if (!deduplicatedAttributes.contains(attribute)) {
+            return value;
+        }
+        if (value instanceof String) {
+            return StringDeduplicator.VALUES.deduplicate((String) value);
+        }
+        if (value instanceof Collection) {
+            List<Object> values = new ArrayList<>(((Collection<?>) value).size());
+            for (Object element : (Collection<?>) value) {
+                values.add(element instanceof String ? StringDeduplicator.VALUES.deduplicate((String) element) : element);
+            }
+            return values;
+        }
+        return value;
+    }
+
+    /**
+     * @return a bean with the id only, enough for LSC to know that the entry exists
+     */
+    public IBean toIdBean(String idValue, Optional<String> tenant) throws InstantiationException, IllegalAccessException {
+        IBean bean = beanClass.newInstance();
+
+        bean.setMainIdentifier(idValue);
+        LscDatasets datasets = new LscDatasets(ImmutableMap.of("id", idValue));
+        tenant.ifPresent(value -> datasets.put(TENANT, value));
+        bean.setDatasets(datasets);
+        return bean;
+    }
+}
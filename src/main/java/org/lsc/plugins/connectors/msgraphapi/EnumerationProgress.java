@@ -0,0 +1,133 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The progress of the enumeration of a collection: pages fetched, entries per second
+ * and, when the total number of entries is known, the estimated time remaining.
+ */
+public class EnumerationProgress {
+    private final String name;
+    private final long startedAt;
+    private volatile long total = -1;
+    private final AtomicLong pages = new AtomicLong();
+    private final AtomicLong entries = new AtomicLong();
+    private volatile long finishedAt;
+
+    public EnumerationProgress(String name, OptionalLong total) {
+        this.name = name;
+        this.startedAt = System.nanoTime();
+        total.ifPresent(value -> this.total = value);
+    }
+
+    /**
+     * Sets the total number of entries, if it was not known yet.
+     */
+    public void setTotalIfUnknown(long total) {
+        if (this.total < 0 && total >= 0) {
+            this.total = total;
+        }
+    }
+
+    public void onPage(int pageEntries) {
+        pages.incrementAndGet();
+        entries.addAndGet(pageEntries);
+    }
+
+    public void onFinished() {
+        finishedAt = System.nanoTime();
+    }
+
+    public OptionalLong getTotal() {
+        return total < 0 ? OptionalLong.empty() : OptionalLong.of(total);
+    }
+
+    public long getPages() {
+        return pages.get();
+    }
+
+    public long getEntries() {
+        return entries.get();
+    }
+
+    public boolean isFinished() {
+        return finishedAt != 0;
+    }
+
+    public Duration getElapsed() {
+        return Duration.ofNanos((isFinished() ? finishedAt : System.nanoTime()) - startedAt);
+    }
+
+    public double getEntriesPerSecond() {
+        long elapsed = getElapsed().toNanos();
+        return elapsed == 0 ? 0 : entries.get() * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+    }
+
+    public Optional<Duration> getEstimatedTimeRemaining() {
+        double entriesPerSecond = getEntriesPerSecond();
+        if (total < 0 || entriesPerSecond == 0) {
+            return Optional.empty();
+        }
+        long remaining = Math.max(0, total - entries.get());
+        return Optional.of(Duration.ofMillis((long) (remaining * 1000 / entriesPerSecond)));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder progress = new StringBuilder(name)
+            .append(": ").append(entries.get());
+        getTotal().ifPresent(value -> progress.append("/").append(value));
+        progress.append(" entries in ").append(pages.get()).append(" pages, ")
+            .append(String.format("%.1f", getEntriesPerSecond())).append(" entries/s");
+        getEstimatedTimeRemaining()
+            .filter(eta -> !isFinished())
+            .ifPresent(eta -> progress.append(", ").append(eta.getSeconds()).append("s remaining"));
+        return progress.toString();
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import jakarta.ws.rs.client.WebTarget;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Java Flight Recorder event for each HTTP exchange with the API, from the request
+ * to the end of the reading of the response.
+ */
+@Name("org.lsc.msgraphapi.GraphRequest")
+@Label("Graph Request")
+@Description("An HTTP exchange with Microsoft Graph API")
+@Category({"LSC", "Microsoft Graph API"})
+@StackTrace(false)
+public class GraphRequestEvent extends jdk.jfr.Event {
+    /**
+     * The request property holding the event of the exchange
+     */
+    public static final String PROPERTY = GraphRequestEvent.class.getName();
+
+    @Label("Endpoint")
+    String endpoint;
+
+    @Label("Path")
+    String path;
+
+    @Label("Status")
+    int status;
+
+    @Label("Bytes Received")
+    @Description("The bytes received on the wire, before decompression")
+    @DataAmount
+    long bytes;
+
+    @Label("Throttled")
+    boolean throttled;
+
+    @Label("Client Request Id")
+    String clientRequestId;
+
+    @Label("Request Id")
+    @Description("The request-id returned by Graph")
+    String requestId;
+
+    /**
+     * @return a started event for a request to this target
+     */
+    public static GraphRequestEvent start(MsGraphApiEndpoint endpoint, WebTarget target) {
+        GraphRequestEvent event = new GraphRequestEvent();
+        if (event.isEnabled()) {
+            event.endpoint = endpoint.name();
+            event.path = target.getUri().getPath();
+            event.begin();
+        }
+        return event;
+    }
+
+    public void setStatus(int status) {
+        this.status = status;
+        this.throttled = status == 429;
+    }
+
+    public void setRequestIds(String clientRequestId, String requestId) {
+        this.clientRequestId = clientRequestId;
+        this.requestId = requestId;
+    }
+
+    public void addBytes(long received) {
+        bytes += received;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import static org.lsc.plugins.connectors.msgraphapi.MsGraphApiDao.ID;
+import static org.lsc.plugins.connectors.msgraphapi.MsGraphApiDao.MANAGER;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Replaces the manager expanded in the details of an entry by the pivot of the manager.
+ *
+ * The manager is resolved through the pivots of the last enumeration, so that no
+ * request is sent for it. The manager of each entry, as expanded in the pages of the
+ * enumeration, is kept for the details which do not carry it, and the pivot expanded
+ * in the details is used for managers out of the enumeration.
+ */
+public class ManagerResolver {
+    private final String pivot;
+    private volatile Map<String, String> pivotById = Collections.emptyMap();
+    private volatile Map<String, String> managerIdById = Collections.emptyMap();
+
+    public ManagerResolver(String pivot) {
+        this.pivot = pivot;
+    }
+
+    /**
+     * Sets the pivots and managers of the entries of the last enumeration
+     */
+    public void setEnumeration(Map<String, String> pivotById, Map<String, String> managerIdById) {
+        this.pivotById = pivotById;
+        this.managerIdById = managerIdById;
+    }
+
+    /**
+     * @return the details of the entry, with the pivot of its manager as manager, or no
+     * value if it has no manager
+     */
+    public Map<String, Object> resolve(String id, Map<String, Object> details) {
+        Map<?, ?> expanded = details.get(MANAGER) instanceof Map ? (Map<?, ?>) details.get(MANAGER) : Collections.emptyMap();
+        Optional<String> managerId = Optional.ofNullable(Objects.toString(expanded.get(ID), null))
+            .or(() -> Optional.ofNullable(managerIdById.get(id)));
+        String managerPivot = managerId
+            .map(pivotById::get)
+            .or(() -> Optional.ofNullable(Objects.toString(expanded.get(pivot), null)))
+            .orElse(null);
+        Map<String, Object> resolved = new LinkedHashMap<>(details);
+        resolved.put(MANAGER, managerPivot);
+        return resolved;
+    }
+}
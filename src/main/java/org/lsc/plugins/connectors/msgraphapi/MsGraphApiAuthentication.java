@@ -42,6 +42,7 @@
  */
 package org.lsc.plugins.connectors.msgraphapi;
 
+import jakarta.ws.rs.client.Client;
 import jakarta.ws.rs.client.ClientBuilder;
 import jakarta.ws.rs.client.Entity;
 import jakarta.ws.rs.client.WebTarget;
@@ -58,6 +59,10 @@ public class MsGraphApiAuthentication {
     private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
 
     public AuthenticationResponse authenticate(String tenant, String authenticationURL, String scope, String clientId, String clientSecret) throws AuthorizationException {
+        return authenticate(ClientBuilder.newClient().register(JacksonFeature.class), tenant, authenticationURL, scope, clientId, clientSecret);
+    }
+
+    public AuthenticationResponse authenticate(Client client, String tenant, String authenticationURL, String scope, String clientId, String clientSecret) throws AuthorizationException {
         if( authenticationURL == null || authenticationURL.isEmpty() )
         {
             authenticationURL = DEFAULT_AUTHENTICATION_URL;
@@ -66,8 +71,7 @@ public class MsGraphApiAuthentication {
         {
             scope = GRAPH_DEFAULT_SCOPE;
         }
-        WebTarget authTarget = ClientBuilder.newClient()
-            .register(JacksonFeature.class)
+        WebTarget authTarget = client
             .target(authenticationURL)
             .path(tenant)
             .path("oauth2/v2.0/token");
@@ -78,7 +82,9 @@ public class MsGraphApiAuthentication {
 
         Response response = null;
         try {
-            response = authTarget.request().post(Entity.form(authForm));
+            response = authTarget.request()
+                .property(MsGraphApiEndpoint.PROPERTY, MsGraphApiEndpoint.TOKEN)
+                .post(Entity.form(authForm));
             if (! checkResponse(response)) {
                 throw new AuthorizationException(response.readEntity(String.class));
             }
@@ -0,0 +1,266 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.ws.rs.client.Client;
+import jakarta.ws.rs.client.ClientBuilder;
+import jakarta.ws.rs.ext.ContextResolver;
+
+import org.glassfish.jersey.client.JerseyClient;
+import org.glassfish.jersey.jackson.JacksonFeature;
+import org.lsc.exception.LscServiceConfigurationException;
+import org.lsc.plugins.connectors.msgraphapi.beans.AuthenticationResponse;
+import org.lsc.plugins.connectors.msgraphapi.beans.User;
+import org.lsc.plugins.connectors.msgraphapi.beans.UsersListResponse;
+import org.lsc.plugins.connectors.msgraphapi.generated.CacheType;
+import org.lsc.plugins.connectors.msgraphapi.generated.MsGraphApiConnectionSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * What is shared by all the services using the same plugin connection: the HTTP client,
+ * the JSON mapper, the tokens of the registrations of each tenant, the traffic counters, the guards of
+ * the endpoints and the prefetch threads. When a snapshot time to live is configured, the enumerations and the
+ * details caches are shared too, between the services sending the same queries.
+ *
+ * The connection is set up in the background when the first service using it is
+ * created: the client and the mapper are warmed up and the tokens requested, while
+ * LSC goes on loading its configuration. They are only awaited on first use.
+ */
+public class MsGraphApiConnection {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MsGraphApiConnection.class);
+    /**
+     * The connections by name: a connection is replaced, and released, when its settings
+     * are loaded again
+     */
+    private static final Map<String, MsGraphApiConnection> CONNECTIONS = new ConcurrentHashMap<>();
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+        .setNameFormat("msgraphapi-connection-%d")
+        .setDaemon(true)
+        .build());
+
+    private final MsGraphApiConnectionSettings settings;
+    private final ObjectMapper objectMapper;
+    private final Client client;
+    private final TrafficCounter trafficCounter;
+    private final Map<MsGraphApiEndpoint, EndpointGuard> guards;
+    private final Map<String, RegistrationSelector> registrations;
+    private final Optional<SnapshotRegistry<List<User>>> enumerations;
+    private final Map<String, UserDetailsCache> detailsCaches = new ConcurrentHashMap<>();
+    private final ExecutorService prefetchExecutor = DetailsPrefetcher.newExecutor();
+
+    /**
+     * @param name the name of the plugin connection, the services of all the tasks using it
+     * share the connection
+     * @return the connection of these settings, set up in the background on first call.
+     * When other settings have been loaded for this name, by a previous load of the
+     * configuration, their connection is released.
+     */
+    public static MsGraphApiConnection of(String name, MsGraphApiConnectionSettings settings) throws LscServiceConfigurationException {
+        List<MsGraphApiTenant> tenants = MsGraphApiTenant.fromSettings(settings);
+        Map<MsGraphApiEndpoint, EndpointGuard> guards = EndpointGuard.fromConfiguration(settings.getResilience());
+        if (settings.getSnapshotTtl() != null && settings.getSnapshotTtl() < 0) {
+            throw new LscServiceConfigurationException("The snapshot time to live cannot be negative");
+        }
+        return CONNECTIONS.compute(name, (key, previous) -> {
+            if (previous != null && previous.settings == settings) {
+                return previous;
+            }
+            if (previous != null) {
+                LOGGER.debug("The settings of the connection {} have been loaded again, releasing its previous connection", key);
+                previous.release();
+            }
+            return new MsGraphApiConnection(settings, tenants, guards);
+        });
+    }
+
+    /**
+     * Releases all the connections, the next services get new ones
+     */
+    static void releaseAll() {
+        CONNECTIONS.values().removeIf(connection -> {
+            connection.release();
+            return true;
+        });
+    }
+
+    private static class ObjectMapperResolver implements ContextResolver<ObjectMapper> {
+        private final ObjectMapper objectMapper;
+
+        private ObjectMapperResolver(ObjectMapper objectMapper) {
+            this.objectMapper = objectMapper;
+        }
+
+        @Override
+        public ObjectMapper getContext(Class<?> type) {
+            return objectMapper;
+        }
+    }
+
+    private MsGraphApiConnection(MsGraphApiConnectionSettings settings, List<MsGraphApiTenant> tenants, Map<MsGraphApiEndpoint, EndpointGuard> guards) {
+        this.settings = settings;
+        this.objectMapper = new ObjectMapper();
+        this.trafficCounter = new TrafficCounter();
+        this.guards = guards;
+        this.client = ClientBuilder.newBuilder()
+            .connectTimeout(EndpointGuard.connectTimeout(settings.getResilience()), TimeUnit.MILLISECONDS)
+            .readTimeout(EndpointGuard.readTimeout(settings.getResilience()), TimeUnit.MILLISECONDS)
+            .build()
+            .register(JacksonFeature.class)
+            .register(new ObjectMapperResolver(objectMapper))
+            .register(trafficCounter);
+        Map<String, RegistrationSelector> selectors = new LinkedHashMap<>();
+        for (MsGraphApiTenant tenant : tenants) {
+            List<MsGraphApiTokenProvider> providers = new ArrayList<>();
+            for (MsGraphApiTenant registration : tenant.getRegistrations()) {
+                providers.add(new MsGraphApiTokenProvider(client, registration, settings.getAuthenticationURL(), settings.getScope(), EXECUTOR,
+                    guards.get(MsGraphApiEndpoint.TOKEN)));
+            }
+            selectors.put(tenant.getTenant(), new RegistrationSelector(providers, System::nanoTime));
+        }
+        this.registrations = ImmutableMap.copyOf(selectors);
+        this.enumerations = Optional.ofNullable(settings.getSnapshotTtl())
+            .filter(ttl -> ttl > 0)
+            .map(ttl -> new SnapshotRegistry<>("enumeration", TimeUnit.SECONDS.toNanos(ttl), System::nanoTime));
+
+        CompletableFuture.runAsync(this::warmUp, EXECUTOR);
+        registrations.values().forEach(RegistrationSelector::prefetch);
+    }
+
+    private void warmUp() {
+        try {
+            if (client instanceof JerseyClient) {
+                ((JerseyClient) client).preInitialize();
+            }
+            objectMapper.readerFor(AuthenticationResponse.class);
+            objectMapper.readerFor(UsersListResponse.class);
+            objectMapper.readerFor(Map.class);
+        } catch (RuntimeException e) {
+            LOGGER.debug("Unable to warm up the connection ({})", e.toString());
+        }
+    }
+
+    /**
+     * Closes the HTTP client and stops the prefetch threads: the services still using the
+     * connection fail on their next request
+     */
+    private void release() {
+        detailsCaches.clear();
+        prefetchExecutor.shutdownNow();
+        client.close();
+    }
+
+    public MsGraphApiConnectionSettings getSettings() {
+        return settings;
+    }
+
+    public Client getClient() {
+        return client;
+    }
+
+    /**
+     * @return the bytes received through this connection, for each endpoint
+     */
+    public TrafficCounter getTrafficCounter() {
+        return trafficCounter;
+    }
+
+    /**
+     * @return the circuit breaker and bulkhead of the requests to this endpoint
+     */
+    public EndpointGuard getGuard(MsGraphApiEndpoint endpoint) {
+        return guards.get(endpoint);
+    }
+
+    /**
+     * @return the enumerations shared by the services, if a snapshot time to live is configured
+     */
+    public Optional<SnapshotRegistry<List<User>>> getEnumerations() {
+        return enumerations;
+    }
+
+    /**
+     * @param key the query of the details, services with the same query share their cache
+     * @return the details cache configured, shared by the services if a snapshot time to
+     * live is configured
+     */
+    public Optional<UserDetailsCache> getDetailsCache(String key, CacheType configuration) {
+        if (!enumerations.isPresent() || configuration == null) {
+            return UserDetailsCache.fromConfiguration(configuration);
+        }
+        return Optional.of(detailsCaches.computeIfAbsent(key, query -> UserDetailsCache.fromConfiguration(configuration).get()));
+    }
+
+    /**
+     * @return the executor reading the details ahead of LSC, shared by the services
+     */
+    public ExecutorService getPrefetchExecutor() {
+        return prefetchExecutor;
+    }
+
+    public ObjectMapper getObjectMapper() {
+        return objectMapper;
+    }
+
+    /**
+     * @return the application registrations of this tenant, with their tokens
+     */
+    public RegistrationSelector getRegistrations(MsGraphApiTenant tenant) {
+        return registrations.get(tenant.getTenant());
+    }
+}
@@ -42,172 +42,565 @@
  */
 package org.lsc.plugins.connectors.msgraphapi;
 
-import java.util.ArrayList;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.OptionalInt;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import jakarta.ws.rs.NotFoundException;
 import jakarta.ws.rs.ProcessingException;
-import jakarta.ws.rs.client.Client;
-import jakarta.ws.rs.client.ClientBuilder;
+import jakarta.ws.rs.WebApplicationException;
 import jakarta.ws.rs.client.WebTarget;
-import jakarta.ws.rs.core.GenericType;
-import jakarta.ws.rs.core.HttpHeaders;
-import jakarta.ws.rs.core.MediaType;
-import jakarta.ws.rs.core.Response;
 
 import org.apache.commons.lang3.StringUtils;
-import com.fasterxml.jackson.core.type.TypeReference;
-import org.glassfish.jersey.jackson.JacksonFeature;
-import org.lsc.exception.LscServiceException;
+import org.lsc.exception.LscServiceConfigurationException;
 import org.lsc.plugins.connectors.msgraphapi.beans.User;
-import org.lsc.plugins.connectors.msgraphapi.beans.UsersListResponse;
+import org.lsc.plugins.connectors.msgraphapi.generated.DeletedItemsType;
 import org.lsc.plugins.connectors.msgraphapi.generated.MsGraphApiConnectionSettings;
-import org.lsc.plugins.connectors.msgraphapi.generated.MsGraphApiUsersService;
+import org.lsc.plugins.connectors.msgraphapi.generated.MsGraphApiEntityService;
+import org.lsc.plugins.connectors.msgraphapi.generated.MsGraphApiResourceService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Reads the entries of a Graph collection of one tenant: /users, or the resource of an
+ * entity service, such as /devices or /servicePrincipals.
+ */
 public class MsGraphApiDao {
     public static final String USER_PATH = "/users";
+    public static final String USERS_RESOURCE = "users";
     public static final String DEFAULT_PIVOT = "mail";
-    public static final String DEFAULT_USERS_URL = "https://graph.microsoft.com/v1.0/users";
+    public static final String DEFAULT_API_URL = "https://graph.microsoft.com/v1.0/";
+    public static final String DEFAULT_USERS_URL = DEFAULT_API_URL + USERS_RESOURCE;
     public static final String ID = "id";
+    public static final String TENANT = "tenant";
+    private static final String PHOTO_PATH = "photo";
+    private static final String MEDIA_ETAG = "@odata.mediaEtag";
+    public static final String MANAGER = "manager";
+    public static final String DEFAULT_DELETED_ITEMS_TYPE = "microsoft.graph.user";
+    public static final int DEFAULT_DELETED_ITEMS_WINDOW = 30;
+    private static final String DELETED_DATE_TIME = "deletedDateTime";
+    private static final String USER_PRINCIPAL_NAME = "userPrincipalName";
+    private static final String SUBSCRIPTIONS_PATH = "subscriptions";
+    private static final String DELETED_ITEMS_PATH = "directory/deletedItems/";
+    /**
+     * The clean index is built again after this time, in case the service is used by
+     * several runs
+     */
+    private static final long CLEAN_INDEX_TTL = TimeUnit.HOURS.toNanos(1);
     private static final Logger LOGGER = LoggerFactory.getLogger(MsGraphApiDao.class);
+    /**
+     * Identical requests issued at the same time by the threads of one or several
+     * tasks share the same HTTP exchange. They are keyed by the application,
+     * the tenant and the requested URI.
+     */
+    private static final SingleFlight<String, List<User>> LIST_REQUESTS = new SingleFlight<>();
+    private static final SingleFlight<String, Map<String, Object>> DETAILS_REQUESTS = new SingleFlight<>();
 
-    private final Client client;
-    private WebTarget usersClient;
-    private final String authorizationBearer;
+    private final MsGraphApiPager pager;
+    private WebTarget resourceClient;
 
     private final Optional<Integer> pageSize;
+    private final Optional<PageSizeTuner> pageSizeTuner;
     private final String pivot;
-    private final String usersURL;
+    private final String resourceURL;
     private final Optional<String> filter;
+    private final QueryPlanner queryPlanner;
     private final Optional<String> select;
+    private final Optional<UserDetailsCache> detailsCache;
+    private final Optional<PhotoFetcher> photoFetcher;
+    private final boolean expandManager;
+    private final boolean allowAdvancedQuery;
+    private final Optional<RequestHedger> detailsHedger;
+    private final Optional<String> deletedItemsURL;
+    private final int deletedItemsWindow;
+    private volatile Optional<PivotIndex> enumerated = Optional.empty();
+    private volatile long enumeratedAt;
+    private volatile Optional<CleanIndex> cleanIndex = Optional.empty();
+    private final SingleFlight<String, CleanIndex> cleanIndexBuilds = new SingleFlight<>();
+    private final Optional<SnapshotRegistry<List<User>>> enumerations;
+    private final PhotoFetcher.PhotoSource photoSource;
+    private final MsGraphApiTenant tenant;
+    private final String apiURL;
+    private final String requestKeyPrefix;
+    private volatile Optional<EnumerationProgress> enumerationProgress = Optional.empty();
 
-    public MsGraphApiDao(String token, MsGraphApiConnectionSettings settings, MsGraphApiUsersService serviceConfiguration) {
-        authorizationBearer = "Bearer " + token;
+    public MsGraphApiDao(MsGraphApiConnection connection, MsGraphApiTenant tenant, MsGraphApiResourceService serviceConfiguration) throws LscServiceConfigurationException {
+        MsGraphApiConnectionSettings settings = connection.getSettings();
         this.filter = getStringParameter(serviceConfiguration.getFilter());
         this.select = getStringParameter(serviceConfiguration.getSelect());
-        this.pivot = getStringParameter(serviceConfiguration.getPivot()).orElse(DEFAULT_PIVOT);
-        this.usersURL = getStringParameter(settings.getUsersURL()).orElse(DEFAULT_USERS_URL);
+        this.pivot = getStringParameter(serviceConfiguration.getPivot()).orElse(defaultPivot(serviceConfiguration));
+        this.resourceURL = resourceURL(settings, serviceConfiguration);
+        this.queryPlanner = QueryPlanner.fromConfiguration(serviceConfiguration, filter, pivot, !(serviceConfiguration instanceof MsGraphApiEntityService));
         this.pageSize = Optional.ofNullable(serviceConfiguration.getPageSize()).filter(size -> size > 0);
-        LOGGER.debug("bearer " + authorizationBearer);
-        client = ClientBuilder.newClient()
-            .register(JacksonFeature.class);
-        usersClient = client
-            .target(this.usersURL);
+        this.expandManager = Boolean.TRUE.equals(serviceConfiguration.isExpandManager());
+        this.allowAdvancedQuery = Boolean.TRUE.equals(serviceConfiguration.isAllowAdvancedQuery());
+        if (expandManager && queryPlanner.isAdvancedEnumeration()) {
+            throw new LscServiceConfigurationException("The manager cannot be expanded with a filter needing an advanced query: " + filter.get());
+        }
+        this.pageSizeTuner = PageSizeTuner.fromConfiguration(tenant.getTenant(), serviceConfiguration.getAdaptivePageSize(), pageSize);
+        this.tenant = tenant;
+        this.apiURL = configuredApiURL(settings).orElse(DEFAULT_API_URL);
+        this.requestKeyPrefix = tenant + " ";
+        this.pager = new MsGraphApiPager(connection, tenant, pageSizeTuner);
+        this.enumerations = connection.getEnumerations();
+        resourceClient = pager.getClient()
+            .target(this.resourceURL);
+        this.photoFetcher = PhotoFetcher.fromConfiguration(serviceConfiguration.getPhoto());
+        // The photos are cached with the details, so that services without photos do not share them
+        this.detailsCache = connection.getDetailsCache(tenant.getTenant() + " " + resourceURL + " " + select.orElse("") + " " + expandManager
+            + " " + photoFetcher.map(PhotoFetcher::getKey).orElse(""), serviceConfiguration.getCache());
+        this.detailsHedger = RequestHedger.fromConfiguration("details of " + tenant.getTenant(), serviceConfiguration.getHedging());
+        Optional<DeletedItemsType> deletedItems = Optional.ofNullable(serviceConfiguration.getDeletedItems());
+        this.deletedItemsURL = deletedItems.map(configuration -> apiURL + DELETED_ITEMS_PATH
+            + getStringParameter(configuration.getType()).map(String::trim).orElse(DEFAULT_DELETED_ITEMS_TYPE));
+        this.deletedItemsWindow = deletedItems.map(DeletedItemsType::getWindow).orElse(DEFAULT_DELETED_ITEMS_WINDOW);
+        if (deletedItemsWindow <= 0) {
+            throw new LscServiceConfigurationException("The window of the deleted items must be positive");
+        }
+        this.photoSource = new PhotoFetcher.PhotoSource() {
+            @Override
+            public String readETag(String id) {
+                Map<String, Object> photo = pager.readEntry(resourceClient.path(id).path(PHOTO_PATH), id, MsGraphApiEndpoint.PHOTO);
+                return Optional.ofNullable(photo.get(MEDIA_ETAG)).map(Object::toString).orElse(null);
+            }
+
+            @Override
+            public Optional<byte[]> read(String id, int maxSize) {
+                return pager.readMedia(resourceClient.path(id).path(PHOTO_PATH).path("$value"), id, maxSize);
+            }
+        };
+    }
+
+    /**
+     * @return the URL of the collection: the users URL for users, and the resource under
+     * the API URL for entities
+     */
+    public static String resourceURL(MsGraphApiConnectionSettings settings, MsGraphApiResourceService serviceConfiguration) {
+        Optional<String> apiURL = configuredApiURL(settings);
+        if (serviceConfiguration instanceof MsGraphApiEntityService) {
+            String resource = StringUtils.strip(((MsGraphApiEntityService) serviceConfiguration).getResource().trim(), "/");
+            return apiURL.orElse(DEFAULT_API_URL) + resource;
+        }
+        return Optional.ofNullable(settings.getUsersURL()).filter(StringUtils::isNotBlank)
+            .orElse(apiURL.map(url -> url + USERS_RESOURCE).orElse(DEFAULT_USERS_URL));
+    }
+
+    private static Optional<String> configuredApiURL(MsGraphApiConnectionSettings settings) {
+        return Optional.ofNullable(settings.getApiURL()).filter(StringUtils::isNotBlank)
+            .map(url -> StringUtils.appendIfMissing(url.trim(), "/"));
+    }
+
+    /**
+     * Users are identified by their mail by default, other entries, which often have no
+     * mail, by their id.
+     */
+    private static String defaultPivot(MsGraphApiResourceService serviceConfiguration) {
+        return serviceConfiguration instanceof MsGraphApiEntityService ? ID : DEFAULT_PIVOT;
+    }
+
+    public MsGraphApiTenant getTenant() {
+        return tenant;
+    }
+
+    public String getResourceURL() {
+        return resourceURL;
     }
 
     private Optional<String> getStringParameter(String parameter) {
         return Optional.ofNullable(parameter).filter(filter -> !filter.trim().isEmpty());
     }
 
-    public List<User> getUsersList() throws LscServiceException {
-        return getUsersList(filter);
+    /**
+     * Enumerates all the entries. Their number is counted first, to presize the list and
+     * to report the progress of the enumeration.
+     */
+    public List<User> getList() {
+        List<User> users = getList(filter, true, queryPlanner.isAdvancedEnumeration());
+        if (deletedItemsURL.isPresent()) {
+            // A new run starts: the deleted entries are read again on first clean
+            enumerated = Optional.of(PivotIndex.of(users));
+            enumeratedAt = System.nanoTime();
+            cleanIndex = Optional.empty();
+        }
+        return users;
     }
 
-    private List<User> getUsersList(Optional<String> computedFilter) {
-        WebTarget target = pivot.equals(ID) ? usersClient.queryParam("$select", pivot) : usersClient.queryParam("$select","id," + pivot);
+    /**
+     * @return the clean index, if deleted items are read, built on first call of a run
+     * from the last enumeration, done if needed, and the recently deleted entries. The
+     * callers asking for it while it is built wait for the same build.
+     */
+    public Optional<CleanIndex> getCleanIndex() {
+        if (!deletedItemsURL.isPresent()) {
+            return Optional.empty();
+        }
+        Optional<CleanIndex> current = cleanIndex;
+        if (isFresh(current)) {
+            return current;
+        }
+        return Optional.of(cleanIndexBuilds.execute(tenant.getTenant(), this::buildCleanIndex));
+    }
 
-        if (computedFilter.isPresent()) {
-            target = target.queryParam("$count", "true");
-            target = target.queryParam("$filter", computedFilter.get());
+    private CleanIndex buildCleanIndex() {
+        // Another caller may have built it just before
+        Optional<CleanIndex> current = cleanIndex;
+        if (isFresh(current)) {
+            return current.get();
+        }
+        long now = System.nanoTime();
+        if (!enumerated.isPresent() || now - enumeratedAt >= CLEAN_INDEX_TTL) {
+            getList();
         }
+        CleanIndex index = new CleanIndex(enumerated.get(), readDeletedItems(), now);
+        cleanIndex = Optional.of(index);
+        LOGGER.info("Clean index of {}: {}", tenant, index);
+        return index;
+    }
+
+    private static boolean isFresh(Optional<CleanIndex> index) {
+        return index.isPresent() && System.nanoTime() - index.get().getBuiltAt() < CLEAN_INDEX_TTL;
+    }
+
+    /**
+     * Reads the entries deleted during the window. They are filtered on their deletion
+     * date once read, as not all types of deleted items can be filtered on it.
+     */
+    private PivotIndex readDeletedItems() {
+        WebTarget target = pager.getClient().target(deletedItemsURL.get())
+            .queryParam("$select", selectedPivot() + "," + DELETED_DATE_TIME);
         if (pageSize.isPresent()) {
             target = target.queryParam("$top", pageSize.get());
         }
-        UsersListResponse users = getUsersListResponse(target);
+        Instant since = Instant.now().minus(deletedItemsWindow, ChronoUnit.DAYS);
+        return PivotIndex.of(pager.readAll(target, entry -> toDeletedUser(entry, since), Optional.empty(), OptionalInt.empty(), false));
+    }
+
+    private Optional<User> toDeletedUser(Map<String, Object> map, Instant since) {
+        if (map.get(ID) == null || map.get(pivot) == null) {
+            return Optional.empty();
+        }
+        try {
+            if (map.get(DELETED_DATE_TIME) != null && Instant.parse(map.get(DELETED_DATE_TIME).toString()).isBefore(since)) {
+                return Optional.empty();
+            }
+        } catch (DateTimeParseException e) {
+            LOGGER.debug("Unable to parse the deletion date of {} ({})", map, e.toString());
+        }
+        String id = map.get(ID).toString();
+        String pivotValue = map.get(pivot).toString();
+        // The user principal name of a deleted user is prefixed by its id, without dashes
+        String prefix = id.replace("-", "");
+        if (pivot.equals(USER_PRINCIPAL_NAME) && StringUtils.startsWithIgnoreCase(pivotValue, prefix)) {
+            pivotValue = pivotValue.substring(prefix.length());
+        }
+        return Optional.of(new User(pivot, pivotValue, id));
+    }
+
+    /**
+     * @return the progress of the last, or current, enumeration of all the entries
+     */
+    public Optional<EnumerationProgress> getEnumerationProgress() {
+        return enumerationProgress;
+    }
+
+    public String getPivot() {
+        return pivot;
+    }
+
+    /**
+     * @return true if the manager of the entries is expanded by enumerations and details
+     */
+    public boolean isExpandManager() {
+        return expandManager;
+    }
+
+    public QueryPlanner getQueryPlanner() {
+        return queryPlanner;
+    }
+
+    public Optional<PageSizeTuner> getPageSizeTuner() {
+        return pageSizeTuner;
+    }
+
+    /**
+     * @return the number of entries matching the filter, as counted by the $count segment
+     */
+    public long getCount() {
+        WebTarget target = resourceClient.path("$count");
+        if (filter.isPresent()) {
+            target = target.queryParam("$filter", filter.get());
+        }
+        return pager.readCount(target);
+    }
 
-        List<UsersListResponse> usersResponsesPages = new ArrayList<>();
-        usersResponsesPages.add(users);
+    /**
+     * Starts the progress of an enumeration. The entries are only counted first when
+     * advanced queries are allowed, $count being one.
+     */
+    private EnumerationProgress startEnumeration() {
+        OptionalLong total = OptionalLong.empty();
+        if (allowAdvancedQuery) {
+            try {
+                total = OptionalLong.of(getCount());
+            } catch (ProcessingException | WebApplicationException | NumberFormatException e) {
+                LOGGER.warn("Unable to count the entries of {} for {} before enumerating them ({})", resourceURL, tenant, e.toString());
+            }
+        }
+        EnumerationProgress progress = new EnumerationProgress(StringUtils.substringAfterLast(resourceURL, "/") + " of " + tenant.getTenant(), total);
+        enumerationProgress = Optional.of(progress);
+        return progress;
+    }
 
-        String nextLink = users.getNextLink();
-        while (StringUtils.isNotBlank(nextLink)) {
-            UsersListResponse lastResponse = getUsersListResponse(client.target(nextLink));
-            usersResponsesPages.add(lastResponse);
-            nextLink = lastResponse.getNextLink();
+    private List<User> getList(Optional<String> computedFilter, boolean enumeration, boolean advanced) {
+        WebTarget target = resourceClient.queryParam("$select", selectedPivot());
+        if (enumeration && expandManager) {
+            target = target.queryParam("$expand", MANAGER + "($select=" + ID + ")");
         }
 
-        return usersResponsesPages
-            .stream()
-            .flatMap(response -> response.getValue().stream())
-            .filter(this::hasPivots)
-            .map(map -> new User(pivot, map.get(pivot).toString(), map.get(ID).toString())).collect(Collectors.toList());
+        if (computedFilter.isPresent()) {
+            if (advanced) {
+                target = target.queryParam("$count", "true");
+            }
+            target = target.queryParam("$filter", computedFilter.get());
+        }
+        // The page size does not change the entries: it is not part of the query
+        String query = requestKeyPrefix + target.getUri();
+        // Lookups of a few pivots keep the configured page size, only enumerations are tuned
+        OptionalInt tunedPageSize = enumeration && pageSizeTuner.isPresent() ? OptionalInt.of(pageSizeTuner.get().nextPageSize()) : OptionalInt.empty();
+        if (tunedPageSize.isPresent()) {
+            target = target.queryParam("$top", tunedPageSize.getAsInt());
+        } else if (pageSize.isPresent()) {
+            target = target.queryParam("$top", pageSize.get());
+        }
+        WebTarget firstPage = target;
+        Supplier<List<User>> list = () -> LIST_REQUESTS.execute(requestKeyPrefix + firstPage.getUri(),
+            () -> pager.readAll(firstPage, this::toUser, enumeration ? Optional.of(startEnumeration()) : Optional.empty(), tunedPageSize, advanced));
+        if (enumeration && enumerations.isPresent()) {
+            return enumerations.get().get(query, list);
+        }
+        return list.get();
+    }
+
+    /**
+     * Reads all the entries matching the filter, with the configured select, handing
+     * each page over as soon as it is received.
+     */
+    public void forEachPage(Consumer<List<Map<String, Object>>> onPage) {
+        WebTarget target = resourceClient;
+        if (select.isPresent()) {
+            target = target.queryParam("$select", select.get());
+        }
+        if (filter.isPresent()) {
+            if (queryPlanner.isAdvancedEnumeration()) {
+                target = target.queryParam("$count", "true");
+            }
+            target = target.queryParam("$filter", filter.get());
+        }
+        OptionalInt tunedPageSize = pageSizeTuner.isPresent() ? OptionalInt.of(pageSizeTuner.get().nextPageSize()) : OptionalInt.empty();
+        if (tunedPageSize.isPresent()) {
+            target = target.queryParam("$top", tunedPageSize.getAsInt());
+        } else if (pageSize.isPresent()) {
+            target = target.queryParam("$top", pageSize.get());
+        }
+        pager.forEachPage(target, onPage, Optional.of(startEnumeration()), tunedPageSize, queryPlanner.isAdvancedEnumeration());
+    }
+
+    private String selectedPivot() {
+        return pivot.equals(ID) ? pivot : ID + "," + pivot;
     }
 
-    private boolean hasPivots(Map<String, Object> map) {
+    private Optional<User> toUser(Map<String, Object> map) {
         if (map.get(ID) == null || map.get(pivot) == null) {
-            LOGGER.warn("The entry " + map.toString() + " has no pivot '" + pivot + "' or id and has been ignored.");
-            return false;
+            LOGGER.warn("The entry {} has no pivot '{}' or id and has been ignored.", map, pivot);
+            return Optional.empty();
         }
-        return true;
+        String managerId = map.get(MANAGER) instanceof Map ? Objects.toString(((Map<?, ?>) map.get(MANAGER)).get(ID), null) : null;
+        return Optional.of(new User(pivot, map.get(pivot).toString(), map.get(ID).toString(), managerId));
     }
 
-    private UsersListResponse getUsersListResponse(WebTarget target) {
-        LOGGER.debug("GETting users list or following page: " + target.getUri().toString());
+    /**
+     * Reads the details of an entry, with its photo if photos are synchronized. The photo
+     * is cached with the details, so that it is not read again while they are cached.
+     */
+    public Map<String, Object> getDetails(String id) {
+        if (detailsCache.isPresent()) {
+            return detailsCache.get().get(id, this::fetchDetailsWithPhoto);
+        }
+        return fetchDetailsWithPhoto(id);
+    }
 
-        Response response = null;
+    /**
+     * Reads the photo at the same time as the details. The photo is cancelled when the
+     * details cannot be read, and left out of the details when it cannot be read itself.
+     */
+    private Map<String, Object> fetchDetailsWithPhoto(String id) {
+        if (!photoFetcher.isPresent()) {
+            return fetchDetails(id);
+        }
+        CompletableFuture<Map<String, Object>> photo = photoFetcher.get().fetch(photoSource, id);
+        Map<String, Object> details;
         try {
-            response = target.request()
-                .header(HttpHeaders.AUTHORIZATION, authorizationBearer)
-                .header("ConsistencyLevel", "eventual")
-                .accept(MediaType.APPLICATION_JSON_TYPE)
-                .get();
-            if (checkResponse(response)) {
-                return response.readEntity(UsersListResponse.class);
-            }
-            if (response.getStatus() == Response.Status.NOT_FOUND.getStatusCode()) {
-                throw new NotFoundException("Not found when requesting " + target.getUri());
-            }
-            throw new ProcessingException(response.readEntity(String.class));
-        } finally {
-            if (response != null) {
-                response.close();
-            }
+            details = fetchDetails(id);
+        } catch (RuntimeException e) {
+            photo.cancel(true);
+            throw e;
         }
+        Map<String, Object> photoAttributes;
+        try {
+            photoAttributes = photo.join();
+        } catch (CompletionException e) {
+            LOGGER.warn("Unable to read the photo of {}, it has been left out ({})", id, e.getCause().toString());
+            return details;
+        }
+        Map<String, Object> detailsWithPhoto = new LinkedHashMap<>(details);
+        detailsWithPhoto.putAll(photoAttributes);
+        return detailsWithPhoto;
+    }
+
+    public Optional<PhotoFetcher> getPhotoFetcher() {
+        return photoFetcher;
+    }
+
+    public Optional<RequestHedger> getDetailsHedger() {
+        return detailsHedger;
+    }
+
+    public Optional<UserDetailsCache> getDetailsCache() {
+        return detailsCache;
     }
 
-    private static boolean checkResponse(Response response) {
-        return Response.Status.Family.familyOf(response.getStatus()) == Response.Status.Family.SUCCESSFUL;
+    private Map<String, Object> fetchDetails(String id) {
+        WebTarget target = resourceClient.path(id);
+        if (select.isPresent()) {
+            target = target.queryParam("$select", select.get());
+        }
+        if (expandManager) {
+            target = target.queryParam("$expand", MANAGER + "($select=" + selectedPivot() + ")");
+        }
+        WebTarget detailsTarget = target;
+        return DETAILS_REQUESTS.execute(requestKeyPrefix + detailsTarget.getUri(), () -> detailsHedger.isPresent()
+            ? detailsHedger.get().execute(() -> pager.readEntry(detailsTarget, id))
+            : pager.readEntry(detailsTarget, id));
     }
 
-    public Map<String, Object> getUserDetails(String id) {
+    /**
+     * Reads the pivot of a changed entry. An entry deleted since the change is read from
+     * the deleted items, so that its pivot is still known.
+     *
+     * @return the entry, or an empty optional if it does not exist anymore or does not
+     * match the filter
+     */
+    public Optional<User> getChanged(String id) {
+        if (filter.isPresent()) {
+            return getChangedMatchingFilter(id);
+        }
+        try {
+            return toUser(pager.readEntry(resourceClient.path(id).queryParam("$select", selectedPivot()), id));
+        } catch (NotFoundException e) {
+            LOGGER.debug("{} not found, looking for it in the deleted items", id);
+        }
+        try {
+            WebTarget target = pager.getClient().target(apiURL + DELETED_ITEMS_PATH).path(id).queryParam("$select", selectedPivot());
+            return toDeletedUser(pager.readEntry(target, id), Instant.MIN);
+        } catch (NotFoundException e) {
+            return Optional.empty();
+        }
+    }
 
-        Response response = null;
+    /**
+     * The subscriptions notify the changes of all the entries: the filter is checked
+     * with the id, as lookups check it with the pivot.
+     */
+    private Optional<User> getChangedMatchingFilter(String id) {
+        String computedFilter = "(" + filter.get() + ") and " + ID + " eq '" + id.replaceAll("'", "''") + "'";
+        boolean advanced = queryPlanner.isAdvancedLookup();
+        Optional<User> user = getList(Optional.of(computedFilter), false, advanced).stream().findFirst();
+        if (user.isPresent()) {
+            return user;
+        }
+        WebTarget target = pager.getClient().target(deletedItemsURL.orElse(apiURL + DELETED_ITEMS_PATH + DEFAULT_DELETED_ITEMS_TYPE))
+            .queryParam("$select", selectedPivot());
+        if (advanced) {
+            target = target.queryParam("$count", "true");
+        }
+        target = target.queryParam("$filter", computedFilter);
         try {
-            WebTarget target = usersClient.path(id);
-            if (select.isPresent()) {
-                target = target.queryParam("$select", select.get());
-            }
-            LOGGER.debug("GETting users detail : " + target.getUri().toString());
-
-            response = target
-                .request()
-                .header(HttpHeaders.AUTHORIZATION, authorizationBearer)
-                .accept(MediaType.APPLICATION_JSON_TYPE)
-                .get();
-            if (checkResponse(response)) {
-                return response.readEntity(new GenericType<>(new TypeReference<Map<String, Object>>() {}.getType()));
-            }
-            if (response.getStatus() == Response.Status.NOT_FOUND.getStatusCode()) {
-                throw new NotFoundException(id + " cannot be found");
-            }
-            throw new ProcessingException(response.readEntity(String.class));
-        } finally {
-            if (response != null) {
-                response.close();
-            }
+            return pager.readAll(target, entry -> toDeletedUser(entry, Instant.MIN), Optional.empty(), OptionalInt.empty(), advanced)
+                .stream()
+                .findFirst();
+        } catch (WebApplicationException e) {
+            // Not all the filters can be used on the deleted items: the clean phase decides
+            LOGGER.debug("{} is not an entry matching the filter, and the deleted items cannot be filtered ({})", id, e.toString());
+            return Optional.empty();
         }
+    }
+
+    /**
+     * Forgets the cached details of a changed entry.
+     */
+    public void invalidate(String id) {
+        detailsCache.ifPresent(cache -> cache.invalidate(id));
+    }
+
+    /**
+     * @return the subscriptions to change notifications of the application in the tenant
+     */
+    public List<Map<String, Object>> getSubscriptions() {
+        return pager.readAll(pager.getClient().target(apiURL + SUBSCRIPTIONS_PATH), Optional::of, Optional.empty(), OptionalInt.empty(), false);
+    }
 
+    /**
+     * @return the subscription created
+     */
+    public Map<String, Object> createSubscription(Map<String, Object> subscription) {
+        return pager.send(pager.getClient().target(apiURL + SUBSCRIPTIONS_PATH), "POST", Optional.of(subscription));
     }
 
-    public Optional<User> getFirstUserWithId(String pivotValue) {
+    public void deleteSubscription(String id) {
+        pager.send(pager.getClient().target(apiURL + SUBSCRIPTIONS_PATH).path(id), "DELETE", Optional.empty());
+    }
+
+    /**
+     * @return the resource of the subscriptions to the changes of the entries, relative
+     * to the API URL, or users if the users are read from another URL
+     */
+    public String getSubscriptionResource() {
+        return resourceURL.startsWith(apiURL) ? resourceURL.substring(apiURL.length()) : USERS_RESOURCE;
+    }
+
+    public Optional<User> getFirstWithPivot(String pivotValue) {
+        if (!queryPlanner.canMatch(pivotValue)) {
+            return Optional.empty();
+        }
+        Optional<String> lookupKey = queryPlanner.getLookupKey(pivotValue);
+        if (lookupKey.isPresent()) {
+            WebTarget target = resourceClient.path(lookupKey.get()).queryParam("$select", selectedPivot());
+            try {
+                Map<String, Object> entry = detailsHedger.isPresent()
+                    ? detailsHedger.get().execute(() -> pager.readEntry(target, lookupKey.get()))
+                    : pager.readEntry(target, lookupKey.get());
+                return toUser(entry)
+                    .filter(user -> user.getValue().equalsIgnoreCase(pivotValue));
+            } catch (NotFoundException e) {
+                return Optional.empty();
+            }
+        }
         String pivotFilter = pivot + " eq '" + pivotValue.replaceAll("'", "''") + "'";
         String computedFilter = filter.map(f -> "(" + f + ")" + " and " + pivotFilter)
             .orElse(pivotFilter);
-        return getUsersList(Optional.of(computedFilter))
+        return getList(Optional.of(computedFilter), false, queryPlanner.isAdvancedLookup())
             .stream()
             .findFirst();
     }
@@ -0,0 +1,437 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import static org.lsc.plugins.connectors.msgraphapi.MsGraphApiDao.ID;
+import static org.lsc.plugins.connectors.msgraphapi.MsGraphApiDao.TENANT;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import jakarta.ws.rs.NotFoundException;
+import jakarta.ws.rs.ProcessingException;
+import jakarta.ws.rs.WebApplicationException;
+
+import org.lsc.LscDatasets;
+import org.lsc.beans.IBean;
+import org.lsc.configuration.ConnectionType;
+import org.lsc.configuration.PluginConnectionType;
+import org.lsc.configuration.TaskType;
+import org.lsc.exception.LscServiceCommunicationException;
+import org.lsc.exception.LscServiceConfigurationException;
+import org.lsc.exception.LscServiceException;
+import org.lsc.plugins.connectors.msgraphapi.beans.User;
+import org.lsc.plugins.connectors.msgraphapi.generated.MsGraphApiConnectionSettings;
+import org.lsc.plugins.connectors.msgraphapi.generated.MsGraphApiEntityService;
+import org.lsc.plugins.connectors.msgraphapi.generated.MsGraphApiResourceService;
+import org.lsc.plugins.connectors.msgraphapi.generated.PivotCollisionPolicyType;
+import org.lsc.service.IService;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Synchronizes the entries of any Graph collection, such as devices, contacts,
+ * servicePrincipals or administrativeUnits, as configured by its resource.
+ */
+public class MsGraphApiEntitySrcService implements IService {
+
+    protected static final Logger LOGGER = LoggerFactory.getLogger(MsGraphApiEntitySrcService.class);
+    /**
+     * Preceding the object feeding, it will be instantiated from this class.
+     */
+    private final Class<IBean> beanClass;
+
+    private final MsGraphApiResourceService service;
+    /**
+     * The DAO of the tenant of the connection, then the ones of its additional tenants
+     */
+    private final Map<String, MsGraphApiDao> daos;
+    private final MsGraphApiDao dao;
+    private final MsGraphApiConnectionSettings settings;
+    private final Optional<DetailsPrefetcher> prefetcher;
+    private final PivotCollisionPolicyType pivotCollisionPolicy;
+    private final Optional<UsersPartition> partition;
+    private final EntryBeanMapper beanMapper;
+    private final Optional<ManagerResolver> managerResolver;
+    /**
+     * The tenant of each enumerated entry, when several tenants are configured
+     */
+    private volatile Map<String, String> tenantById = Collections.emptyMap();
+
+    public MsGraphApiEntitySrcService(TaskType task) throws LscServiceConfigurationException {
+        this(task, MsGraphApiEntityService.class);
+    }
+
+    protected MsGraphApiEntitySrcService(TaskType task, Class<? extends MsGraphApiResourceService> serviceClass) throws LscServiceConfigurationException {
+        try {
+            if (task.getPluginSourceService().getAny() == null || task.getPluginSourceService().getAny().size() != 1 || !serviceClass.isInstance(task.getPluginSourceService().getAny().get(0))) {
+                throw new LscServiceConfigurationException("Unable to identify the msgraphapi service configuration " + "inside the plugin source node of the task: " + task.getName());
+            }
+
+            service = serviceClass.cast(task.getPluginSourceService().getAny().get(0));
+            if (service instanceof MsGraphApiEntityService && StringUtils.isBlank(((MsGraphApiEntityService) service).getResource())) {
+                throw new LscServiceConfigurationException("No resource configured in the msgraphapi entity service of the task: " + task.getName());
+            }
+            beanClass = (Class<IBean>) Class.forName(task.getBean());
+            if (task.getPluginSourceService().getConnection() == null || task.getPluginSourceService().getConnection().getReference() == null || ! (task.getPluginSourceService().getConnection().getReference() instanceof PluginConnectionType)) {
+                throw new LscServiceConfigurationException("Unable to identify the msgraphapi service connection " + "inside the plugin source node of the task: " + task.getName());
+            }
+            PluginConnectionType pluginConnectionType = (PluginConnectionType)task.getPluginSourceService().getConnection().getReference();
+            if (pluginConnectionType.getAny() == null || pluginConnectionType.getAny().size() != 1 || !(pluginConnectionType.getAny().get(0) instanceof MsGraphApiConnectionSettings)) {
+                throw new LscServiceConfigurationException("Unable to identify the msgraphapi connection settings " + "inside the connection node of the task: " + task.getName());
+            }
+            settings = (MsGraphApiConnectionSettings) pluginConnectionType.getAny().get(0);
+
+            // Authentication is done in the background, and awaited on first request
+            MsGraphApiConnection connection = MsGraphApiConnection.of(pluginConnectionType.getName(), settings);
+            Map<String, MsGraphApiDao> tenantsDaos = new LinkedHashMap<>();
+            for (MsGraphApiTenant tenant : MsGraphApiTenant.fromSettings(settings)) {
+                tenantsDaos.put(tenant.getTenant(), new MsGraphApiDao(connection, tenant, service));
+            }
+            daos = ImmutableMap.copyOf(tenantsDaos);
+            dao = daos.get(settings.getTenant());
+            pivotCollisionPolicy = Optional.ofNullable(service.getPivotCollisionPolicy()).orElse(PivotCollisionPolicyType.FIRST);
+            partition = UsersPartition.fromConfiguration(service);
+            managerResolver = Optional.of(dao).filter(MsGraphApiDao::isExpandManager).map(tenantDao -> new ManagerResolver(tenantDao.getPivot()));
+            beanMapper = new EntryBeanMapper(beanClass, EntryBeanMapper.parseAttributes(service.getDeduplicatedAttributes()));
+            prefetcher = Optional.ofNullable(service.getPrefetchWindow())
+                .filter(window -> window > 0)
+                .map(window -> new DetailsPrefetcher(id -> getDao(tenantById.get(id)).getDetails(id), window, connection.getPrefetchExecutor()));
+
+        } catch (ClassNotFoundException e) {
+            throw new LscServiceConfigurationException(e);
+        }
+    }
+
+    @Override
+    public IBean getBean(String pivotAttributeName, LscDatasets pivotAttributes, boolean fromSameService) throws LscServiceException {
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Call to getBean({}, {}, {})", pivotAttributeName, pivotAttributes, fromSameService);
+        }
+        if (pivotAttributes.getAttributesNames().size() < 1) {
+            return null;
+        }
+        String pivotAttribute = pivotAttributes.getAttributesNames().get(0);
+        String pivotValue = pivotAttributes.getStringValueAttribute(pivotAttribute);
+        if (fromSameService) {
+            return getBeanFromSameService(pivotAttributeName, pivotAttributes, pivotValue);
+        } else {
+            return getBeanForClean(pivotAttributeName, pivotValue);
+        }
+    }
+
+    protected boolean isMultiTenant() {
+        return daos.size() > 1;
+    }
+
+    /**
+     * @return the DAO of each tenant, the tenant of the connection first
+     */
+    protected Map<String, MsGraphApiDao> getDaos() {
+        return daos;
+    }
+
+    /**
+     * @return what tells this instance apart from other ones reading the same tenants:
+     * its application, with its secret, and its partition
+     */
+    protected String getInstanceKey() {
+        return settings.getClientId() + " " + StringUtils.defaultString(settings.getClientSecret()) + " " + partition.map(UsersPartition::toString).orElse("");
+    }
+
+    /**
+     * @return true if the entry with this id is synchronized by this instance
+     */
+    protected boolean isInPartition(String id) {
+        return !partition.isPresent() || partition.get().contains(id);
+    }
+
+    private MsGraphApiDao getDao(String tenant) {
+        return Optional.ofNullable(tenant).map(daos::get).orElse(dao);
+    }
+
+    /**
+     * Users of other partitions are found too: the clean phase must not delete the
+     * entries synchronized by other LSC instances.
+     *
+     * When deleted items are read, the enumerated and the deleted entries are found
+     * without querying the API, which is only queried for the other pivots.
+     */
+    private IBean getBeanForClean(String pivotAttributeName, String pivotValue) throws LscServiceException {
+        try {
+            for (MsGraphApiDao tenantDao : daos.values()) {
+                Optional<CleanIndex> cleanIndex = tenantDao.getCleanIndex();
+                if (cleanIndex.isPresent()) {
+                    Optional<String> id = cleanIndex.get().getId(pivotValue);
+                    if (id.isPresent()) {
+                        return userIdToBean(id.get(), tenantOf(tenantDao));
+                    }
+                    if (cleanIndex.get().isDeleted(pivotValue)) {
+                        LOGGER.debug("{}/{} has been deleted from {}", pivotAttributeName, pivotValue, tenantDao.getTenant());
+                        continue;
+                    }
+                }
+                Optional<User> maybeUser = tenantDao.getFirstWithPivot(pivotValue);
+                if (maybeUser.isPresent()) {
+                    return userIdToBean(maybeUser.get().getId(), tenantOf(tenantDao));
+                }
+            }
+            return null;
+        } catch (ProcessingException e) {
+            LOGGER.error("ProcessingException while getting bean {}/{} ({})", pivotAttributeName, pivotValue, e.toString());
+            LOGGER.error(e.toString(), e);
+            throw new LscServiceCommunicationException(e);
+        } catch (NotFoundException e) {
+            LOGGER.debug("{}/{} not found", pivotAttributeName, pivotValue);
+            return null;
+        } catch (WebApplicationException e) {
+            LOGGER.error("WebApplicationException while getting bean {}/{} ({})", pivotAttributeName, pivotValue, e.toString());
+            LOGGER.debug(e.toString(), e);
+            throw new LscServiceException(e);
+        } catch (InstantiationException | IllegalAccessException e) {
+            LOGGER.error("Bad class name: {}({})", beanClass.getName(), e.toString());
+            LOGGER.debug(e.toString(), e);
+            throw new LscServiceException(e);
+        }
+    }
+
+    private IBean getBeanFromSameService(String pivotAttributeName, LscDatasets pivotAttributes, String pivotValue) throws LscServiceException {
+        String idValue = pivotAttributes.getStringValueAttribute(ID);
+        if (idValue == null) {
+            return null;
+        }
+        if (partition.isPresent() && !partition.get().contains(idValue)) {
+            LOGGER.debug("{}/{} with id {} is not in partition {}", pivotAttributeName, pivotValue, idValue, partition.get());
+            return null;
+        }
+        String tenant = pivotAttributes.getStringValueAttribute(TENANT);
+        try {
+            Map<String, Object> details = prefetcher.isPresent() ? prefetcher.get().get(idValue) : getDao(tenant).getDetails(idValue);
+            Map<String, Object> user = managerResolver.isPresent() ? managerResolver.get().resolve(idValue, details) : details;
+            return mapToBean(idValue, user, Optional.ofNullable(tenant).filter(t -> isMultiTenant()));
+        } catch (ProcessingException e) {
+            LOGGER.error("ProcessingException while getting bean {}/{} with id {} ({})", pivotAttributeName, pivotValue, idValue, e.toString());
+            LOGGER.error(e.toString(), e);
+            throw new LscServiceCommunicationException(e);
+        } catch (NotFoundException e) {
+            LOGGER.debug("{}/{} with id {} not found", pivotAttributeName, pivotValue, idValue);
+            return null;
+        } catch (WebApplicationException e) {
+            LOGGER.error("WebApplicationException while getting bean {}/{} with id {} ({})", pivotAttributeName, pivotValue, idValue, e.toString());
+            LOGGER.debug(e.toString(), e);
+            throw new LscServiceException(e);
+        } catch (InstantiationException | IllegalAccessException e) {
+            LOGGER.error("Bad class name: {}({})", beanClass.getName(), e.toString());
+            LOGGER.debug(e.toString(), e);
+            throw new LscServiceException(e);
+        }
+    }
+
+    @VisibleForTesting
+    IBean mapToBean(String idValue, Map<String, Object> user) throws InstantiationException, IllegalAccessException {
+        return mapToBean(idValue, user, Optional.empty());
+    }
+
+    private IBean mapToBean(String idValue, Map<String, Object> user, Optional<String> tenant) throws InstantiationException, IllegalAccessException {
+        return beanMapper.toBean(idValue, user, tenant);
+    }
+
+    private IBean userIdToBean(String idValue, Optional<String> tenant) throws InstantiationException, IllegalAccessException {
+        return beanMapper.toIdBean(idValue, tenant);
+    }
+
+    private Optional<String> tenantOf(MsGraphApiDao tenantDao) {
+        return Optional.of(tenantDao.getTenant().getTenant()).filter(tenant -> isMultiTenant());
+    }
+
+    @Override
+    public Map<String, LscDatasets> getListPivots() throws LscServiceException {
+        try {
+            Map<String, List<User>> lists = getLists();
+
+            // Keep the enumeration order, LSC will ask for the beans in this order
+            int usersCount = lists.values().stream().mapToInt(List::size).sum();
+            Map<String, LscDatasets> listPivots = Maps.newLinkedHashMapWithExpectedSize(usersCount);
+            Map<String, String> pivotsTenants = isMultiTenant() ? Maps.newHashMapWithExpectedSize(usersCount) : new HashMap<>();
+            Set<String> collisions = new HashSet<>();
+            for (Map.Entry<String, List<User>> tenantUsers : lists.entrySet()) {
+                String tenant = tenantUsers.getKey();
+                for (User user: tenantUsers.getValue()) {
+                    String firstTenant = isMultiTenant() ? pivotsTenants.putIfAbsent(user.getValue(), tenant) : null;
+                    if (firstTenant != null && !firstTenant.equals(tenant)) {
+                        handlePivotCollision(user.getValue(), firstTenant, tenant, collisions);
+                        continue;
+                    }
+                    LscDatasets datasets = user.toDatasets();
+                    if (isMultiTenant()) {
+                        datasets.put(TENANT, tenant);
+                    }
+                    listPivots.put(user.getValue(), datasets);
+                }
+            }
+            collisions.forEach(listPivots::remove);
+            if (partition.isPresent()) {
+                listPivots.values().removeIf(datasets -> !partition.get().contains(datasets.getStringValueAttribute(ID)));
+            }
+            if (isMultiTenant()) {
+                tenantById = listPivots.values().stream()
+                    .collect(Collectors.toMap(datasets -> datasets.getStringValueAttribute(ID),
+                        datasets -> datasets.getStringValueAttribute(TENANT), (first, second) -> first));
+            }
+            if (managerResolver.isPresent()) {
+                setManagers(lists, usersCount);
+            }
+            prefetcher.ifPresent(p -> p.setOrder(listPivots.values().stream()
+                .map(datasets -> datasets.getStringValueAttribute(ID))
+                .collect(Collectors.toList())));
+            return ImmutableMap.copyOf(listPivots);
+        } catch (ProcessingException e) {
+            LOGGER.error("ProcessingException while getting pivot list ({})", e.toString());
+            LOGGER.debug(e.toString(), e);
+            throw new LscServiceCommunicationException(e);
+        } catch (WebApplicationException e) {
+            LOGGER.error("WebApplicationException while getting pivot list ({})", e.toString());
+            LOGGER.debug(e.toString(), e);
+            throw new LscServiceException(e);
+        }
+    }
+
+    /**
+     * @return the progress of the last, or current, enumeration of the entries of each tenant
+     */
+    public List<EnumerationProgress> getEnumerationProgress() {
+        return daos.values().stream()
+            .map(MsGraphApiDao::getEnumerationProgress)
+            .flatMap(Optional::stream)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Enumerates the entries of all the tenants in parallel.
+     *
+     * @return the entries of each tenant, in the order of the tenants
+     */
+    private Map<String, List<User>> getLists() {
+        if (!isMultiTenant()) {
+            return ImmutableMap.of(settings.getTenant(), dao.getList());
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(daos.size(), new ThreadFactoryBuilder()
+            .setNameFormat("msgraphapi-tenant-%d")
+            .setDaemon(true)
+            .build());
+        try {
+            Map<String, CompletableFuture<List<User>>> futures = new LinkedHashMap<>();
+            daos.forEach((tenant, tenantDao) -> futures.put(tenant, CompletableFuture.supplyAsync(tenantDao::getList, executor)));
+            Map<String, List<User>> lists = new LinkedHashMap<>();
+            for (Map.Entry<String, CompletableFuture<List<User>>> future : futures.entrySet()) {
+                try {
+                    lists.put(future.getKey(), future.getValue().join());
+                } catch (CompletionException e) {
+                    if (e.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) e.getCause();
+                    }
+                    throw e;
+                }
+            }
+            return lists;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Keeps the pivots and the managers of all the enumerated entries, including the ones
+     * of other partitions, to resolve the managers of the beans.
+     */
+    private void setManagers(Map<String, List<User>> lists, int usersCount) {
+        Map<String, String> pivotById = Maps.newHashMapWithExpectedSize(usersCount);
+        Map<String, String> managerIdById = new HashMap<>();
+        for (List<User> users : lists.values()) {
+            for (User user : users) {
+                pivotById.putIfAbsent(user.getId(), user.getValue());
+                user.getManagerId().ifPresent(managerId -> managerIdById.put(user.getId(), managerId));
+            }
+        }
+        managerResolver.get().setEnumeration(pivotById, managerIdById);
+    }
+
+    private void handlePivotCollision(String pivotValue, String firstTenant, String tenant, Set<String> collisions) throws LscServiceException {
+        switch (pivotCollisionPolicy) {
+            case FAIL:
+                throw new LscServiceException("The pivot " + pivotValue + " exists in tenants " + firstTenant + " and " + tenant);
+            case SKIP:
+                LOGGER.warn("The pivot {} exists in tenants {} and {}, it has been ignored.", pivotValue, firstTenant, tenant);
+                collisions.add(pivotValue);
+                break;
+            case FIRST:
+            default:
+                LOGGER.warn("The pivot {} exists in tenants {} and {}, the entry of {} has been kept.", pivotValue, firstTenant, tenant, firstTenant);
+                break;
+        }
+    }
+
+    public Collection<Class<? extends ConnectionType>> getSupportedConnectionType() {
+        Collection<Class<? extends ConnectionType>> list = new ArrayList<Class<? extends ConnectionType>>();
+        return list;
+    }
+
+}
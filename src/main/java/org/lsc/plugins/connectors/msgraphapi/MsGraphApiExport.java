@@ -0,0 +1,188 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import org.lsc.exception.LscServiceConfigurationException;
+import org.lsc.plugins.connectors.msgraphapi.generated.MsGraphApiConnectionSettings;
+import org.lsc.plugins.connectors.msgraphapi.generated.MsGraphApiEntityService;
+import org.lsc.plugins.connectors.msgraphapi.generated.MsGraphApiResourceService;
+import org.lsc.plugins.connectors.msgraphapi.generated.MsGraphApiUsersService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Exports all the users, or the entries of another collection, of a tenant to gzip
+ * compressed NDJSON files, for audits or to investigate synchronization differences.
+ *
+ * <pre>
+ * java -cp "lib/*" org.lsc.plugins.connectors.msgraphapi.MsGraphApiExport --tenant TENANT --client-id ID --output /path/to/export [options]
+ * </pre>
+ *
+ * The client secret is read from the MS_GRAPH_API_CLIENT_SECRET environment variable,
+ * unless given with --client-secret.
+ */
+public class MsGraphApiExport {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MsGraphApiExport.class);
+    public static final String CLIENT_SECRET_VARIABLE = "MS_GRAPH_API_CLIENT_SECRET";
+    private static final String USAGE = "Usage: MsGraphApiExport --tenant TENANT --client-id ID --output PREFIX"
+        + " [--client-secret SECRET] [--authentication-url URL] [--scope SCOPE] [--users-url URL] [--api-url URL]"
+        + " [--resource RESOURCE] [--filter FILTER] [--select SELECT] [--page-size SIZE] [--allow-advanced-query]"
+        + " [--part-size BYTES]";
+
+    private MsGraphApiExport() {
+    }
+
+    public static void main(String[] args) {
+        try {
+            System.exit(export(parse(args)));
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+    }
+
+    static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+            String option = args[i].substring(2);
+            if (option.equals("allow-advanced-query")) {
+                options.put(option, "true");
+            } else if (i + 1 < args.length) {
+                options.put(option, args[++i]);
+            } else {
+                throw new IllegalArgumentException("Missing value of " + args[i]);
+            }
+        }
+        for (String required : new String[] {"tenant", "client-id", "output"}) {
+            if (!options.containsKey(required)) {
+                throw new IllegalArgumentException("Missing --" + required);
+            }
+        }
+        for (String number : new String[] {"page-size", "part-size"}) {
+            if (options.containsKey(number) && !options.get(number).matches("[1-9][0-9]*")) {
+                throw new IllegalArgumentException("--" + number + " must be a positive number: " + options.get(number));
+            }
+        }
+        options.putIfAbsent("client-secret", System.getenv(CLIENT_SECRET_VARIABLE));
+        if (options.get("client-secret") == null) {
+            throw new IllegalArgumentException("Missing --client-secret or " + CLIENT_SECRET_VARIABLE);
+        }
+        return options;
+    }
+
+    static MsGraphApiConnectionSettings toSettings(Map<String, String> options) {
+        MsGraphApiConnectionSettings settings = new MsGraphApiConnectionSettings();
+        settings.setTenant(options.get("tenant"));
+        settings.setClientId(options.get("client-id"));
+        settings.setClientSecret(options.get("client-secret"));
+        settings.setAuthenticationURL(options.get("authentication-url"));
+        settings.setScope(options.get("scope"));
+        settings.setUsersURL(options.get("users-url"));
+        settings.setApiURL(options.get("api-url"));
+        return settings;
+    }
+
+    static MsGraphApiResourceService toServiceConfiguration(Map<String, String> options) {
+        MsGraphApiResourceService service;
+        String resource = options.getOrDefault("resource", MsGraphApiDao.USERS_RESOURCE);
+        if (resource.equals(MsGraphApiDao.USERS_RESOURCE)) {
+            service = new MsGraphApiUsersService();
+        } else {
+            MsGraphApiEntityService entityService = new MsGraphApiEntityService();
+            entityService.setResource(resource);
+            service = entityService;
+        }
+        service.setFilter(options.get("filter"));
+        service.setSelect(options.get("select"));
+        service.setPageSize(Optional.ofNullable(options.get("page-size")).map(Integer::valueOf).orElse(null));
+        service.setAllowAdvancedQuery(Boolean.valueOf(options.get("allow-advanced-query")));
+        return service;
+    }
+
+    static int export(Map<String, String> options) {
+        Path output = Paths.get(options.get("output")).toAbsolutePath();
+        long partSize = Optional.ofNullable(options.get("part-size")).map(Long::valueOf).orElse(NdjsonExporter.DEFAULT_PART_SIZE);
+        try {
+            MsGraphApiConnectionSettings settings = toSettings(options);
+            MsGraphApiConnection connection = MsGraphApiConnection.of("export", settings);
+            MsGraphApiTenant tenant = MsGraphApiTenant.fromSettings(settings).get(0);
+            MsGraphApiDao dao = new MsGraphApiDao(connection, tenant, toServiceConfiguration(options));
+
+            long start = System.nanoTime();
+            NdjsonExporter exporter = new NdjsonExporter(connection.getObjectMapper(), output, partSize, NdjsonExporter.DEFAULT_QUEUE_SIZE);
+            try {
+                dao.forEachPage(exporter);
+            } catch (RuntimeException e) {
+                // Do not let a failure to clean up hide the reason of the failure
+                try {
+                    exporter.abort();
+                } catch (IOException | RuntimeException abortFailure) {
+                    e.addSuppressed(abortFailure);
+                }
+                throw e;
+            }
+            exporter.close();
+            LOGGER.info("Exported {} entries of {} to {} parts in {} s", exporter.getEntries(), dao.getResourceURL(),
+                exporter.getParts().size(), (System.nanoTime() - start) / 1_000_000_000L);
+            return 0;
+        } catch (LscServiceConfigurationException e) {
+            LOGGER.error("Invalid export configuration: {}", e.getMessage());
+            return 2;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Export failed ({})", e.toString());
+            LOGGER.debug(e.toString(), e);
+            return 1;
+        }
+    }
+}
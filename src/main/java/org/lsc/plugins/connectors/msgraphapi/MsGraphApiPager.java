@@ -0,0 +1,430 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import jakarta.ws.rs.NotFoundException;
+import jakarta.ws.rs.ProcessingException;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.client.Client;
+import jakarta.ws.rs.client.Entity;
+import jakarta.ws.rs.client.Invocation;
+import jakarta.ws.rs.client.WebTarget;
+import jakarta.ws.rs.core.GenericType;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+
+import org.apache.commons.lang3.StringUtils;
+import org.lsc.plugins.connectors.msgraphapi.beans.UsersListResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+
+/**
+ * Reads Graph collections, whatever their resource.
+ *
+ * Collections are read page by page, following @odata.nextLink. Each page is mapped
+ * as soon as it is received, the progress of enumerations is reported and the page
+ * size tuner, if any, is fed with the response time and size of each page.
+ *
+ * Each request goes through the circuit breaker and the bulkhead of its endpoint, and
+ * is traced with its client-request-id and request-id. Requests are spread over the
+ * application registrations of the tenant: a request throttled by Graph is sent again
+ * with another registration, if one is not throttled.
+ */
+public class MsGraphApiPager {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MsGraphApiPager.class);
+    private static final int DEFAULT_LIST_SIZE = 100;
+    private static final int MAX_LIST_PRESIZE = 10_000_000;
+    private static final long PROGRESS_LOG_INTERVAL = TimeUnit.SECONDS.toNanos(10);
+    private static final String CONSISTENCY_LEVEL = "ConsistencyLevel";
+    private static final String EVENTUAL = "eventual";
+
+    private final Client client;
+    private final RegistrationSelector registrations;
+    private final TrafficCounter trafficCounter;
+    private final Optional<PageSizeTuner> pageSizeTuner;
+    private final MsGraphApiConnection connection;
+    private final long slowRequestThreshold;
+
+    public MsGraphApiPager(MsGraphApiConnection connection, MsGraphApiTenant tenant, Optional<PageSizeTuner> pageSizeTuner) {
+        this.client = connection.getClient();
+        this.registrations = connection.getRegistrations(tenant);
+        this.trafficCounter = connection.getTrafficCounter();
+        this.pageSizeTuner = pageSizeTuner;
+        this.connection = connection;
+        this.slowRequestThreshold = RequestTrace.slowRequestThreshold(connection.getSettings().getSlowRequestThreshold());
+    }
+
+    public Client getClient() {
+        return client;
+    }
+
+    /**
+     * Sends a request with one of the registrations of the tenant, through the guard of
+     * its endpoint.
+     *
+     * @param request sends the request with the given authorization
+     * @throws ThrottledException if all the registrations are throttled
+     */
+    private <T> T execute(MsGraphApiEndpoint endpoint, Function<String, T> request) {
+        int attempts = registrations.getRegistrations().size();
+        while (true) {
+            MsGraphApiTokenProvider registration = registrations.select();
+            String authorization = "Bearer " + registration.getToken();
+            try {
+                return connection.getGuard(endpoint).execute(() -> request.apply(authorization));
+            } catch (ThrottledException e) {
+                if (!registrations.onThrottled(registration, e.getRetryAfter()) || --attempts <= 0) {
+                    throw e;
+                }
+                LOGGER.debug("Sending the {} request again with another registration", endpoint);
+            }
+        }
+    }
+
+    /**
+     * Reads all the pages of a collection.
+     *
+     * @param target the first page
+     * @param mapper maps each entry, or ignores it by returning an empty optional
+     * @param progress the progress to report, for enumerations
+     * @param tunedPageSize the page size given by the tuner, if the collection is read with it
+     * @param advanced true to send an advanced query
+     * @return the mapped entries, in the order of the collection
+     */
+    public <T> List<T> readAll(WebTarget target, Function<Map<String, Object>, Optional<T>> mapper, Optional<EnumerationProgress> progress, OptionalInt tunedPageSize, boolean advanced) {
+        int expectedSize = DEFAULT_LIST_SIZE;
+        if (progress.isPresent() && progress.get().getTotal().isPresent()) {
+            expectedSize = (int) Math.min(progress.get().getTotal().getAsLong(), MAX_LIST_PRESIZE);
+        }
+        List<T> entries = new ArrayList<>(expectedSize);
+        forEachPage(target, page -> page.stream()
+                .map(mapper)
+                .flatMap(Optional::stream)
+                .forEach(entries::add),
+            progress, tunedPageSize, advanced);
+        return Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * Reads all the pages of a collection, handing each page over as soon as it is
+     * received, so that the collection is never held in memory.
+     *
+     * @param target the first page
+     * @param onPage the consumer of the entries of each page
+     * @param progress the progress to report, for enumerations
+     * @param tunedPageSize the page size given by the tuner, if the collection is read with it
+     * @param advanced true to send an advanced query
+     */
+    public void forEachPage(WebTarget target, Consumer<List<Map<String, Object>>> onPage, Optional<EnumerationProgress> progress, OptionalInt tunedPageSize, boolean advanced) {
+        long lastLog = System.nanoTime();
+        WebTarget page = target;
+        while (page != null) {
+            UsersListResponse response = readPage(page, tunedPageSize, advanced);
+            onPage.accept(response.getValue());
+
+            if (progress.isPresent()) {
+                if (StringUtils.isNumeric(response.getCount())) {
+                    progress.get().setTotalIfUnknown(Long.parseLong(response.getCount()));
+                }
+                progress.get().onPage(response.getValue().size());
+                if (System.nanoTime() - lastLog > PROGRESS_LOG_INTERVAL) {
+                    LOGGER.info("Enumerating {}", progress.get());
+                    lastLog = System.nanoTime();
+                } else {
+                    LOGGER.debug("Enumerating {}", progress.get());
+                }
+            }
+            page = StringUtils.isNotBlank(response.getNextLink()) ? client.target(response.getNextLink()) : null;
+        }
+        progress.ifPresent(p -> {
+            p.onFinished();
+            LOGGER.info("Enumerated {}", p);
+            LOGGER.info("Traffic of the connection so far: {}", trafficCounter);
+        });
+    }
+
+    /**
+     * Reads one page of a collection. Advanced queries are sent with the
+     * ConsistencyLevel: eventual header.
+     */
+    public UsersListResponse readPage(WebTarget target, OptionalInt tunedPageSize, boolean advanced) {
+        return execute(MsGraphApiEndpoint.LIST, authorization -> {
+            Response response = null;
+            long start = System.nanoTime();
+            RequestTrace trace = RequestTrace.start(MsGraphApiEndpoint.LIST, target, slowRequestThreshold);
+            try {
+                Invocation.Builder request = trace.request()
+                    .header(HttpHeaders.AUTHORIZATION, authorization)
+                    .accept(MediaType.APPLICATION_JSON_TYPE);
+                if (advanced) {
+                    request = request.header(CONSISTENCY_LEVEL, EVENTUAL);
+                }
+                LongAdder payload = new LongAdder();
+                if (tunedPageSize.isPresent()) {
+                    request = request.property(TrafficCounter.RESPONSE_BYTES, payload);
+                }
+                response = request.get();
+                trace.onResponse(response);
+                if (checkResponse(response)) {
+                    GraphPageEvent pageEvent = new GraphPageEvent();
+                    pageEvent.begin();
+                    UsersListResponse list = response.readEntity(UsersListResponse.class);
+                    pageEvent.end();
+                    if (pageEvent.shouldCommit()) {
+                        pageEvent.setEntries(list.getValue().size());
+                        pageEvent.setRequestedPageSize(tunedPageSize.orElse(0));
+                        pageEvent.commit();
+                    }
+                    if (tunedPageSize.isPresent()) {
+                        pageSizeTuner.get().onPage(list.getValue().size(), tunedPageSize.getAsInt(), System.nanoTime() - start, payload.sum());
+                    }
+                    return list;
+                }
+                if (response.getStatus() == Response.Status.NOT_FOUND.getStatusCode()) {
+                    throw new NotFoundException("Not found when requesting " + target.getUri() + " (" + trace + ")");
+                }
+                if (response.getStatus() == Response.Status.TOO_MANY_REQUESTS.getStatusCode()) {
+                    if (tunedPageSize.isPresent()) {
+                        pageSizeTuner.get().onThrottled();
+                    }
+                    throw ThrottledException.of(response, response.readEntity(String.class) + " (" + trace + ")");
+                }
+                throw failure(response, trace);
+            } finally {
+                if (response != null) {
+                    response.close();
+                }
+                trace.finish();
+            }
+        });
+    }
+
+    /**
+     * Reads one entry.
+     *
+     * @throws NotFoundException if there is no such entry
+     */
+    public Map<String, Object> readEntry(WebTarget target, String id) {
+        return readEntry(target, id, MsGraphApiEndpoint.DETAILS);
+    }
+
+    /**
+     * Reads one entry, accounted for as a request to the given endpoint.
+     *
+     * @throws NotFoundException if there is no such entry
+     */
+    public Map<String, Object> readEntry(WebTarget target, String id, MsGraphApiEndpoint endpoint) {
+        return execute(endpoint, authorization -> {
+            Response response = null;
+            RequestTrace trace = RequestTrace.start(endpoint, target, slowRequestThreshold);
+            try {
+                response = trace.request()
+                    .header(HttpHeaders.AUTHORIZATION, authorization)
+                    .accept(MediaType.APPLICATION_JSON_TYPE)
+                    .get();
+                trace.onResponse(response);
+                if (checkResponse(response)) {
+                    return response.readEntity(new GenericType<>(new TypeReference<Map<String, Object>>() {}.getType()));
+                }
+                if (response.getStatus() == Response.Status.NOT_FOUND.getStatusCode()) {
+                    throw new NotFoundException(id + " cannot be found (" + trace + ")");
+                }
+                if (response.getStatus() == Response.Status.TOO_MANY_REQUESTS.getStatusCode()) {
+                    throw ThrottledException.of(response, response.readEntity(String.class) + " (" + trace + ")");
+                }
+                throw failure(response, trace);
+            } finally {
+                if (response != null) {
+                    response.close();
+                }
+                trace.finish();
+            }
+        });
+    }
+
+    /**
+     * Reads a binary content, such as a photo, as a stream. The download is aborted as
+     * soon as the content is larger than the maximum size.
+     *
+     * @return the content, or an empty optional if it is larger than the maximum size
+     * @throws NotFoundException if there is no such content
+     */
+    public Optional<byte[]> readMedia(WebTarget target, String id, int maxSize) {
+        return execute(MsGraphApiEndpoint.PHOTO, authorization -> {
+            Response response = null;
+            RequestTrace trace = RequestTrace.start(MsGraphApiEndpoint.PHOTO, target, slowRequestThreshold);
+            try {
+                response = trace.request()
+                    .header(HttpHeaders.AUTHORIZATION, authorization)
+                    .accept(MediaType.WILDCARD_TYPE)
+                    .get();
+                trace.onResponse(response);
+                if (checkResponse(response)) {
+                    if (response.getLength() > maxSize) {
+                        return Optional.empty();
+                    }
+                    try (InputStream content = response.readEntity(InputStream.class)) {
+                        byte[] media = content.readNBytes(maxSize + 1);
+                        return media.length > maxSize ? Optional.empty() : Optional.of(media);
+                    } catch (IOException e) {
+                        throw new ProcessingException("Unable to read " + target.getUri() + " (" + trace + ")", e);
+                    }
+                }
+                if (response.getStatus() == Response.Status.NOT_FOUND.getStatusCode()) {
+                    throw new NotFoundException(id + " cannot be found (" + trace + ")");
+                }
+                if (response.getStatus() == Response.Status.TOO_MANY_REQUESTS.getStatusCode()) {
+                    throw ThrottledException.of(response, response.readEntity(String.class) + " (" + trace + ")");
+                }
+                throw failure(response, trace);
+            } finally {
+                if (response != null) {
+                    response.close();
+                }
+                trace.finish();
+            }
+        });
+    }
+
+    /**
+     * Reads the number of entries of a collection, from its /$count segment, which is
+     * always an advanced query.
+     */
+    public long readCount(WebTarget target) {
+        return execute(MsGraphApiEndpoint.COUNT, authorization -> {
+            Response response = null;
+            RequestTrace trace = RequestTrace.start(MsGraphApiEndpoint.COUNT, target, slowRequestThreshold);
+            try {
+                response = trace.request()
+                    .header(HttpHeaders.AUTHORIZATION, authorization)
+                    .header(CONSISTENCY_LEVEL, EVENTUAL)
+                    .accept(MediaType.TEXT_PLAIN_TYPE)
+                    .get();
+                trace.onResponse(response);
+                if (checkResponse(response)) {
+                    return Long.parseLong(response.readEntity(String.class).trim());
+                }
+                if (response.getStatus() == Response.Status.TOO_MANY_REQUESTS.getStatusCode()) {
+                    throw ThrottledException.of(response, response.readEntity(String.class) + " (" + trace + ")");
+                }
+                throw failure(response, trace);
+            } finally {
+                if (response != null) {
+                    response.close();
+                }
+                trace.finish();
+            }
+        });
+    }
+
+    /**
+     * Sends a request with a JSON entity, or without any, such as the creation or the
+     * deletion of a subscription.
+     *
+     * @return the JSON response, empty if there is none
+     * @throws NotFoundException if there is no such entry
+     */
+    public Map<String, Object> send(WebTarget target, String method, Optional<Object> entity) {
+        return execute(MsGraphApiEndpoint.OTHER, authorization -> {
+            Response response = null;
+            RequestTrace trace = RequestTrace.start(MsGraphApiEndpoint.OTHER, target, slowRequestThreshold);
+            try {
+                Invocation.Builder request = trace.request()
+                    .header(HttpHeaders.AUTHORIZATION, authorization)
+                    .accept(MediaType.APPLICATION_JSON_TYPE);
+                response = entity.isPresent() ? request.method(method, Entity.json(entity.get())) : request.method(method);
+                trace.onResponse(response);
+                if (checkResponse(response)) {
+                    if (response.getStatus() == Response.Status.NO_CONTENT.getStatusCode() || !response.hasEntity()) {
+                        return Collections.emptyMap();
+                    }
+                    return response.readEntity(new GenericType<>(new TypeReference<Map<String, Object>>() {}.getType()));
+                }
+                if (response.getStatus() == Response.Status.NOT_FOUND.getStatusCode()) {
+                    throw new NotFoundException("Not found when sending " + method + " " + target.getUri() + " (" + trace + ")");
+                }
+                if (response.getStatus() == Response.Status.TOO_MANY_REQUESTS.getStatusCode()) {
+                    throw ThrottledException.of(response, response.readEntity(String.class) + " (" + trace + ")");
+                }
+                throw failure(response, trace);
+            } finally {
+                if (response != null) {
+                    response.close();
+                }
+                trace.finish();
+            }
+        });
+    }
+
+    /**
+     * @return the exception of an unexpected response: a client error is an error of the
+     * request, which would fail again, and not of the endpoint
+     */
+    private static RuntimeException failure(Response response, RequestTrace trace) {
+        String message = response.readEntity(String.class) + " (" + trace + ")";
+        if (Response.Status.Family.familyOf(response.getStatus()) == Response.Status.Family.CLIENT_ERROR) {
+            return new WebApplicationException(message, response.getStatus());
+        }
+        return new ProcessingException(message);
+    }
+
+    private static boolean checkResponse(Response response) {
+        return Response.Status.Family.familyOf(response.getStatus()) == Response.Status.Family.SUCCESSFUL;
+    }
+}
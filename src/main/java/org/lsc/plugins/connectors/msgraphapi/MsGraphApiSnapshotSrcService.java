@@ -0,0 +1,214 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import static org.lsc.plugins.connectors.msgraphapi.MsGraphApiDao.ID;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.lsc.LscDatasets;
+import org.lsc.beans.IBean;
+import org.lsc.configuration.ConnectionType;
+import org.lsc.configuration.TaskType;
+import org.lsc.exception.LscServiceCommunicationException;
+import org.lsc.exception.LscServiceConfigurationException;
+import org.lsc.exception.LscServiceException;
+import org.lsc.plugins.connectors.msgraphapi.beans.User;
+import org.lsc.plugins.connectors.msgraphapi.generated.MsGraphApiSnapshotService;
+import org.lsc.plugins.connectors.msgraphapi.generated.PivotCollisionPolicyType;
+import org.lsc.service.IService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Replays the entries of a snapshot exported by {@link MsGraphApiExport}, without
+ * connecting to the API: to reproduce a synchronization offline, or to test a
+ * configuration against a fixed set of users.
+ */
+public class MsGraphApiSnapshotSrcService implements IService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MsGraphApiSnapshotSrcService.class);
+    private static final String DEFAULT_PIVOT = "mail";
+    /**
+     * The snapshot opened by each task: LSC never closes its services, the snapshot of a
+     * task is closed when the task is configured again, and all of them on shutdown so
+     * that the decompressed files are deleted.
+     */
+    private static final Map<String, SnapshotFile> SNAPSHOTS = new ConcurrentHashMap<>();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(MsGraphApiSnapshotSrcService::closeSnapshots, "msgraphapi-snapshots-shutdown"));
+    }
+
+    private final Class<IBean> beanClass;
+    private final SnapshotFile snapshot;
+    private final EntryBeanMapper beanMapper;
+    private final PivotCollisionPolicyType pivotCollisionPolicy;
+
+    public MsGraphApiSnapshotSrcService(TaskType task) throws LscServiceConfigurationException {
+        try {
+            if (task.getPluginSourceService().getAny() == null || task.getPluginSourceService().getAny().size() != 1 || !(task.getPluginSourceService().getAny().get(0) instanceof MsGraphApiSnapshotService)) {
+                throw new LscServiceConfigurationException("Unable to identify the msgraphapi snapshot service configuration " + "inside the plugin source node of the task: " + task.getName());
+            }
+            MsGraphApiSnapshotService service = (MsGraphApiSnapshotService) task.getPluginSourceService().getAny().get(0);
+            if (StringUtils.isBlank(service.getFile())) {
+                throw new LscServiceConfigurationException("No file configured in the msgraphapi snapshot service of the task: " + task.getName());
+            }
+            beanClass = (Class<IBean>) Class.forName(task.getBean());
+            beanMapper = new EntryBeanMapper(beanClass, EntryBeanMapper.parseAttributes(service.getDeduplicatedAttributes()));
+            String pivot = Optional.ofNullable(service.getPivot()).filter(StringUtils::isNotBlank).orElse(DEFAULT_PIVOT);
+            pivotCollisionPolicy = Optional.ofNullable(service.getPivotCollisionPolicy()).orElse(PivotCollisionPolicyType.FIRST);
+            snapshot = SnapshotFile.open(Paths.get(service.getFile()), pivot, new ObjectMapper());
+            close(SNAPSHOTS.put(task.getName(), snapshot));
+        } catch (ClassNotFoundException | IOException e) {
+            throw new LscServiceConfigurationException(e);
+        }
+    }
+
+    @Override
+    public IBean getBean(String pivotAttributeName, LscDatasets pivotAttributes, boolean fromSameService) throws LscServiceException {
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Call to getBean({}, {}, {})", pivotAttributeName, pivotAttributes, fromSameService);
+        }
+        if (pivotAttributes.getAttributesNames().size() < 1) {
+            return null;
+        }
+        String pivotAttribute = pivotAttributes.getAttributesNames().get(0);
+        String pivotValue = pivotAttributes.getStringValueAttribute(pivotAttribute);
+        try {
+            if (!fromSameService) {
+                Optional<String> id = snapshot.getIdByPivot(pivotValue);
+                return id.isPresent() ? beanMapper.toIdBean(id.get(), Optional.empty()) : null;
+            }
+            String idValue = pivotAttributes.getStringValueAttribute(ID);
+            if (idValue == null) {
+                return null;
+            }
+            Optional<Map<String, Object>> entry = snapshot.getById(idValue);
+            if (!entry.isPresent()) {
+                LOGGER.debug("{}/{} with id {} not found", pivotAttributeName, pivotValue, idValue);
+                return null;
+            }
+            return beanMapper.toBean(idValue, entry.get(), Optional.empty());
+        } catch (IOException e) {
+            LOGGER.error("IOException while reading bean {}/{} from the snapshot ({})", pivotAttributeName, pivotValue, e.toString());
+            LOGGER.debug(e.toString(), e);
+            throw new LscServiceCommunicationException(e);
+        } catch (InstantiationException | IllegalAccessException e) {
+            LOGGER.error("Bad class name: {}({})", beanClass.getName(), e.toString());
+            LOGGER.debug(e.toString(), e);
+            throw new LscServiceException(e);
+        }
+    }
+
+    @Override
+    public Map<String, LscDatasets> getListPivots() throws LscServiceException {
+        List<User> users = snapshot.getPivots();
+        // Keep the order of the file, LSC will ask for the beans in this order
+        Map<String, LscDatasets> listPivots = Maps.newLinkedHashMapWithExpectedSize(users.size());
+        Set<String> collisions = Sets.newHashSet();
+        for (User user : users) {
+            LscDatasets first = listPivots.putIfAbsent(user.getValue(), user.toDatasets());
+            if (first != null) {
+                handlePivotCollision(user.getValue(), first.getStringValueAttribute(ID), user.getId(), collisions);
+            }
+        }
+        collisions.forEach(listPivots::remove);
+        return ImmutableMap.copyOf(listPivots);
+    }
+
+    private void handlePivotCollision(String pivotValue, String firstId, String id, Set<String> collisions) throws LscServiceException {
+        switch (pivotCollisionPolicy) {
+            case FAIL:
+                throw new LscServiceException("The pivot " + pivotValue + " is shared by entries " + firstId + " and " + id);
+            case SKIP:
+                LOGGER.warn("The pivot {} is shared by entries {} and {}, it has been ignored.", pivotValue, firstId, id);
+                collisions.add(pivotValue);
+                break;
+            case FIRST:
+            default:
+                LOGGER.warn("The pivot {} is shared by entries {} and {}, the entry {} has been kept.", pivotValue, firstId, id, firstId);
+                break;
+        }
+    }
+
+    /**
+     * Closes the snapshots of all the tasks, deleting their decompressed files
+     */
+    static void closeSnapshots() {
+        SNAPSHOTS.values().removeIf(snapshot -> {
+            close(snapshot);
+            return true;
+        });
+    }
+
+    private static void close(SnapshotFile snapshot) {
+        if (snapshot == null) {
+            return;
+        }
+        try {
+            snapshot.close();
+        } catch (IOException e) {
+            LOGGER.warn("Unable to close the snapshot ({})", e.toString());
+        }
+    }
+
+    public Collection<Class<? extends ConnectionType>> getSupportedConnectionType() {
+        Collection<Class<? extends ConnectionType>> list = new ArrayList<Class<? extends ConnectionType>>();
+        return list;
+    }
+}
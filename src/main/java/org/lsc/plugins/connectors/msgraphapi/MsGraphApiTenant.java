@@ -0,0 +1,145 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import org.apache.commons.lang3.StringUtils;
+import org.lsc.exception.LscServiceConfigurationException;
+import org.lsc.plugins.connectors.msgraphapi.generated.CredentialType;
+import org.lsc.plugins.connectors.msgraphapi.generated.MsGraphApiConnectionSettings;
+import org.lsc.plugins.connectors.msgraphapi.generated.TenantType;
+
+/**
+ * A tenant of a connection, with the credentials of the application registered in it.
+ *
+ * Graph throttles each application in each tenant separately, so a tenant may have
+ * several application registrations, which share its requests.
+ */
+public class MsGraphApiTenant {
+    private final String tenant;
+    private final String clientId;
+    private final String clientSecret;
+    private final List<MsGraphApiTenant> registrations;
+
+    public MsGraphApiTenant(String tenant, String clientId, String clientSecret) {
+        this.tenant = tenant;
+        this.clientId = clientId;
+        this.clientSecret = clientSecret;
+        this.registrations = Collections.singletonList(this);
+    }
+
+    private MsGraphApiTenant(String tenant, String clientId, String clientSecret, List<CredentialType> additionalCredentials) throws LscServiceConfigurationException {
+        this.tenant = tenant;
+        this.clientId = clientId;
+        this.clientSecret = clientSecret;
+        List<MsGraphApiTenant> allRegistrations = new ArrayList<>();
+        allRegistrations.add(this);
+        for (CredentialType credential : additionalCredentials) {
+            if (StringUtils.isBlank(credential.getClientId()) || StringUtils.isBlank(credential.getClientSecret())) {
+                throw new LscServiceConfigurationException("An additional credential of the tenant " + tenant + " has no client id or secret");
+            }
+            if (allRegistrations.stream().anyMatch(registration -> registration.getClientId().equals(credential.getClientId()))) {
+                throw new LscServiceConfigurationException("The client id " + credential.getClientId() + " is configured twice for the tenant " + tenant);
+            }
+            allRegistrations.add(new MsGraphApiTenant(tenant, credential.getClientId(), credential.getClientSecret()));
+        }
+        this.registrations = Collections.unmodifiableList(allRegistrations);
+    }
+
+    /**
+     * @return the tenant of the connection followed by its additional tenants, which
+     * default to the credentials of the connection, additional credentials included
+     */
+    public static List<MsGraphApiTenant> fromSettings(MsGraphApiConnectionSettings settings) throws LscServiceConfigurationException {
+        List<MsGraphApiTenant> tenants = new ArrayList<>();
+        tenants.add(new MsGraphApiTenant(settings.getTenant(), settings.getClientId(), settings.getClientSecret(), settings.getAdditionalCredential()));
+        for (TenantType additionalTenant : settings.getAdditionalTenant()) {
+            if (StringUtils.isBlank(additionalTenant.getTenant())) {
+                throw new LscServiceConfigurationException("An additional tenant has no tenant");
+            }
+            if (tenants.stream().anyMatch(tenant -> tenant.getTenant().equals(additionalTenant.getTenant()))) {
+                throw new LscServiceConfigurationException("The tenant " + additionalTenant.getTenant() + " is configured twice");
+            }
+            if (StringUtils.isBlank(additionalTenant.getClientId())) {
+                List<CredentialType> additionalCredentials = new ArrayList<>(settings.getAdditionalCredential());
+                additionalCredentials.addAll(additionalTenant.getAdditionalCredential());
+                tenants.add(new MsGraphApiTenant(additionalTenant.getTenant(), settings.getClientId(),
+                    Optional.ofNullable(additionalTenant.getClientSecret()).filter(StringUtils::isNotBlank).orElse(settings.getClientSecret()),
+                    additionalCredentials));
+            } else {
+                tenants.add(new MsGraphApiTenant(additionalTenant.getTenant(), additionalTenant.getClientId(),
+                    Optional.ofNullable(additionalTenant.getClientSecret()).filter(StringUtils::isNotBlank).orElse(settings.getClientSecret()),
+                    additionalTenant.getAdditionalCredential()));
+            }
+        }
+        return tenants;
+    }
+
+    public String getTenant() {
+        return tenant;
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    public String getClientSecret() {
+        return clientSecret;
+    }
+
+    /**
+     * @return the application registrations of the tenant, this one first
+     */
+    public List<MsGraphApiTenant> getRegistrations() {
+        return registrations;
+    }
+
+    @Override
+    public String toString() {
+        return clientId + "@" + tenant;
+    }
+}
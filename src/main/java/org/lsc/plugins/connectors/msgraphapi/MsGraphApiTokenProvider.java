@@ -0,0 +1,161 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import jakarta.ws.rs.ProcessingException;
+import jakarta.ws.rs.client.Client;
+
+import org.lsc.plugins.connectors.msgraphapi.beans.AuthenticationResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Provides the access token of an application in a tenant.
+ *
+ * The token is requested in the background by {@link #prefetch()} and only awaited when
+ * it is actually needed. It is requested again shortly before it expires, or on the next
+ * use after a failure.
+ */
+public class MsGraphApiTokenProvider {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MsGraphApiTokenProvider.class);
+    private static final long REFRESH_MARGIN = TimeUnit.MINUTES.toNanos(5);
+
+    private final MsGraphApiAuthentication authentication = new MsGraphApiAuthentication();
+    private final Client client;
+    private final MsGraphApiTenant tenant;
+    private final String authenticationURL;
+    private final String scope;
+    private final Executor executor;
+    private final EndpointGuard guard;
+    private final LongSupplier nanoTime;
+
+    private CompletableFuture<Token> token;
+
+    private static class Token {
+        private final String accessToken;
+        private final long refreshAt;
+
+        private Token(String accessToken, long refreshAt) {
+            this.accessToken = accessToken;
+            this.refreshAt = refreshAt;
+        }
+
+        private boolean shouldRefresh(long now) {
+            return refreshAt - now <= 0;
+        }
+    }
+
+    public MsGraphApiTokenProvider(Client client, MsGraphApiTenant tenant, String authenticationURL, String scope, Executor executor, EndpointGuard guard) {
+        this(client, tenant, authenticationURL, scope, executor, guard, System::nanoTime);
+    }
+
+    MsGraphApiTokenProvider(Client client, MsGraphApiTenant tenant, String authenticationURL, String scope, Executor executor, EndpointGuard guard,
+                            LongSupplier nanoTime) {
+        this.client = client;
+        this.tenant = tenant;
+        this.authenticationURL = authenticationURL;
+        this.scope = scope;
+        this.executor = executor;
+        this.guard = guard;
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * Starts requesting a token in the background, unless a valid token is available or already requested.
+     */
+    public synchronized CompletableFuture<?> prefetch() {
+        return currentToken();
+    }
+
+    /**
+     * @return a valid access token, waiting for it if needed
+     * @throws ProcessingException if the token cannot be obtained
+     */
+    public String getToken() {
+        try {
+            return currentToken().join().accessToken;
+        } catch (CompletionException e) {
+            throw new ProcessingException("Unable to get an access token for " + tenant, e.getCause());
+        }
+    }
+
+    private synchronized CompletableFuture<Token> currentToken() {
+        if (token == null || token.isCompletedExceptionally() || (token.isDone() && token.join().shouldRefresh(nanoTime.getAsLong()))) {
+            token = CompletableFuture.supplyAsync(this::authenticate, executor);
+        }
+        return token;
+    }
+
+    private Token authenticate() {
+        LOGGER.debug("Requesting an access token for {}", tenant);
+        TokenRequestEvent event = new TokenRequestEvent();
+        event.begin();
+        try {
+            long requestedAt = nanoTime.getAsLong();
+            AuthenticationResponse response = guard.execute(() -> authentication.authenticate(client, tenant.getTenant(), authenticationURL, scope,
+                tenant.getClientId(), tenant.getClientSecret()));
+            long lifetime = TimeUnit.SECONDS.toNanos(response.getExpiresIn());
+            event.setSucceeded(true);
+            event.setExpiresIn(response.getExpiresIn());
+            return new Token(response.getAccessToken(), requestedAt + Math.max(lifetime - REFRESH_MARGIN, lifetime / 2));
+        } catch (AuthorizationException | EndpointUnavailableException e) {
+            LOGGER.error("Unable to get an access token for {} ({})", tenant, e.toString());
+            throw new CompletionException(e);
+        } finally {
+            event.setTenant(tenant.getTenant());
+            event.setClientId(tenant.getClientId());
+            event.commit();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return tenant.toString();
+    }
+}
@@ -42,216 +42,104 @@
  */
 package org.lsc.plugins.connectors.msgraphapi;
 
-import static org.lsc.plugins.connectors.msgraphapi.MsGraphApiDao.ID;
+import static org.lsc.plugins.connectors.msgraphapi.MsGraphApiDao.TENANT;
 
-import java.util.Collection;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.LinkedHashSet;
-import java.util.Set;
-import java.util.List;
+import java.io.IOException;
+import java.util.AbstractMap;
 import java.util.Map;
 import java.util.Optional;
-import java.util.LinkedHashMap;
 
-import jakarta.ws.rs.NotFoundException;
 import jakarta.ws.rs.ProcessingException;
 import jakarta.ws.rs.WebApplicationException;
 
 import org.lsc.LscDatasets;
-import org.lsc.beans.IBean;
-import org.lsc.configuration.ConnectionType;
-import org.lsc.configuration.PluginConnectionType;
 import org.lsc.configuration.TaskType;
 import org.lsc.exception.LscServiceCommunicationException;
 import org.lsc.exception.LscServiceConfigurationException;
 import org.lsc.exception.LscServiceException;
 import org.lsc.plugins.connectors.msgraphapi.beans.User;
-import org.lsc.plugins.connectors.msgraphapi.generated.MsGraphApiConnectionSettings;
 import org.lsc.plugins.connectors.msgraphapi.generated.MsGraphApiUsersService;
-import org.lsc.service.IService;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.lsc.service.IAsynchronousService;
 
-import com.google.common.annotations.VisibleForTesting;
-import com.google.common.collect.ImmutableMap;
-
-public class MsGraphApiUsersSrcService implements IService {
-
-    protected static final Logger LOGGER = LoggerFactory.getLogger(MsGraphApiUsersSrcService.class);
-    /**
-     * Preceding the object feeding, it will be instantiated from this class.
-     */
-    private final Class<IBean> beanClass;
+/**
+ * Synchronizes the users of the tenants.
+ *
+ * When change notifications are configured, the service can also be used
+ * asynchronously: the users are then synchronized as soon as Graph notifies their
+ * changes.
+ */
+public class MsGraphApiUsersSrcService extends MsGraphApiEntitySrcService implements IAsynchronousService {
 
-    private final MsGraphApiUsersService service;
-    private final MsGraphApiDao dao;
-    private final MsGraphApiConnectionSettings settings;
+    private final Optional<ChangeNotifications> notifications;
 
     public MsGraphApiUsersSrcService(TaskType task) throws LscServiceConfigurationException {
-        try {
-            if (task.getPluginSourceService().getAny() == null || task.getPluginSourceService().getAny().size() != 1 || !((task.getPluginSourceService().getAny().get(0) instanceof MsGraphApiUsersService))) {
-                throw new LscServiceConfigurationException("Unable to identify the msgraphapi service configuration " + "inside the plugin source node of the task: " + task.getName());
-            }
-
-            service = (MsGraphApiUsersService) task.getPluginSourceService().getAny().get(0);
-            beanClass = (Class<IBean>) Class.forName(task.getBean());
-            if (task.getPluginSourceService().getConnection() == null || task.getPluginSourceService().getConnection().getReference() == null || ! (task.getPluginSourceService().getConnection().getReference() instanceof PluginConnectionType)) {
-                throw new LscServiceConfigurationException("Unable to identify the msgraphapi service connection " + "inside the plugin source node of the task: " + task.getName());
-            }
-            PluginConnectionType pluginConnectionType = (PluginConnectionType)task.getPluginSourceService().getConnection().getReference();
-            if (pluginConnectionType.getAny() == null || pluginConnectionType.getAny().size() != 1 || !(pluginConnectionType.getAny().get(0) instanceof MsGraphApiConnectionSettings)) {
-                throw new LscServiceConfigurationException("Unable to identify the msgraphapi connection settings " + "inside the connection node of the task: " + task.getName());
-            }
-            settings = (MsGraphApiConnectionSettings) pluginConnectionType.getAny().get(0);
-
-            String token = new MsGraphApiAuthentication()
-                .authenticate(settings.getTenant(), settings.getAuthenticationURL(), settings.getScope(), settings.getClientId(), settings.getClientSecret())
-                .getAccessToken();
-
-            dao = new MsGraphApiDao(token, settings, service);
-
-        } catch (ClassNotFoundException | AuthorizationException e) {
-            throw new LscServiceConfigurationException(e);
-        }
+        super(task, MsGraphApiUsersService.class);
+        MsGraphApiUsersService service = (MsGraphApiUsersService) task.getPluginSourceService().getAny().get(0);
+        notifications = ChangeNotifications.fromConfiguration(service.getNotifications(), getDaos(), getInstanceKey());
     }
 
+    /**
+     * @return the pivots of the next changed user, or null if no change is pending
+     */
     @Override
-    public IBean getBean(String pivotAttributeName, LscDatasets pivotAttributes, boolean fromSameService) throws LscServiceException {
-        LOGGER.debug(String.format("Call to getBean(%s, %s, %b)", pivotAttributeName, pivotAttributes, fromSameService));
-        if (pivotAttributes.getAttributesNames().size() < 1) {
-            return null;
-        }
-        String pivotAttribute = pivotAttributes.getAttributesNames().get(0);
-        String pivotValue = pivotAttributes.getStringValueAttribute(pivotAttribute);
-        if (fromSameService) {
-            return getBeanFromSameService(pivotAttributeName, pivotAttributes, pivotValue);
-        } else {
-            return getBeanForClean(pivotAttributeName, pivotValue);
+    public Map.Entry<String, LscDatasets> getNextId() throws LscServiceException {
+        if (!notifications.isPresent()) {
+            throw new LscServiceConfigurationException("No notifications configured in the msgraphapi users service, it cannot be used asynchronously");
         }
-    }
-
-    private IBean getBeanForClean(String pivotAttributeName, String pivotValue) throws LscServiceException {
         try {
-            Optional<User> maybeUser = dao.getFirstUserWithId(pivotValue);
-            if (maybeUser.isPresent()) {
-                return userIdToBean(maybeUser.get().getId());
-            } else {
-                return null;
-            }
-        } catch (ProcessingException e) {
-            LOGGER.error(String.format("ProcessingException while getting bean %s/%s (%s)",
-                pivotAttributeName, pivotValue, e));
-            LOGGER.error(e.toString(), e);
-            throw new LscServiceCommunicationException(e);
-        } catch (NotFoundException e) {
-            LOGGER.debug(String.format("%s/%s not found", pivotAttributeName, pivotValue));
-            return null;
-        } catch (WebApplicationException e) {
-            LOGGER.error(String.format("WebApplicationException while getting bean %s/%s (%s)",
-                pivotAttributeName, pivotValue, e));
-            LOGGER.debug(e.toString(), e);
-            throw new LscServiceException(e);
-        } catch (InstantiationException | IllegalAccessException e) {
-            LOGGER.error("Bad class name: " + beanClass.getName() + "(" + e + ")");
-            LOGGER.debug(e.toString(), e);
-            throw new LscServiceException(e);
-        }
-    }
-
-    private IBean getBeanFromSameService(String pivotAttributeName, LscDatasets pivotAttributes, String pivotValue) throws LscServiceException {
-        String idValue = pivotAttributes.getStringValueAttribute(ID);
-        if (idValue == null) {
-            return null;
+            notifications.get().start();
+        } catch (IOException e) {
+            throw new LscServiceConfigurationException("Unable to receive the change notifications", e);
         }
-        try {
-            Map<String, Object> user = dao.getUserDetails(idValue);
-            return mapToBean(idValue, user);
-        } catch (ProcessingException e) {
-            LOGGER.error(String.format("ProcessingException while getting bean %s/%s with id %s (%s)",
-                pivotAttributeName, pivotValue, idValue, e));
-            LOGGER.error(e.toString(), e);
-            throw new LscServiceCommunicationException(e);
-        } catch (NotFoundException e) {
-            LOGGER.debug(String.format("%s/%s with id %s not found", pivotAttributeName, idValue, pivotValue));
-            return null;
-        } catch (WebApplicationException e) {
-            LOGGER.error(String.format("WebApplicationException while getting bean %s/%s with id %s (%s)",
-                pivotAttributeName, pivotValue, idValue, e));
-            LOGGER.debug(e.toString(), e);
-            throw new LscServiceException(e);
-        } catch (InstantiationException | IllegalAccessException e) {
-            LOGGER.error("Bad class name: " + beanClass.getName() + "(" + e + ")");
-            LOGGER.debug(e.toString(), e);
-            throw new LscServiceException(e);
-        }
-    }
-
-    @VisibleForTesting
-    IBean mapToBean(String idValue, Map<String, Object> user) throws InstantiationException, IllegalAccessException {
-        IBean bean = beanClass.newInstance();
-
-        bean.setMainIdentifier(idValue);
-
-        LscDatasets datasets = new LscDatasets();
-        /* In new version, graphApi uses LinkedHashMap values
-         * like: Key={childKey=value, childKey2=value2, ...}
-         * Then in this case you could retrieve in bean
-         * attribute values as "<Key>/<childKey>" = "<childValue>".
-         * ex: "onPremisesExtensionAttributes/extensionAttribute1" = "toto"
-        */
-        for (Map.Entry entry : user.entrySet()) {
-            if (entry.getValue() instanceof java.util.LinkedHashMap) {
-                LinkedHashMap innerMap = (LinkedHashMap) entry.getValue();
-                Set<String> keys = innerMap.keySet();
-                for ( String key : keys ) {
-                    datasets.put(entry.getKey() + "/" + key,
-                        innerMap.get(key) == null ? new LinkedHashSet<>() : innerMap.get(key));
-                }
+        Optional<ChangeQueue.Change> change;
+        while ((change = notifications.get().poll()).isPresent()) {
+            if (!isInPartition(change.get().getId())) {
+                continue;
+            }
+            MsGraphApiDao tenantDao = getDaos().get(change.get().getTenant());
+            if (tenantDao == null) {
+                LOGGER.warn("{} is not in a tenant of the service, ignoring it", change.get());
+                continue;
             }
-            else {
-                datasets.put((String)entry.getKey(),
-                    entry.getValue() == null ? new LinkedHashSet<>() : entry.getValue());
+            try {
+                Optional<User> user = tenantDao.getChanged(change.get().getId());
+                if (!user.isPresent()) {
+                    LOGGER.debug("{} does not exist anymore or does not match the filter", change.get());
+                    continue;
+                }
+                LscDatasets datasets = user.get().toDatasets();
+                if (isMultiTenant()) {
+                    datasets.put(TENANT, change.get().getTenant());
+                }
+                return new AbstractMap.SimpleImmutableEntry<>(user.get().getValue(), datasets);
+            } catch (ProcessingException e) {
+                LOGGER.error("ProcessingException while reading the changed user {} ({})", change.get(), e.toString());
+                LOGGER.debug(e.toString(), e);
+                notifications.get().retry(change.get());
+                throw new LscServiceCommunicationException(e);
+            } catch (WebApplicationException e) {
+                LOGGER.error("WebApplicationException while reading the changed user {} ({})", change.get(), e.toString());
+                LOGGER.debug(e.toString(), e);
+                if (isTransient(e)) {
+                    notifications.get().retry(change.get());
+                }
+                throw new LscServiceException(e);
             }
         }
-
-        bean.setDatasets(datasets);
-
-        return bean;
+        return null;
     }
 
-    private IBean userIdToBean(String idValue) throws InstantiationException, IllegalAccessException {
-        IBean bean = beanClass.newInstance();
-
-        bean.setMainIdentifier(idValue);
-        bean.setDatasets(new LscDatasets(ImmutableMap.of("id", idValue)));
-        return bean;
+    /**
+     * @return true if the same request may succeed later, such as while a token or a
+     * permission propagates, or while Graph is throttling or failing
+     */
+    private static boolean isTransient(WebApplicationException e) {
+        int status = e.getResponse() != null ? e.getResponse().getStatus() : 0;
+        return status == 401 || status == 403 || status == 408 || status == 409 || status == 429 || status >= 500;
     }
 
     @Override
-    public Map<String, LscDatasets> getListPivots() throws LscServiceException {
-        try {
-            List<User> userList = dao.getUsersList();
-
-            Map<String, LscDatasets> listPivots = new HashMap<String, LscDatasets>();
-            for (User user: userList) {
-                listPivots.put(user.getValue(), user.toDatasets());
-            }
-            return ImmutableMap.copyOf(listPivots);
-        } catch (ProcessingException e) {
-            LOGGER.error(String.format("ProcessingException while getting pivot list (%s)", e));
-            LOGGER.debug(e.toString(), e);
-            throw new LscServiceCommunicationException(e);
-        } catch (WebApplicationException e) {
-            LOGGER.error(String.format("WebApplicationException while getting pivot list (%s)", e));
-            LOGGER.debug(e.toString(), e);
-            throw new LscServiceException(e);
-        }
+    public long getInterval() {
+        return notifications.map(ChangeNotifications::getInterval).orElse((long) ChangeNotifications.DEFAULT_INTERVAL);
     }
-
-    public Collection<Class<? extends ConnectionType>> getSupportedConnectionType() {
-        Collection<Class<? extends ConnectionType>> list = new ArrayList<Class<? extends ConnectionType>>();
-        return list;
-    }
-
 }
@@ -0,0 +1,293 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.common.io.CountingOutputStream;
+
+/**
+ * Writes entries to gzip compressed NDJSON files, one JSON object per line.
+ *
+ * Pages of entries are handed over to a writer thread through a bounded queue, so that
+ * fetching the next pages and compressing the previous ones overlap, while at most a
+ * few pages are held in memory. A new part is started once the compressed size of the
+ * current one reaches the part size: the files are named after the prefix, followed by
+ * the number of the part and .ndjson.gz.
+ *
+ * The parts are written under temporary names, followed by .tmp, and only renamed once
+ * the export has been closed successfully: an interrupted export leaves no truncated
+ * part behind.
+ */
+public class NdjsonExporter implements Consumer<List<Map<String, Object>>>, Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(NdjsonExporter.class);
+    public static final long DEFAULT_PART_SIZE = 1024L * 1024 * 1024;
+    public static final int DEFAULT_QUEUE_SIZE = 4;
+    private static final List<Map<String, Object>> END = Collections.emptyList();
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private final ObjectMapper objectMapper;
+    /**
+     * Flushing after each entry would push it through the compression, defeating its
+     * buffer
+     */
+    private final ObjectWriter entryWriter;
+    private final Path prefix;
+    private final long partSize;
+    private final BlockingQueue<List<Map<String, Object>>> pages;
+    private final Thread writer;
+    private final List<Path> parts = new ArrayList<>();
+    private volatile long entries;
+    private volatile Throwable failure;
+    private boolean closed;
+
+    private CountingOutputStream partBytes;
+    private OutputStream part;
+    private JsonGenerator generator;
+
+    public NdjsonExporter(ObjectMapper objectMapper, Path prefix, long partSize, int queueSize) {
+        if (partSize < 1 || queueSize < 1) {
+            throw new IllegalArgumentException("The part size and the queue size must be positive: " + partSize + ", " + queueSize);
+        }
+        this.objectMapper = objectMapper;
+        this.entryWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.prefix = prefix;
+        this.partSize = partSize;
+        this.pages = new ArrayBlockingQueue<>(queueSize);
+        this.writer = new Thread(this::write, "msgraphapi-export-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queues a page of entries, waiting while the writer is behind.
+     *
+     * @throws UncheckedIOException if writing failed
+     */
+    @Override
+    public void accept(List<Map<String, Object>> page) {
+        checkFailure();
+        if (page.isEmpty()) {
+            return;
+        }
+        try {
+            while (!pages.offer(page, 1, TimeUnit.SECONDS)) {
+                checkFailure();
+                if (!writer.isAlive()) {
+                    throw new IllegalStateException("The export writer has stopped");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while exporting", e);
+        }
+    }
+
+    /**
+     * Waits for the queued pages to be written, closes the last part and renames the
+     * parts to their final names. The parts are deleted if writing failed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            stopWriter();
+        } catch (IOException e) {
+            deleteParts();
+            throw e;
+        }
+        if (failure != null) {
+            deleteParts();
+            throw failure instanceof IOException ? (IOException) failure : new IOException(failure);
+        }
+        for (Path path : getParts()) {
+            Files.move(temporary(path), path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /**
+     * Stops the export without writing the pages still queued, when reading the entries
+     * failed: the parts written so far are deleted.
+     */
+    public void abort() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        pages.clear();
+        try {
+            stopWriter();
+        } finally {
+            deleteParts();
+        }
+    }
+
+    private void stopWriter() throws IOException {
+        try {
+            while (writer.isAlive() && !pages.offer(END, 1, TimeUnit.SECONDS)) {
+                // The writer is behind, or failed and stopped
+            }
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            writer.interrupt();
+            throw new IOException("Interrupted while exporting", e);
+        }
+    }
+
+    private void deleteParts() throws IOException {
+        for (Path path : getParts()) {
+            Files.deleteIfExists(temporary(path));
+        }
+    }
+
+    private static Path temporary(Path path) {
+        return path.resolveSibling(path.getFileName() + TEMPORARY_SUFFIX);
+    }
+
+    /**
+     * @return the final names of the parts
+     */
+    public List<Path> getParts() {
+        synchronized (parts) {
+            return new ArrayList<>(parts);
+        }
+    }
+
+    public long getEntries() {
+        return entries;
+    }
+
+    private void checkFailure() {
+        if (failure != null) {
+            throw failure instanceof IOException ? new UncheckedIOException((IOException) failure) : new IllegalStateException(failure);
+        }
+    }
+
+    private void write() {
+        try {
+            List<Map<String, Object>> page;
+            while ((page = pages.take()) != END) {
+                for (Map<String, Object> entry : page) {
+                    if (part == null) {
+                        openPart();
+                    }
+                    entryWriter.writeValue(generator, entry);
+                    generator.writeRaw('\n');
+                    entries++;
+                    // Entries are never split: the part is closed once it has reached its size. The
+                    // entries still buffered by the compression are not counted yet, a part may
+                    // exceed its size by as much
+                    if (partBytes.getCount() >= partSize) {
+                        closePart();
+                    }
+                }
+            }
+            closePart();
+        } catch (InterruptedException e) {
+            failure = e;
+            closeQuietly();
+        } catch (Throwable e) {
+            failure = e;
+            pages.clear();
+            closeQuietly();
+        }
+    }
+
+    private void openPart() throws IOException {
+        Path path = prefix.resolveSibling(String.format("%s-%05d.ndjson.gz", prefix.getFileName(), parts.size()));
+        partBytes = new CountingOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary(path))));
+        part = new GZIPOutputStream(partBytes, 64 * 1024);
+        generator = objectMapper.getFactory().createGenerator(part);
+        // Each line is an entry, without the space written before the root values
+        generator.setRootValueSeparator(null);
+        synchronized (parts) {
+            parts.add(path);
+        }
+        LOGGER.info("Exporting to {}", path);
+    }
+
+    private void closePart() throws IOException {
+        if (part != null) {
+            // Closing the generator closes the part too
+            generator.close();
+            generator = null;
+            part = null;
+            LOGGER.debug("Exported {} entries so far, last part is {} bytes", entries, partBytes.getCount());
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            closePart();
+        } catch (IOException e) {
+            LOGGER.debug("Unable to close the part {} ({})", parts.get(parts.size() - 1), e.toString());
+        }
+    }
+}
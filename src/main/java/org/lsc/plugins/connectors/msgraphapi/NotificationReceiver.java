@@ -0,0 +1,225 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Receives the change notifications sent by Graph, on an embedded HTTP server.
+ *
+ * The validation requests sent by Graph when a subscription is created are answered
+ * with their validation token. Notifications are only accepted with the client state
+ * of the subscriptions, and are handed over to the listener. If the listener cannot
+ * take them, they are refused with a 503 status, so that Graph sends them again later.
+ *
+ * Graph only sends notifications to HTTPS URLs: the server is meant to be exposed
+ * through a reverse proxy terminating TLS.
+ */
+public class NotificationReceiver implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(NotificationReceiver.class);
+    public static final String VALIDATION_TOKEN = "validationToken";
+    private static final int MAX_BODY_SIZE = 4 * 1024 * 1024;
+    private static final String RETRY_AFTER = "60";
+
+    /**
+     * Handles the notifications received
+     */
+    public interface Listener {
+        /**
+         * @return false if the change cannot be taken now
+         */
+        boolean onChange(String subscriptionId, String id, String changeType);
+
+        void onLifecycleEvent(String subscriptionId, String lifecycleEvent);
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final byte[] clientState;
+    private final ObjectMapper objectMapper;
+    private final Listener listener;
+
+    /**
+     * Starts receiving notifications.
+     *
+     * @param path the path of the notification URL
+     */
+    public NotificationReceiver(InetSocketAddress address, String path, String clientState, ObjectMapper objectMapper, Listener listener) throws IOException {
+        this.clientState = clientState.getBytes(StandardCharsets.UTF_8);
+        this.objectMapper = objectMapper;
+        this.listener = listener;
+        this.executor = Executors.newFixedThreadPool(2, new ThreadFactoryBuilder()
+            .setNameFormat("msgraphapi-notifications-%d")
+            .setDaemon(true)
+            .build());
+        this.server = HttpServer.create(address, 0);
+        server.createContext(path, this::handle);
+        server.setExecutor(executor);
+        server.start();
+        LOGGER.info("Receiving change notifications on {}{}", server.getAddress(), path);
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            Optional<String> validationToken = queryParameter(exchange.getRequestURI().getRawQuery(), VALIDATION_TOKEN);
+            if (validationToken.isPresent()) {
+                LOGGER.debug("Answering a validation request");
+                respond(exchange, 200, validationToken.get());
+                return;
+            }
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, "");
+                return;
+            }
+            byte[] body = exchange.getRequestBody().readNBytes(MAX_BODY_SIZE + 1);
+            if (body.length > MAX_BODY_SIZE) {
+                respond(exchange, 413, "");
+                return;
+            }
+            Map<String, Object> notifications = objectMapper.readValue(body, new TypeReference<Map<String, Object>>() {});
+            boolean accepted = true;
+            if (notifications.get("value") instanceof List) {
+                for (Object notification : (List<?>) notifications.get("value")) {
+                    if (notification instanceof Map) {
+                        accepted = handle((Map<?, ?>) notification) && accepted;
+                    }
+                }
+            }
+            if (accepted) {
+                respond(exchange, 202, "");
+            } else {
+                exchange.getResponseHeaders().add("Retry-After", RETRY_AFTER);
+                respond(exchange, 503, "");
+            }
+        } catch (JsonProcessingException e) {
+            LOGGER.warn("Unable to parse a notification ({})", e.toString());
+            respond(exchange, 400, "");
+        } catch (RuntimeException e) {
+            LOGGER.error("Unable to handle a notification ({})", e.toString());
+            LOGGER.debug(e.toString(), e);
+            respond(exchange, 500, "");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * @return false if the notification has not been taken
+     */
+    private boolean handle(Map<?, ?> notification) {
+        String subscriptionId = Objects.toString(notification.get("subscriptionId"), null);
+        Object state = notification.get("clientState");
+        if (state == null || !MessageDigest.isEqual(clientState, state.toString().getBytes(StandardCharsets.UTF_8))) {
+            LOGGER.warn("Ignoring a notification of the subscription {} with a wrong client state", subscriptionId);
+            return true;
+        }
+        if (notification.get("lifecycleEvent") != null) {
+            listener.onLifecycleEvent(subscriptionId, notification.get("lifecycleEvent").toString());
+            return true;
+        }
+        Object resourceData = notification.get("resourceData");
+        Object id = resourceData instanceof Map ? ((Map<?, ?>) resourceData).get(MsGraphApiDao.ID) : null;
+        if (id == null) {
+            LOGGER.debug("Ignoring a notification of the subscription {} without id", subscriptionId);
+            return true;
+        }
+        return listener.onChange(subscriptionId, id.toString(), Objects.toString(notification.get("changeType"), null));
+    }
+
+    private static Optional<String> queryParameter(String rawQuery, String name) {
+        if (rawQuery == null) {
+            return Optional.empty();
+        }
+        for (String parameter : rawQuery.split("&")) {
+            if (parameter.startsWith(name + "=")) {
+                return Optional.of(URLDecoder.decode(parameter.substring(name.length() + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] content = body.getBytes(StandardCharsets.UTF_8);
+        if (content.length > 0) {
+            exchange.getResponseHeaders().add("Content-Type", "text/plain; charset=utf-8");
+        }
+        exchange.sendResponseHeaders(status, content.length > 0 ? content.length : -1);
+        if (content.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(content);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.lsc.plugins.connectors.msgraphapi.generated.AdaptivePageSizeType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tunes the page size ($top) used to enumerate users.
+ *
+ * The response time and payload size of the pages of an enumeration are observed, and
+ * the page size is scaled so that they get closer to their targets, while staying within
+ * the limits of the API. Throttling halves the page size. As the page size of an
+ * enumeration is fixed by its first request (@odata.nextLink keeps $top), a new page
+ * size only applies to the next enumeration.
+ */
+public class PageSizeTuner {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PageSizeTuner.class);
+    public static final int GRAPH_MAX_PAGE_SIZE = 999;
+    public static final int GRAPH_DEFAULT_PAGE_SIZE = 100;
+    public static final int DEFAULT_TARGET_RESPONSE_TIME = 2000;
+    private static final double MAX_STEP = 2;
+
+    private final String name;
+    private final long targetResponseTime;
+    private final long targetPayloadSize;
+    private final int minPageSize;
+    private final int maxPageSize;
+
+    private int pageSize;
+    private long decisions;
+    private long lastResponseTime = -1;
+    private long lastPayloadSize = -1;
+
+    private int pages;
+    private long pagesNanos;
+    private int measuredPages;
+    private long pagesBytes;
+    private boolean throttled;
+
+    public PageSizeTuner(String name, int initialPageSize, long targetResponseTime, long targetPayloadSize, int minPageSize, int maxPageSize) {
+        this.name = name;
+        this.targetResponseTime = TimeUnit.MILLISECONDS.toNanos(targetResponseTime);
+        this.targetPayloadSize = targetPayloadSize;
+        this.minPageSize = minPageSize;
+        this.maxPageSize = maxPageSize;
+        this.pageSize = clamp(initialPageSize);
+    }
+
+    public static Optional<PageSizeTuner> fromConfiguration(String name, AdaptivePageSizeType configuration, Optional<Integer> pageSize) {
+        if (configuration == null) {
+            return Optional.empty();
+        }
+        int min = Optional.ofNullable(configuration.getMinPageSize()).map(size -> Math.max(1, Math.min(size, GRAPH_MAX_PAGE_SIZE))).orElse(1);
+        int max = Optional.ofNullable(configuration.getMaxPageSize()).map(size -> Math.max(min, Math.min(size, GRAPH_MAX_PAGE_SIZE))).orElse(GRAPH_MAX_PAGE_SIZE);
+        int targetResponseTime = Optional.ofNullable(configuration.getTargetResponseTime()).filter(time -> time > 0).orElse(DEFAULT_TARGET_RESPONSE_TIME);
+        long targetPayloadSize = Optional.ofNullable(configuration.getTargetPayloadSize()).filter(size -> size > 0).orElse(0L);
+        return Optional.of(new PageSizeTuner(name, pageSize.orElse(GRAPH_DEFAULT_PAGE_SIZE), targetResponseTime, targetPayloadSize, min, max));
+    }
+
+    /**
+     * @return the page size to use for the next enumeration, taking the pages observed since the last call into account
+     */
+    public synchronized int nextPageSize() {
+        decide();
+        return pageSize;
+    }
+
+    /**
+     * Observes a page of an enumeration.
+     *
+     * @param users the number of users in the page
+     * @param requestedPageSize the page size the page was requested with
+     * @param nanos the response time, including parsing
+     * @param bytes the size of the payload, or -1 if it is unknown
+     */
+    public synchronized void onPage(int users, int requestedPageSize, long nanos, long bytes) {
+        // The last page of an enumeration tells nothing about full pages
+        if (users < requestedPageSize) {
+            return;
+        }
+        pages++;
+        pagesNanos += nanos;
+        if (bytes >= 0) {
+            measuredPages++;
+            pagesBytes += bytes;
+        }
+    }
+
+    public synchronized void onThrottled() {
+        throttled = true;
+    }
+
+    private void decide() {
+        if (pages == 0 && !throttled) {
+            return;
+        }
+        double factor;
+        if (throttled) {
+            factor = 1 / MAX_STEP;
+        } else {
+            lastResponseTime = TimeUnit.NANOSECONDS.toMillis(pagesNanos / pages);
+            factor = (double) targetResponseTime * pages / pagesNanos;
+            if (measuredPages > 0) {
+                lastPayloadSize = pagesBytes / measuredPages;
+                if (targetPayloadSize > 0) {
+                    factor = Math.min(factor, (double) targetPayloadSize * measuredPages / pagesBytes);
+                }
+            }
+            factor = Math.max(1 / MAX_STEP, Math.min(MAX_STEP, factor));
+        }
+        int previousPageSize = pageSize;
+        pageSize = clamp((int) Math.round(pageSize * factor));
+        decisions++;
+        LOGGER.info("Page size for {}: {} -> {} ({}, average response time {} ms, average payload {} bytes)",
+            name, previousPageSize, pageSize, throttled ? "throttled" : "not throttled", lastResponseTime, lastPayloadSize);
+
+        pages = 0;
+        pagesNanos = 0;
+        measuredPages = 0;
+        pagesBytes = 0;
+        throttled = false;
+    }
+
+    private int clamp(int size) {
+        return Math.max(minPageSize, Math.min(maxPageSize, size));
+    }
+
+    public synchronized int getPageSize() {
+        return pageSize;
+    }
+
+    public synchronized long getDecisions() {
+        return decisions;
+    }
+
+    /**
+     * @return the average response time of the full pages of the last tuned enumeration, in milliseconds, or -1
+     */
+    public synchronized long getLastResponseTime() {
+        return lastResponseTime;
+    }
+
+    /**
+     * @return the average payload size of the full pages of the last tuned enumeration, in bytes, or -1
+     */
+    public synchronized long getLastPayloadSize() {
+        return lastPayloadSize;
+    }
+}
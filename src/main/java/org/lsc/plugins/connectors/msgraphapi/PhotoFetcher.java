@@ -0,0 +1,310 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.imageio.ImageIO;
+
+import jakarta.ws.rs.NotFoundException;
+
+import org.apache.commons.lang3.StringUtils;
+import org.lsc.exception.LscServiceConfigurationException;
+import org.lsc.plugins.connectors.msgraphapi.generated.PhotoType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Reads the photos of entries, as a binary attribute of their beans.
+ *
+ * Photos are downloaded concurrently by a bounded pool of threads, and the download is
+ * aborted as soon as a photo is larger than the maximum size. They are optionally
+ * scaled down, and cached on disk under their ETag: a photo is only downloaded again
+ * when it has changed.
+ */
+public class PhotoFetcher {
+    public static final String DEFAULT_ATTRIBUTE = "thumbnailPhoto";
+    public static final long DEFAULT_MAX_SIZE = 100 * 1024;
+    public static final int DEFAULT_CONCURRENCY = 4;
+    private static final Logger LOGGER = LoggerFactory.getLogger(PhotoFetcher.class);
+    private static final String CACHE_SUFFIX = ".photo";
+
+    /**
+     * Where photos are read from
+     */
+    public interface PhotoSource {
+        /**
+         * @return the ETag of the current photo of the entry, or null if it has none
+         * @throws NotFoundException if the entry has no photo
+         */
+        String readETag(String id);
+
+        /**
+         * @return the photo of the entry, or an empty optional if it is larger than the maximum size
+         * @throws NotFoundException if the entry has no photo
+         */
+        Optional<byte[]> read(String id, int maxSize);
+    }
+
+    private final String attribute;
+    private final int maxSize;
+    private final OptionalInt maxDimension;
+    private final Optional<Path> cacheDirectory;
+    private final ExecutorService executor;
+    private final LongAdder downloads = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder tooLarge = new LongAdder();
+
+    public PhotoFetcher(String attribute, int maxSize, OptionalInt maxDimension, Optional<Path> cacheDirectory, int concurrency) {
+        this.attribute = attribute;
+        this.maxSize = maxSize;
+        this.maxDimension = maxDimension;
+        this.cacheDirectory = cacheDirectory;
+        this.executor = Executors.newFixedThreadPool(concurrency, new ThreadFactoryBuilder()
+            .setNameFormat("msgraphapi-photo-%d")
+            .setDaemon(true)
+            .build());
+    }
+
+    /**
+     * @return the photo fetcher configured, if photos are synchronized
+     */
+    public static Optional<PhotoFetcher> fromConfiguration(PhotoType configuration) throws LscServiceConfigurationException {
+        if (configuration == null) {
+            return Optional.empty();
+        }
+        long maxSize = Optional.ofNullable(configuration.getMaxSize()).orElse(DEFAULT_MAX_SIZE);
+        int concurrency = Optional.ofNullable(configuration.getConcurrency()).orElse(DEFAULT_CONCURRENCY);
+        if (maxSize <= 0 || maxSize >= Integer.MAX_VALUE || concurrency <= 0
+                || (configuration.getMaxDimension() != null && configuration.getMaxDimension() <= 0)) {
+            throw new LscServiceConfigurationException("Invalid photo configuration: maxSize, maxDimension and concurrency must be positive");
+        }
+        Optional<Path> cacheDirectory = Optional.ofNullable(configuration.getCacheDirectory())
+            .filter(StringUtils::isNotBlank)
+            .map(directory -> Paths.get(directory.trim()));
+        if (cacheDirectory.isPresent()) {
+            try {
+                Files.createDirectories(cacheDirectory.get());
+            } catch (IOException e) {
+                throw new LscServiceConfigurationException("Unable to create the photo cache directory " + cacheDirectory.get() + ": " + e);
+            }
+        }
+        return Optional.of(new PhotoFetcher(
+            Optional.ofNullable(configuration.getAttribute()).filter(StringUtils::isNotBlank).map(String::trim).orElse(DEFAULT_ATTRIBUTE),
+            (int) maxSize,
+            Optional.ofNullable(configuration.getMaxDimension()).map(OptionalInt::of).orElse(OptionalInt.empty()),
+            cacheDirectory,
+            concurrency));
+    }
+
+    /**
+     * Starts reading the photo of an entry.
+     *
+     * @return the attributes to add to the bean of the entry: the photo, or an empty value if
+     * the entry has no photo or if its photo is too large. A photo too large is cleared rather
+     * than left out, so that the destination does not keep an outdated photo.
+     */
+    public CompletableFuture<Map<String, Object>> fetch(PhotoSource source, String id) {
+        return CompletableFuture.supplyAsync(() -> read(source, id), executor);
+    }
+
+    private Map<String, Object> read(PhotoSource source, String id) {
+        try {
+            Optional<byte[]> photo = cacheDirectory.isPresent() ? readCached(source, id) : download(source, id);
+            return ImmutableMap.of(attribute, photo.isPresent() ? photo.get() : Collections.emptyList());
+        } catch (NotFoundException e) {
+            cacheDirectory.ifPresent(directory -> evict(directory, id, null));
+            return ImmutableMap.of(attribute, Collections.emptyList());
+        }
+    }
+
+    private Optional<byte[]> readCached(PhotoSource source, String id) {
+        String etag = source.readETag(id);
+        if (etag == null) {
+            return download(source, id);
+        }
+        // The settings are part of the key, so that photos are resized again when they change
+        Path file = cacheDirectory.get().resolve(idKey(id) + "-" + hash(etag + "/" + maxSize + "/" + maxDimension) + CACHE_SUFFIX);
+        if (Files.isRegularFile(file)) {
+            try {
+                byte[] photo = Files.readAllBytes(file);
+                cacheHits.increment();
+                // An empty file records a photo too large to be synchronized
+                return photo.length == 0 ? Optional.empty() : Optional.of(photo);
+            } catch (IOException e) {
+                LOGGER.warn("Unable to read the cached photo {} ({})", file, e.toString());
+            }
+        }
+        Optional<byte[]> photo = download(source, id);
+        store(id, file, photo.orElse(new byte[0]));
+        return photo;
+    }
+
+    private Optional<byte[]> download(PhotoSource source, String id) {
+        downloads.increment();
+        Optional<byte[]> photo = source.read(id, maxSize);
+        if (!photo.isPresent()) {
+            tooLarge.increment();
+            LOGGER.warn("The photo of {} is larger than {} bytes and has been cleared.", id, maxSize);
+            return photo;
+        }
+        return maxDimension.isPresent() ? Optional.of(resize(photo.get(), maxDimension.getAsInt())) : photo;
+    }
+
+    private void store(String id, Path file, byte[] photo) {
+        try {
+            Path temporary = Files.createTempFile(file.getParent(), idKey(id), ".tmp");
+            Files.write(temporary, photo);
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            evict(file.getParent(), id, file);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to cache the photo of {} in {} ({})", id, file, e.toString());
+        }
+    }
+
+    /**
+     * Deletes the cached photos of an entry, but the current one
+     */
+    private void evict(Path directory, String id, Path current) {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, idKey(id) + "-*" + CACHE_SUFFIX)) {
+            for (Path file : files) {
+                if (!file.equals(current)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Unable to delete the previous photos of {} from {} ({})", id, directory, e.toString());
+        }
+    }
+
+    private static String idKey(String id) {
+        return hash(id);
+    }
+
+    private static String hash(String value) {
+        return Hashing.sha256().hashString(value, StandardCharsets.UTF_8).toString().substring(0, 32);
+    }
+
+    /**
+     * Scales a photo down, keeping its aspect ratio, so that it fits in a square of the
+     * given dimension. Photos which already fit, or which cannot be decoded, are kept
+     * as is.
+     */
+    static byte[] resize(byte[] photo, int maxDimension) {
+        try {
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(photo));
+            if (image == null || (image.getWidth() <= maxDimension && image.getHeight() <= maxDimension)) {
+                return photo;
+            }
+            double scale = (double) maxDimension / Math.max(image.getWidth(), image.getHeight());
+            int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+            int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+            BufferedImage resized = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = resized.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.drawImage(image, 0, 0, width, height, null);
+            } finally {
+                graphics.dispose();
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(resized, "jpg", out);
+            return out.toByteArray();
+        } catch (IOException e) {
+            LOGGER.warn("Unable to resize a photo, it has been kept as is ({})", e.toString());
+            return photo;
+        }
+    }
+
+    public String getAttribute() {
+        return attribute;
+    }
+
+    /**
+     * @return the settings changing the attributes read, to tell apart the details read
+     * with photos
+     */
+    public String getKey() {
+        return attribute + "/" + maxSize + "/" + maxDimension;
+    }
+
+    public long getDownloads() {
+        return downloads.sum();
+    }
+
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    public long getTooLarge() {
+        return tooLarge.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d photos downloaded, %d read from the cache, %d too large", getDownloads(), getCacheHits(), getTooLarge());
+    }
+}
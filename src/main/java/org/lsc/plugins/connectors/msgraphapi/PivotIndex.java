@@ -0,0 +1,109 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+import org.lsc.plugins.connectors.msgraphapi.beans.User;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * A compact, immutable index of pivots: each pivot is kept as a 64 bits hash, sorted,
+ * next to the id of its entry. Pivots are matched regardless of case.
+ */
+public class PivotIndex {
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    private final long[] hashes;
+    private final String[] ids;
+
+    private PivotIndex(long[] hashes, String[] ids) {
+        this.hashes = hashes;
+        this.ids = ids;
+    }
+
+    public static PivotIndex of(List<User> users) {
+        User[] sorted = users.toArray(new User[0]);
+        long[] userHashes = new long[sorted.length];
+        Integer[] order = new Integer[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            userHashes[i] = hash(sorted[i].getValue());
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> userHashes[i]));
+        long[] hashes = new long[sorted.length];
+        String[] ids = new String[sorted.length];
+        for (int i = 0; i < order.length; i++) {
+            hashes[i] = userHashes[order[i]];
+            ids[i] = sorted[order[i]].getId();
+        }
+        return new PivotIndex(hashes, ids);
+    }
+
+    private static long hash(String pivotValue) {
+        return HASH.hashString(pivotValue.toLowerCase(Locale.ROOT), StandardCharsets.UTF_8).asLong();
+    }
+
+    public boolean contains(String pivotValue) {
+        return Arrays.binarySearch(hashes, hash(pivotValue)) >= 0;
+    }
+
+    /**
+     * @return the id of the entry of this pivot
+     */
+    public Optional<String> getId(String pivotValue) {
+        int index = Arrays.binarySearch(hashes, hash(pivotValue));
+        return index >= 0 ? Optional.ofNullable(ids[index]) : Optional.empty();
+    }
+
+    public int size() {
+        return hashes.length;
+    }
+}
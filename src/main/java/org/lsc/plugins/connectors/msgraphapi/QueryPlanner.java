@@ -0,0 +1,235 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+import org.apache.commons.lang3.StringUtils;
+import org.lsc.exception.LscServiceConfigurationException;
+import org.lsc.plugins.connectors.msgraphapi.generated.MsGraphApiResourceService;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Picks the cheapest form of the queries sent for a service.
+ *
+ * Directory objects support two forms of queries: basic ones, and advanced ones, which
+ * need the ConsistencyLevel: eventual header and $count=true. Advanced queries are
+ * slower and more heavily throttled, so they are only sent when the filter needs them:
+ * the ne, not and endsWith operators, $count in the filter, or properties which can only
+ * be filtered on in advanced queries. Such filters are rejected when the service is
+ * configured, unless advanced queries are explicitly allowed.
+ *
+ * Without a filter, the lookup of a pivot which is an id, or the userPrincipalName of a
+ * user, is a plain GET of the entry instead of a query. The id pivot of a user which is
+ * not an object id is not looked up at all. Other collections, such as domains or
+ * sites, have ids of other forms, which are always looked up.
+ */
+public class QueryPlanner {
+    public static final String USER_PRINCIPAL_NAME = "userPrincipalName";
+    private static final Set<String> ADVANCED_OPERATORS = ImmutableSet.of("ne", "not");
+    private static final Set<String> ADVANCED_FUNCTIONS = ImmutableSet.of("endswith");
+    private static final Set<String> ADVANCED_PROPERTIES = ImmutableSet.of("onpremisesextensionattributes", "employeeorgdata");
+
+    private final Optional<String> filter;
+    private final String pivot;
+    private final boolean users;
+    private final boolean advancedEnumeration;
+    private final boolean advancedLookup;
+
+    public QueryPlanner(Optional<String> filter, String pivot, boolean users) {
+        this.filter = filter;
+        this.pivot = pivot;
+        this.users = users;
+        this.advancedEnumeration = filter.map(QueryPlanner::requiresAdvancedQuery).orElse(false);
+        this.advancedLookup = advancedEnumeration || requiresAdvancedQuery(pivot + " eq 'value'");
+    }
+
+    public static QueryPlanner fromConfiguration(MsGraphApiResourceService serviceConfiguration, Optional<String> filter, String pivot, boolean users) throws LscServiceConfigurationException {
+        QueryPlanner planner;
+        try {
+            planner = new QueryPlanner(filter, pivot, users);
+        } catch (IllegalArgumentException e) {
+            throw new LscServiceConfigurationException("Invalid msgraphapi filter " + filter.orElse("") + ": " + e.getMessage());
+        }
+        boolean allowAdvancedQuery = Optional.ofNullable(serviceConfiguration.isAllowAdvancedQuery()).orElse(false);
+        if (!allowAdvancedQuery && (planner.isAdvancedEnumeration() || planner.isAdvancedLookup())) {
+            throw new LscServiceConfigurationException("The msgraphapi filter " + filter.orElse("") + " with the pivot " + pivot
+                + " needs advanced queries, which are slower and more throttled. Set allowAdvancedQuery to use it anyway.");
+        }
+        return planner;
+    }
+
+    /**
+     * @return true if enumerating the entries needs an advanced query
+     */
+    public boolean isAdvancedEnumeration() {
+        return advancedEnumeration;
+    }
+
+    /**
+     * @return true if looking a pivot up needs an advanced query
+     */
+    public boolean isAdvancedLookup() {
+        return advancedLookup;
+    }
+
+    /**
+     * @return false if no entry can have this pivot value, such as an id pivot of a user
+     * which is not an object id: the lookup does not need to be sent
+     */
+    public boolean canMatch(String pivotValue) {
+        return !users || !pivot.equals(MsGraphApiDao.ID) || isObjectId(pivotValue);
+    }
+
+    /**
+     * @return the key to GET the entry with this pivot value directly, if the lookup
+     * does not need a query
+     */
+    public Optional<String> getLookupKey(String pivotValue) {
+        if (filter.isPresent() || StringUtils.isBlank(pivotValue)) {
+            return Optional.empty();
+        }
+        if (pivot.equals(MsGraphApiDao.ID)) {
+            // Other ids of users cannot match, see canMatch
+            return (users ? isObjectId(pivotValue) : isPathSegment(pivotValue)) ? Optional.of(pivotValue) : Optional.empty();
+        }
+        if (users && pivot.equalsIgnoreCase(USER_PRINCIPAL_NAME) && pivotValue.contains("@") && isPathSegment(pivotValue)) {
+            return Optional.of(pivotValue);
+        }
+        return Optional.empty();
+    }
+
+    private static boolean isPathSegment(String value) {
+        return !value.startsWith("$") && StringUtils.containsNone(value, '/', '?', '%', '{', '}');
+    }
+
+    private static boolean isObjectId(String value) {
+        if (value == null) {
+            return false;
+        }
+        try {
+            UUID.fromString(value);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the filter cannot be parsed
+     */
+    public static boolean requiresAdvancedQuery(String filter) {
+        List<String> tokens = tokenize(filter);
+        for (int i = 0; i < tokens.size(); i++) {
+            if (tokens.get(i).startsWith("'")) {
+                continue;
+            }
+            // The variable of a lambda, as in any(x:endswith(x, '...')), is not part of the word
+            String token = StringUtils.substringAfterLast(":" + tokens.get(i), ":").toLowerCase(Locale.ROOT);
+            boolean function = i + 1 < tokens.size() && tokens.get(i + 1).equals("(");
+            if (ADVANCED_OPERATORS.contains(token) || (function && ADVANCED_FUNCTIONS.contains(token)) || token.contains("$count")) {
+                return true;
+            }
+            String property = StringUtils.substringBefore(token, "/");
+            if (ADVANCED_PROPERTIES.contains(property)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Splits a filter into quoted strings, parentheses, commas and words.
+     */
+    static List<String> tokenize(String filter) {
+        List<String> tokens = new ArrayList<>();
+        int depth = 0;
+        int i = 0;
+        while (i < filter.length()) {
+            char c = filter.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '\'') {
+                int end = i + 1;
+                while (true) {
+                    end = filter.indexOf('\'', end);
+                    if (end < 0) {
+                        throw new IllegalArgumentException("unterminated string at " + i);
+                    }
+                    // '' is an escaped quote
+                    if (end + 1 < filter.length() && filter.charAt(end + 1) == '\'') {
+                        end += 2;
+                    } else {
+                        break;
+                    }
+                }
+                tokens.add(filter.substring(i, end + 1));
+                i = end + 1;
+            } else if (c == '(' || c == ')' || c == ',') {
+                depth += c == '(' ? 1 : c == ')' ? -1 : 0;
+                if (depth < 0) {
+                    throw new IllegalArgumentException("unbalanced parenthesis at " + i);
+                }
+                tokens.add(String.valueOf(c));
+                i++;
+            } else {
+                int end = i;
+                while (end < filter.length() && !Character.isWhitespace(filter.charAt(end)) && "'(),".indexOf(filter.charAt(end)) < 0) {
+                    end++;
+                }
+                tokens.add(filter.substring(i, end));
+                i = end;
+            }
+        }
+        if (depth != 0) {
+            throw new IllegalArgumentException("unbalanced parenthesis");
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Spreads the requests to a tenant over its application registrations.
+ *
+ * Graph throttles each registration separately, so the registrations are used in turn
+ * and a throttled registration is left aside until its Retry-After delay has elapsed.
+ * Each registration keeps its own access token.
+ */
+public class RegistrationSelector {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RegistrationSelector.class);
+
+    private final List<MsGraphApiTokenProvider> registrations;
+    private final AtomicLongArray throttledUntil;
+    private final AtomicInteger next = new AtomicInteger();
+    private final LongSupplier nanoTime;
+
+    public RegistrationSelector(List<MsGraphApiTokenProvider> registrations, LongSupplier nanoTime) {
+        if (registrations.isEmpty()) {
+            throw new IllegalArgumentException("A tenant needs at least one registration");
+        }
+        this.registrations = List.copyOf(registrations);
+        this.throttledUntil = new AtomicLongArray(registrations.size());
+        this.nanoTime = nanoTime;
+        // nanoTime() may be negative, the registrations are available from now on
+        long now = nanoTime.getAsLong();
+        for (int i = 0; i < registrations.size(); i++) {
+            throttledUntil.set(i, now);
+        }
+    }
+
+    /**
+     * @return the next registration which is not throttled or, if they all are, the one
+     * which will be available first
+     */
+    public MsGraphApiTokenProvider select() {
+        int size = registrations.size();
+        if (size == 1) {
+            return registrations.get(0);
+        }
+        long now = nanoTime.getAsLong();
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        int earliest = start;
+        for (int i = 0; i < size; i++) {
+            int index = (start + i) % size;
+            long until = throttledUntil.get(index);
+            if (until - now <= 0) {
+                return registrations.get(index);
+            }
+            if (until - throttledUntil.get(earliest) < 0) {
+                earliest = index;
+            }
+        }
+        return registrations.get(earliest);
+    }
+
+    /**
+     * Leaves a registration aside for the Retry-After delay given by Graph.
+     *
+     * @return true if another registration is available to send the request again
+     */
+    public boolean onThrottled(MsGraphApiTokenProvider registration, long retryAfter) {
+        int index = registrations.indexOf(registration);
+        long now = nanoTime.getAsLong();
+        throttledUntil.accumulateAndGet(index, now + retryAfter, (current, until) -> until - current > 0 ? until : current);
+        LOGGER.info("{} is throttled for {} s", registration, TimeUnit.NANOSECONDS.toSeconds(retryAfter));
+        return available() > 0;
+    }
+
+    /**
+     * @return the number of registrations which are not throttled
+     */
+    public int available() {
+        long now = nanoTime.getAsLong();
+        int available = 0;
+        for (int i = 0; i < throttledUntil.length(); i++) {
+            if (throttledUntil.get(i) - now <= 0) {
+                available++;
+            }
+        }
+        return available;
+    }
+
+    public List<MsGraphApiTokenProvider> getRegistrations() {
+        return registrations;
+    }
+
+    /**
+     * Starts requesting the tokens of all the registrations in the background.
+     */
+    public void prefetch() {
+        registrations.forEach(MsGraphApiTokenProvider::prefetch);
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import jakarta.ws.rs.ProcessingException;
+
+import org.lsc.exception.LscServiceConfigurationException;
+import org.lsc.plugins.connectors.msgraphapi.generated.HedgingType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Hedges idempotent requests: when a request has not been answered after a delay, the
+ * same request is sent again and the first response wins, so that a few slow requests
+ * do not decide the duration of the whole synchronization.
+ *
+ * The delay follows a percentile of the latencies of the last requests, and the hedged
+ * requests are capped to a share of all the requests. Once a response is answered, the
+ * other request is cancelled: it is interrupted, so that it is not sent if it still
+ * waits for a slot or a token, though a response already on its way is still read.
+ */
+public class RequestHedger {
+    public static final int DEFAULT_PERCENTILE = 95;
+    public static final int DEFAULT_MIN_DELAY = 20;
+    public static final int DEFAULT_MAX_EXTRA_LOAD = 5;
+    private static final Logger LOGGER = LoggerFactory.getLogger(RequestHedger.class);
+    private static final int WINDOW = 1024;
+    /**
+     * No request is hedged before this number of latencies has been observed
+     */
+    private static final int WARM_UP = 100;
+    private static final int DELAY_UPDATE_INTERVAL = 64;
+    private static final long LOG_INTERVAL = TimeUnit.MINUTES.toNanos(1);
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+        .setNameFormat("msgraphapi-hedge-%d")
+        .setDaemon(true)
+        .build());
+
+    private static final class Answer<T> {
+        private final T response;
+        private final boolean hedge;
+
+        private Answer(T response, boolean hedge) {
+            this.response = response;
+            this.hedge = hedge;
+        }
+    }
+
+    private final String name;
+    private final int percentile;
+    private final long minDelay;
+    private final int maxExtraLoad;
+
+    private final long[] latencies = new long[WINDOW];
+    private int recorded;
+    private volatile long delay = -1;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+    private final AtomicInteger sinceDelayUpdate = new AtomicInteger();
+    private volatile long lastLog = System.nanoTime();
+
+    public RequestHedger(String name, int percentile, long minDelay, int maxExtraLoad) {
+        this.name = name;
+        this.percentile = percentile;
+        this.minDelay = minDelay;
+        this.maxExtraLoad = maxExtraLoad;
+    }
+
+    /**
+     * @return the hedger configured, if requests are hedged
+     */
+    public static Optional<RequestHedger> fromConfiguration(String name, HedgingType configuration) throws LscServiceConfigurationException {
+        if (configuration == null) {
+            return Optional.empty();
+        }
+        int percentile = Optional.ofNullable(configuration.getPercentile()).orElse(DEFAULT_PERCENTILE);
+        int minDelay = Optional.ofNullable(configuration.getMinDelay()).orElse(DEFAULT_MIN_DELAY);
+        int maxExtraLoad = Optional.ofNullable(configuration.getMaxExtraLoad()).orElse(DEFAULT_MAX_EXTRA_LOAD);
+        if (percentile <= 0 || percentile >= 100 || minDelay < 0 || maxExtraLoad < 0 || maxExtraLoad > 100) {
+            throw new LscServiceConfigurationException("Invalid hedging configuration: the percentile must be between 1 and 99, "
+                + "the minimum delay positive and the maximum extra load between 0 and 100");
+        }
+        return Optional.of(new RequestHedger(name, percentile, TimeUnit.MILLISECONDS.toNanos(minDelay), maxExtraLoad));
+    }
+
+    /**
+     * Sends a request, and sends it again if it has not been answered after the delay
+     * and the extra load allows it.
+     *
+     * @return the first successful response, or the failure of the last request
+     */
+    public <T> T execute(Supplier<T> call) {
+        requests.increment();
+        CompletableFuture<Answer<T>> result = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(1);
+        List<Future<?>> sent = new ArrayList<>(2);
+        sent.add(send(call, result, pending, false));
+        long currentDelay = delay;
+        try {
+            if (currentDelay >= 0) {
+                try {
+                    return answer(result.get(currentDelay, TimeUnit.NANOSECONDS));
+                } catch (TimeoutException e) {
+                    // No request is pending anymore once the request has failed
+                    if (!result.isDone() && allowHedge() && pending.getAndUpdate(count -> count == 0 ? 0 : count + 1) > 0) {
+                        hedges.increment();
+                        sent.add(send(call, result, pending, true));
+                    }
+                }
+            }
+            return answer(result.get());
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new ProcessingException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ProcessingException("Interrupted while waiting for " + name, e);
+        } finally {
+            sent.forEach(request -> request.cancel(true));
+            logPeriodically();
+        }
+    }
+
+    /**
+     * Counts the win of a hedged request, before the caller gets its response: only the
+     * response completing the result is answered.
+     */
+    private <T> T answer(Answer<T> answer) {
+        if (answer.hedge) {
+            hedgeWins.increment();
+        }
+        return answer.response;
+    }
+
+    private <T> Future<?> send(Supplier<T> call, CompletableFuture<Answer<T>> result, AtomicInteger pending, boolean hedge) {
+        return EXECUTOR.submit(() -> {
+            long start = System.nanoTime();
+            try {
+                T response = call.get();
+                record(System.nanoTime() - start);
+                result.complete(new Answer<>(response, hedge));
+            } catch (RuntimeException e) {
+                // The failure is only reported once no other request may succeed
+                if (pending.decrementAndGet() == 0) {
+                    result.completeExceptionally(e);
+                }
+                return;
+            }
+            pending.decrementAndGet();
+        });
+    }
+
+    private boolean allowHedge() {
+        return hedges.sum() * 100 < requests.sum() * maxExtraLoad;
+    }
+
+    /**
+     * Records the latency of a successful request, and updates the delay from time to time
+     */
+    void record(long nanos) {
+        synchronized (latencies) {
+            latencies[recorded % WINDOW] = nanos;
+            recorded++;
+        }
+        if (sinceDelayUpdate.incrementAndGet() >= DELAY_UPDATE_INTERVAL || delay < 0) {
+            sinceDelayUpdate.set(0);
+            updateDelay();
+        }
+    }
+
+    private void updateDelay() {
+        long[] window;
+        synchronized (latencies) {
+            if (recorded < WARM_UP) {
+                return;
+            }
+            window = Arrays.copyOf(latencies, Math.min(recorded, WINDOW));
+        }
+        Arrays.sort(window);
+        int index = Math.min(window.length - 1, (int) Math.ceil(window.length * percentile / 100.0) - 1);
+        delay = Math.max(minDelay, window[index]);
+    }
+
+    private void logPeriodically() {
+        long now = System.nanoTime();
+        if (now - lastLog > LOG_INTERVAL) {
+            lastLog = now;
+            LOGGER.info("Hedging of {}: {}", name, this);
+        }
+    }
+
+    /**
+     * @return the current delay before hedging a request, in nanoseconds, or -1 while
+     * warming up
+     */
+    public long getDelay() {
+        return delay;
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getHedges() {
+        return hedges.sum();
+    }
+
+    public long getHedgeWins() {
+        return hedgeWins.sum();
+    }
+
+    /**
+     * @return the share of the requests which have been hedged
+     */
+    public double getHedgeRate() {
+        long total = getRequests();
+        return total == 0 ? 0 : (double) getHedges() / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d requests, %d hedged (%.1f%%), %d won by the hedged request, delay %d ms",
+            getRequests(), getHedges(), getHedgeRate() * 100, getHedgeWins(), TimeUnit.NANOSECONDS.toMillis(Math.max(delay, 0)));
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.ws.rs.client.Invocation;
+import jakarta.ws.rs.client.WebTarget;
+import jakarta.ws.rs.core.Response;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The trace of one request to the API.
+ *
+ * Each request is sent with a client-request-id header and the request-id returned by
+ * Graph is recorded, so that Microsoft support can find the request from the logs.
+ * Requests are logged at DEBUG level, or at WARN level when they last longer than the
+ * slow request threshold.
+ */
+public final class RequestTrace {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RequestTrace.class);
+    public static final String CLIENT_REQUEST_ID = "client-request-id";
+    public static final String REQUEST_ID = "request-id";
+    /**
+     * The default slow request threshold, in milliseconds
+     */
+    public static final int DEFAULT_SLOW_REQUEST_THRESHOLD = 10_000;
+
+    private final MsGraphApiEndpoint endpoint;
+    private final WebTarget target;
+    private final long slowRequestThreshold;
+    private final String clientRequestId;
+    private final GraphRequestEvent event;
+    private final long start;
+    private int status;
+    private String requestId;
+
+    private RequestTrace(MsGraphApiEndpoint endpoint, WebTarget target, long slowRequestThreshold) {
+        this.endpoint = endpoint;
+        this.target = target;
+        this.slowRequestThreshold = slowRequestThreshold;
+        this.clientRequestId = randomId();
+        this.event = GraphRequestEvent.start(endpoint, target);
+        this.start = System.nanoTime();
+    }
+
+    /**
+     * @param slowRequestThreshold the duration, in nanoseconds, above which the request is logged as slow, 0 to never log it
+     * @return a started trace for a request to this target
+     */
+    public static RequestTrace start(MsGraphApiEndpoint endpoint, WebTarget target, long slowRequestThreshold) {
+        return new RequestTrace(endpoint, target, slowRequestThreshold);
+    }
+
+    /**
+     * @return the slow request threshold configured, in nanoseconds
+     */
+    public static long slowRequestThreshold(Integer configured) {
+        return TimeUnit.MILLISECONDS.toNanos(configured != null ? Math.max(configured, 0) : DEFAULT_SLOW_REQUEST_THRESHOLD);
+    }
+
+    /**
+     * A random version 4 UUID. It identifies the request, it does not need to be
+     * unpredictable, so the shared SecureRandom of UUID.randomUUID() is not used.
+     */
+    static String randomId() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long mostSigBits = (random.nextLong() & ~0xF000L) | 0x4000L;
+        long leastSigBits = (random.nextLong() & ~(0xCL << 60)) | (0x8L << 60);
+        return new UUID(mostSigBits, leastSigBits).toString();
+    }
+
+    /**
+     * @return the request to the target, carrying the endpoint, the event and the client-request-id
+     */
+    public Invocation.Builder request() {
+        return target.request()
+            .property(MsGraphApiEndpoint.PROPERTY, endpoint)
+            .property(GraphRequestEvent.PROPERTY, event)
+            .header(CLIENT_REQUEST_ID, clientRequestId);
+    }
+
+    public void onResponse(Response response) {
+        status = response.getStatus();
+        requestId = response.getHeaderString(REQUEST_ID);
+        event.setStatus(status);
+        event.setRequestIds(clientRequestId, requestId);
+    }
+
+    /**
+     * Ends the trace, once the response has been read or the request has failed.
+     */
+    public void finish() {
+        event.commit();
+        long elapsed = System.nanoTime() - start;
+        if (slowRequestThreshold > 0 && elapsed > slowRequestThreshold) {
+            LOGGER.warn("Slow {} request to {}: status {} in {} ms ({})", endpoint, target.getUri(), status,
+                TimeUnit.NANOSECONDS.toMillis(elapsed), this);
+        } else if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("{} request to {}: status {} in {} ms ({})", endpoint, target.getUri(), status,
+                TimeUnit.NANOSECONDS.toMillis(elapsed), this);
+        }
+    }
+
+    public String getClientRequestId() {
+        return clientRequestId;
+    }
+
+    /**
+     * @return the request-id returned by Graph, null if there is no response yet
+     */
+    public String getRequestId() {
+        return requestId;
+    }
+
+    /**
+     * @return the ids to give to Microsoft support
+     */
+    @Override
+    public String toString() {
+        return CLIENT_REQUEST_ID + " " + clientRequestId + ", " + REQUEST_ID + " " + requestId;
+    }
+}
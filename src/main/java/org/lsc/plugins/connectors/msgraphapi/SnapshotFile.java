@@ -0,0 +1,277 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import static org.lsc.plugins.connectors.msgraphapi.MsGraphApiDao.ID;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+
+import org.lsc.plugins.connectors.msgraphapi.beans.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A snapshot of a collection, as exported to NDJSON: one JSON object per line.
+ *
+ * The file is memory-mapped and indexed once by id and by pivot, so that any entry is
+ * read and parsed on demand, without scanning the file. Compressed snapshots, including
+ * the parts of an export given by their prefix, are decompressed to a temporary file
+ * first.
+ */
+public class SnapshotFile implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SnapshotFile.class);
+    private static final long SEGMENT_SIZE = 1L << 30;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final TypeReference<Map<String, Object>> ENTRY = new TypeReference<Map<String, Object>>() {};
+
+    private final Path path;
+    private final boolean temporary;
+    private final FileChannel channel;
+    private final MappedByteBuffer[] segments;
+    private final ObjectMapper objectMapper;
+    private final String pivot;
+
+    private int count;
+    private long[] offsets = new long[INITIAL_CAPACITY];
+    private int[] lengths = new int[INITIAL_CAPACITY];
+    private String[] ids = new String[INITIAL_CAPACITY];
+    private String[] pivotValues = new String[INITIAL_CAPACITY];
+    private final Map<String, Integer> byId = new HashMap<>();
+    private final Map<String, Integer> byPivot = new HashMap<>();
+
+    private SnapshotFile(Path path, boolean temporary, ObjectMapper objectMapper, String pivot) throws IOException {
+        this.path = path;
+        this.temporary = temporary;
+        this.objectMapper = objectMapper;
+        this.pivot = pivot;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        long size = channel.size();
+        this.segments = new MappedByteBuffer[(int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+        for (int i = 0; i < segments.length; i++) {
+            long start = i * SEGMENT_SIZE;
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, size - start));
+        }
+        index(size);
+    }
+
+    /**
+     * Opens a snapshot: an NDJSON file, a gzip compressed one, or the prefix of the
+     * parts of an export, such as /path/to/users for /path/to/users-00000.ndjson.gz.
+     */
+    public static SnapshotFile open(Path file, String pivot, ObjectMapper objectMapper) throws IOException {
+        List<Path> parts = new ArrayList<>();
+        if (Files.exists(file)) {
+            if (!file.getFileName().toString().endsWith(".gz")) {
+                return new SnapshotFile(file, false, objectMapper, pivot);
+            }
+            parts.add(file);
+        } else {
+            for (int i = 0; Files.exists(part(file, i)); i++) {
+                parts.add(part(file, i));
+            }
+            if (parts.isEmpty()) {
+                throw new NoSuchFileException(file.toString());
+            }
+        }
+        Path decompressed = Files.createTempFile("msgraphapi-snapshot", ".ndjson");
+        // In case the snapshot is never closed
+        decompressed.toFile().deleteOnExit();
+        try (OutputStream out = Files.newOutputStream(decompressed)) {
+            for (Path part : parts) {
+                LOGGER.info("Decompressing {}", part);
+                try (InputStream in = new GZIPInputStream(Files.newInputStream(part), 64 * 1024)) {
+                    in.transferTo(out);
+                }
+            }
+            return new SnapshotFile(decompressed, true, objectMapper, pivot);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(decompressed);
+            throw e;
+        }
+    }
+
+    private static Path part(Path prefix, int number) {
+        return prefix.resolveSibling(String.format("%s-%05d.ndjson.gz", prefix.getFileName(), number));
+    }
+
+    private void index(long size) throws IOException {
+        long start = System.nanoTime();
+        byte[] line = new byte[4096];
+        long lineStart = 0;
+        int length = 0;
+        for (long position = 0; position <= size; position++) {
+            byte b = position < size ? segments[(int) (position / SEGMENT_SIZE)].get((int) (position % SEGMENT_SIZE)) : (byte) '\n';
+            if (b != '\n') {
+                if (length == line.length) {
+                    line = Arrays.copyOf(line, line.length * 2);
+                }
+                line[length++] = b;
+                continue;
+            }
+            if (length > 0) {
+                indexLine(lineStart, line, length);
+            }
+            lineStart = position + 1;
+            length = 0;
+        }
+        LOGGER.info("Indexed {} entries of {} in {} ms", count, path, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private void indexLine(long offset, byte[] line, int length) throws IOException {
+        String id = null;
+        String pivotValue = null;
+        try (JsonParser parser = objectMapper.getFactory().createParser(line, 0, length)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                LOGGER.warn("The line at offset {} of {} is not a JSON object and has been ignored.", offset, path);
+                return;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (value.isScalarValue() && name.equals(ID)) {
+                    id = parser.getValueAsString();
+                } else if (value.isScalarValue() && name.equals(pivot)) {
+                    pivotValue = parser.getValueAsString();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        if (id == null || pivotValue == null) {
+            LOGGER.warn("The entry at offset {} of {} has no pivot '{}' or id and has been ignored.", offset, path, pivot);
+            return;
+        }
+        if (byId.putIfAbsent(key(id), count) != null) {
+            LOGGER.warn("The entry {} appears several times in {}, the first one has been kept.", id, path);
+            return;
+        }
+        byPivot.putIfAbsent(key(pivotValue), count);
+        if (count == offsets.length) {
+            offsets = Arrays.copyOf(offsets, count * 2);
+            lengths = Arrays.copyOf(lengths, count * 2);
+            ids = Arrays.copyOf(ids, count * 2);
+            pivotValues = Arrays.copyOf(pivotValues, count * 2);
+        }
+        offsets[count] = offset;
+        lengths[count] = length;
+        ids[count] = id;
+        pivotValues[count] = pivotValue;
+        count++;
+    }
+
+    /**
+     * Ids and pivots are matched regardless of case, as the API does
+     */
+    private static String key(String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return the pivots of all the entries, in the order of the file
+     */
+    public List<User> getPivots() {
+        List<User> users = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            users.add(new User(pivot, pivotValues[i], ids[i]));
+        }
+        return users;
+    }
+
+    public Optional<Map<String, Object>> getById(String id) throws IOException {
+        Integer index = byId.get(key(id));
+        return index == null ? Optional.empty() : Optional.of(read(index));
+    }
+
+    public Optional<String> getIdByPivot(String pivotValue) {
+        return Optional.ofNullable(byPivot.get(key(pivotValue))).map(index -> ids[index]);
+    }
+
+    private Map<String, Object> read(int index) throws IOException {
+        byte[] line = new byte[lengths[index]];
+        long position = offsets[index];
+        int read = 0;
+        while (read < line.length) {
+            MappedByteBuffer segment = segments[(int) (position / SEGMENT_SIZE)];
+            int segmentOffset = (int) (position % SEGMENT_SIZE);
+            int chunk = Math.min(line.length - read, segment.limit() - segmentOffset);
+            segment.get(segmentOffset, line, read, chunk);
+            read += chunk;
+            position += chunk;
+        }
+        return objectMapper.readValue(line, ENTRY);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        if (temporary) {
+            Files.deleteIfExists(path);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shares the results of identical queries between the tasks of a connection.
+ *
+ * A snapshot is the result of a query, such as an enumeration, taken by the first
+ * task sending it. It is reused by the tasks sending the same query while it is
+ * younger than the time to live. Tasks asking for it while it is taken wait for it,
+ * and a failed query is not kept.
+ */
+public class SnapshotRegistry<V> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SnapshotRegistry.class);
+
+    private static class Snapshot<V> {
+        private final CompletableFuture<V> value = new CompletableFuture<>();
+        private final long takenAt;
+
+        private Snapshot(long takenAt) {
+            this.takenAt = takenAt;
+        }
+    }
+
+    private final String name;
+    private final long ttl;
+    private final LongSupplier nanoTime;
+    private final Map<String, Snapshot<V>> snapshots = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param ttl the time to live of the snapshots, in nanoseconds
+     */
+    public SnapshotRegistry(String name, long ttl, LongSupplier nanoTime) {
+        this.name = name;
+        this.ttl = ttl;
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * @return the snapshot of the query, taken by the loader unless a fresh one exists
+     */
+    public V get(String key, Supplier<V> loader) {
+        long now = nanoTime.getAsLong();
+        // Expired snapshots are released as soon as possible, they may be large
+        snapshots.values().removeIf(snapshot -> snapshot.value.isDone() && now - snapshot.takenAt >= ttl);
+        Snapshot<V> taken = new Snapshot<>(now);
+        Snapshot<V> snapshot = snapshots.compute(key, (query, existing) -> existing != null && now - existing.takenAt < ttl ? existing : taken);
+        if (snapshot != taken) {
+            hits.increment();
+            LOGGER.info("Reusing the {} taken {} s ago for {}", name, TimeUnit.NANOSECONDS.toSeconds(now - snapshot.takenAt), key);
+            try {
+                return snapshot.value.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+        misses.increment();
+        try {
+            V value = loader.get();
+            taken.value.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            snapshots.remove(key, taken);
+            taken.value.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shares equal strings, so that the beans built during a run reference one instance
+ * of each attribute name and of each frequent value instead of their own copies.
+ *
+ * The number of strings kept is bounded: once it is reached, new strings are returned
+ * as is, while the ones already kept keep being shared.
+ */
+public class StringDeduplicator {
+    public static final int DEFAULT_MAX_ENTRIES = 100_000;
+    /**
+     * Attribute names, such as onPremisesExtensionAttributes/extensionAttribute1, shared by all services
+     */
+    public static final StringDeduplicator KEYS = new StringDeduplicator(10_000);
+    /**
+     * Values of low cardinality attributes, such as department or city, shared by all services
+     */
+    public static final StringDeduplicator VALUES = new StringDeduplicator(DEFAULT_MAX_ENTRIES);
+
+    private final int maxEntries;
+    private final ConcurrentHashMap<String, String> strings = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public StringDeduplicator(int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("The maximum number of strings must be positive: " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @return the shared instance equal to this string, or the string itself
+     */
+    public String deduplicate(String string) {
+        if (string == null) {
+            return null;
+        }
+        String shared = strings.get(string);
+        if (shared != null) {
+            hits.incrementAndGet();
+            return shared;
+        }
+        misses.incrementAndGet();
+        // The bound may be exceeded by a few strings when threads race, which does not matter
+        if (strings.size() >= maxEntries) {
+            return string;
+        }
+        shared = strings.putIfAbsent(string, string);
+        return shared != null ? shared : string;
+    }
+
+    /**
+     * Forgets the strings kept and the statistics
+     */
+    void clear() {
+        strings.clear();
+        hits.set(0);
+        misses.set(0);
+    }
+
+    public int size() {
+        return strings.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps a subscription to the change notifications of a resource in a tenant.
+ *
+ * The subscriptions left on the notification URL by previous runs with the same client
+ * state are deleted first.
+ * The subscription is replaced by a new one when half of its lifetime has elapsed,
+ * or as soon as Graph asks for it through a lifecycle notification. The new
+ * subscription is created before the previous one is deleted, so that no change is
+ * missed in between.
+ */
+public class SubscriptionManager {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SubscriptionManager.class);
+    public static final String DEFAULT_CHANGE_TYPE = "updated,deleted";
+    /**
+     * The default lifetime of the subscriptions, in minutes
+     */
+    public static final int DEFAULT_EXPIRATION = 1440;
+    /**
+     * The maximum lifetime of the subscriptions to directory resources, in minutes
+     */
+    public static final int MAX_EXPIRATION = 41760;
+    private static final long RETRY_DELAY = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * The subscriptions of the application in the tenant
+     */
+    public interface Subscriptions {
+        List<Map<String, Object>> list();
+
+        /**
+         * @return the subscription created, with its id
+         */
+        Map<String, Object> create(Map<String, Object> subscription);
+
+        void delete(String id);
+    }
+
+    private final String tenant;
+    private final Subscriptions subscriptions;
+    private final String notificationURL;
+    private final String resource;
+    private final String changeType;
+    private final String clientState;
+    private final Duration expiration;
+    private final ScheduledExecutorService scheduler;
+    private final Clock clock;
+    private final Set<String> subscriptionIds = ConcurrentHashMap.newKeySet();
+
+    private String current;
+    private ScheduledFuture<?> renewal;
+
+    public SubscriptionManager(String tenant, Subscriptions subscriptions, String notificationURL, String resource, String changeType,
+            String clientState, Duration expiration, ScheduledExecutorService scheduler, Clock clock) {
+        this.tenant = tenant;
+        this.subscriptions = subscriptions;
+        this.notificationURL = notificationURL;
+        this.resource = resource;
+        this.changeType = changeType;
+        this.clientState = clientState;
+        this.expiration = expiration;
+        this.scheduler = scheduler;
+        this.clock = clock;
+    }
+
+    /**
+     * Subscribes in the background.
+     */
+    public void start() {
+        scheduler.execute(() -> {
+            try {
+                deleteStaleSubscriptions();
+            } catch (RuntimeException e) {
+                LOGGER.warn("Unable to delete the previous subscriptions to {} in {} ({})", resource, tenant, e.toString());
+            }
+            replace();
+        });
+    }
+
+    private void deleteStaleSubscriptions() {
+        for (Map<String, Object> subscription : subscriptions.list()) {
+            String id = Objects.toString(subscription.get("id"), null);
+            // Other instances, such as other partitions, may use the same URL with their own client state
+            if (id != null && notificationURL.equals(subscription.get("notificationUrl")) && resource.equals(subscription.get("resource"))
+                    && clientState.equals(subscription.get("clientState")) && !subscriptionIds.contains(id)) {
+                LOGGER.info("Deleting the previous subscription {} to {} in {}", id, resource, tenant);
+                subscriptions.delete(id);
+            }
+        }
+    }
+
+    /**
+     * Creates a new subscription, then deletes the current one, if any.
+     */
+    synchronized void replace() {
+        if (renewal != null) {
+            renewal.cancel(false);
+        }
+        Instant expirationDateTime = clock.instant().plus(expiration);
+        try {
+            Map<String, Object> subscription = new LinkedHashMap<>();
+            subscription.put("changeType", changeType);
+            subscription.put("notificationUrl", notificationURL);
+            subscription.put("lifecycleNotificationUrl", notificationURL);
+            subscription.put("resource", resource);
+            subscription.put("expirationDateTime", expirationDateTime.toString());
+            subscription.put("clientState", clientState);
+            String created = Objects.toString(subscriptions.create(subscription).get("id"), null);
+            if (created == null) {
+                throw new IllegalStateException("The subscription created has no id");
+            }
+            subscriptionIds.add(created);
+            String previous = current;
+            current = created;
+            LOGGER.info("Subscribed to the changes of {} in {} until {}", resource, tenant, expirationDateTime);
+            renewal = scheduler.schedule(this::replace, expiration.toMillis() / 2, TimeUnit.MILLISECONDS);
+            if (previous != null) {
+                delete(previous);
+            }
+        } catch (RuntimeException e) {
+            LOGGER.error("Unable to subscribe to the changes of {} in {}, trying again in a minute ({})", resource, tenant, e.toString());
+            renewal = scheduler.schedule(this::replace, RETRY_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void delete(String id) {
+        try {
+            subscriptions.delete(id);
+        } catch (RuntimeException e) {
+            LOGGER.debug("Unable to delete the subscription {} ({})", id, e.toString());
+        }
+        subscriptionIds.remove(id);
+    }
+
+    /**
+     * @return true if the subscription is, or was until recently, the one of this manager
+     */
+    public boolean owns(String subscriptionId) {
+        return subscriptionId != null && subscriptionIds.contains(subscriptionId);
+    }
+
+    public void onLifecycleEvent(String subscriptionId, String lifecycleEvent) {
+        switch (lifecycleEvent) {
+            case "reauthorizationRequired":
+            case "subscriptionRemoved":
+                LOGGER.info("Replacing the subscription {} to {} in {} ({})", subscriptionId, resource, tenant, lifecycleEvent);
+                scheduler.execute(this::replace);
+                break;
+            case "missed":
+                LOGGER.warn("Changes of {} in {} have been missed, a full synchronization is needed", resource, tenant);
+                break;
+            default:
+                LOGGER.debug("Ignoring the lifecycle event {} of the subscription {}", lifecycleEvent, subscriptionId);
+        }
+    }
+
+    /**
+     * Stops renewing the subscription, and deletes it.
+     */
+    public synchronized void close() {
+        if (renewal != null) {
+            renewal.cancel(false);
+        }
+        if (current != null) {
+            delete(current);
+            current = null;
+        }
+    }
+}
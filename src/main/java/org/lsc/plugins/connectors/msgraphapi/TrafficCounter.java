@@ -0,0 +1,197 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+import jakarta.ws.rs.client.ClientRequestContext;
+import jakarta.ws.rs.client.ClientRequestFilter;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.ext.ReaderInterceptor;
+import jakarta.ws.rs.ext.ReaderInterceptorContext;
+
+/**
+ * Negotiates gzip compressed responses and counts the bytes received for each endpoint.
+ *
+ * Compressed responses are decompressed as a stream while they are parsed, so the
+ * uncompressed body is never buffered. Both the bytes received on the wire and the
+ * bytes once decompressed are counted, for the endpoint set in the
+ * {@link MsGraphApiEndpoint#PROPERTY} request property. The bytes of a single response,
+ * once decompressed, are also added to the {@link LongAdder} set in the
+ * {@link #RESPONSE_BYTES} request property, if any: the length of a compressed or
+ * chunked response is not known from its headers.
+ */
+public class TrafficCounter implements ClientRequestFilter, ReaderInterceptor {
+    public static final String RESPONSE_BYTES = TrafficCounter.class.getName() + ".responseBytes";
+    private static final String GZIP = "gzip";
+    private static final String X_GZIP = "x-gzip";
+
+    private final Map<MsGraphApiEndpoint, LongAdder> wireBytes = new EnumMap<>(MsGraphApiEndpoint.class);
+    private final Map<MsGraphApiEndpoint, LongAdder> decodedBytes = new EnumMap<>(MsGraphApiEndpoint.class);
+    private final Map<MsGraphApiEndpoint, LongAdder> responses = new EnumMap<>(MsGraphApiEndpoint.class);
+
+    public TrafficCounter() {
+        for (MsGraphApiEndpoint endpoint : MsGraphApiEndpoint.values()) {
+            wireBytes.put(endpoint, new LongAdder());
+            decodedBytes.put(endpoint, new LongAdder());
+            responses.put(endpoint, new LongAdder());
+        }
+    }
+
+    @Override
+    public void filter(ClientRequestContext requestContext) {
+        if (!requestContext.getHeaders().containsKey(HttpHeaders.ACCEPT_ENCODING)) {
+            requestContext.getHeaders().putSingle(HttpHeaders.ACCEPT_ENCODING, GZIP);
+        }
+    }
+
+    @Override
+    public Object aroundReadFrom(ReaderInterceptorContext context) throws IOException {
+        MsGraphApiEndpoint endpoint = endpointOf(context.getProperty(MsGraphApiEndpoint.PROPERTY));
+        responses.get(endpoint).increment();
+        LongAdder endpointWireBytes = wireBytes.get(endpoint);
+        Object event = context.getProperty(GraphRequestEvent.PROPERTY);
+        LongConsumer wireCount = event instanceof GraphRequestEvent && ((GraphRequestEvent) event).isEnabled()
+            ? received -> {
+                endpointWireBytes.add(received);
+                ((GraphRequestEvent) event).addBytes(received);
+            }
+            : endpointWireBytes::add;
+        InputStream wire = new CountingInputStream(context.getInputStream(), wireCount);
+        LongAdder endpointDecodedBytes = decodedBytes.get(endpoint);
+        Object responseBytes = context.getProperty(RESPONSE_BYTES);
+        LongConsumer decodedCount = responseBytes instanceof LongAdder
+            ? decoded -> {
+                endpointDecodedBytes.add(decoded);
+                ((LongAdder) responseBytes).add(decoded);
+            }
+            : endpointDecodedBytes::add;
+        String encoding = context.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING);
+        if (encoding != null && (GZIP.equalsIgnoreCase(encoding.trim()) || X_GZIP.equalsIgnoreCase(encoding.trim()))) {
+            context.getHeaders().remove(HttpHeaders.CONTENT_ENCODING);
+            context.setInputStream(new CountingInputStream(new GZIPInputStream(wire), decodedCount));
+        } else {
+            context.setInputStream(new CountingInputStream(wire, decodedCount));
+        }
+        return context.proceed();
+    }
+
+    private static MsGraphApiEndpoint endpointOf(Object property) {
+        return property instanceof MsGraphApiEndpoint ? (MsGraphApiEndpoint) property : MsGraphApiEndpoint.OTHER;
+    }
+
+    /**
+     * @return the bytes received for this endpoint, as sent on the wire
+     */
+    public long getWireBytes(MsGraphApiEndpoint endpoint) {
+        return wireBytes.get(endpoint).sum();
+    }
+
+    /**
+     * @return the bytes received for this endpoint, once decompressed
+     */
+    public long getDecodedBytes(MsGraphApiEndpoint endpoint) {
+        return decodedBytes.get(endpoint).sum();
+    }
+
+    public long getResponses(MsGraphApiEndpoint endpoint) {
+        return responses.get(endpoint).sum();
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.stream(MsGraphApiEndpoint.values())
+            .filter(endpoint -> getResponses(endpoint) > 0)
+            .map(endpoint -> String.format("%s: %d responses, %d bytes received, %d bytes decompressed",
+                endpoint, getResponses(endpoint), getWireBytes(endpoint), getDecodedBytes(endpoint)))
+            .collect(Collectors.joining(", "));
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private final LongConsumer count;
+
+        private CountingInputStream(InputStream in, LongConsumer count) {
+            super(in);
+            this.count = count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = super.read();
+            if (read >= 0) {
+                count.accept(1);
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count.accept(read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count.accept(skipped);
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
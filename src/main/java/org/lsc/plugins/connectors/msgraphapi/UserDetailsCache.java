@@ -0,0 +1,265 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+import org.lsc.plugins.connectors.msgraphapi.generated.CacheType;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * A bounded cache for the details of users, evicting the least recently used entries.
+ *
+ * The cache is bounded by a number of entries and/or by the estimated size of the
+ * cached details in bytes. Entries expire after the configured time to live.
+ *
+ * The details loaded while their user is invalidated are returned but not cached, as
+ * they may have been read before the change which invalidated them.
+ */
+public class UserDetailsCache {
+    public static final long DEFAULT_MAX_ENTRIES = 10000;
+    public static final int DEFAULT_TTL = 600;
+
+    private final long maxEntries;
+    private final long maxBytes;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+
+    private final LinkedHashMap<String, CachedDetails> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private final Map<String, Load> loads = new HashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private static class CachedDetails {
+        private final Map<String, Object> details;
+        private final long weight;
+        private final long expiresAt;
+
+        private CachedDetails(Map<String, Object> details, long weight, long expiresAt) {
+            this.details = details;
+            this.weight = weight;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * The loads in progress of a user, and the number of times it has been invalidated
+     * since they started
+     */
+    private static class Load {
+        private int loaders;
+        private long generation;
+    }
+
+    public static Optional<UserDetailsCache> fromConfiguration(CacheType configuration) {
+        if (configuration == null) {
+            return Optional.empty();
+        }
+        long maxEntries = Optional.ofNullable(configuration.getMaxEntries()).filter(max -> max > 0).orElse(0L);
+        long maxBytes = Optional.ofNullable(configuration.getMaxBytes()).filter(max -> max > 0).orElse(0L);
+        if (maxEntries == 0 && maxBytes == 0) {
+            maxEntries = DEFAULT_MAX_ENTRIES;
+        }
+        int ttl = Optional.ofNullable(configuration.getTtl()).filter(seconds -> seconds > 0).orElse(DEFAULT_TTL);
+        return Optional.of(new UserDetailsCache(maxEntries, maxBytes, TimeUnit.SECONDS.toNanos(ttl), System::nanoTime));
+    }
+
+    @VisibleForTesting
+    UserDetailsCache(long maxEntries, long maxBytes, long ttlNanos, LongSupplier clock) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.ttlNanos = ttlNanos;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the cached details of the user, or loads and caches them.
+     * Exceptions thrown by the loader are not cached, nor the details of a user invalidated
+     * during the load.
+     */
+    public Map<String, Object> get(String id, Function<String, Map<String, Object>> loader) {
+        Optional<Map<String, Object>> cached = getIfPresent(id);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+        long generation = startLoad(id);
+        Map<String, Object> details = null;
+        try {
+            details = loader.apply(id);
+            return details;
+        } finally {
+            endLoad(id, generation, details);
+        }
+    }
+
+    private synchronized long startLoad(String id) {
+        Load load = loads.computeIfAbsent(id, key -> new Load());
+        load.loaders++;
+        return load.generation;
+    }
+
+    private synchronized void endLoad(String id, long generation, Map<String, Object> details) {
+        Load load = loads.get(id);
+        if (--load.loaders == 0) {
+            loads.remove(id);
+        }
+        if (details != null && load.generation == generation) {
+            put(id, details);
+        }
+    }
+
+    public synchronized Optional<Map<String, Object>> getIfPresent(String id) {
+        CachedDetails cached = entries.get(id);
+        if (cached != null && cached.expiresAt - clock.getAsLong() > 0) {
+            hits.incrementAndGet();
+            return Optional.of(cached.details);
+        }
+        if (cached != null) {
+            remove(id);
+        }
+        misses.incrementAndGet();
+        return Optional.empty();
+    }
+
+    public synchronized void put(String id, Map<String, Object> details) {
+        remove(id);
+        long weight = estimateSize(id) + estimateSize(details);
+        entries.put(id, new CachedDetails(details, weight, clock.getAsLong() + ttlNanos));
+        bytes += weight;
+        evict();
+    }
+
+    public synchronized void invalidate(String id) {
+        remove(id);
+        Load load = loads.get(id);
+        if (load != null) {
+            load.generation++;
+        }
+    }
+
+    public synchronized long size() {
+        return entries.size();
+    }
+
+    public synchronized long getEstimatedBytes() {
+        return bytes;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    private void remove(String id) {
+        CachedDetails removed = entries.remove(id);
+        if (removed != null) {
+            bytes -= removed.weight;
+        }
+    }
+
+    private void evict() {
+        Iterator<CachedDetails> eldest = entries.values().iterator();
+        while (eldest.hasNext() && isOverBounds()) {
+            bytes -= eldest.next().weight;
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private boolean isOverBounds() {
+        return (maxEntries > 0 && entries.size() > maxEntries)
+            || (maxBytes > 0 && bytes > maxBytes);
+    }
+
+    /**
+     * Roughly estimates the heap used by the parsed JSON of a user, on a 64 bits JVM
+     * with compressed references.
+     */
+    @VisibleForTesting
+    static long estimateSize(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof String) {
+            return 40 + ((String) value).length();
+        }
+        if (value instanceof Map) {
+            long size = 64;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                size += 40 + estimateSize(entry.getKey()) + estimateSize(entry.getValue());
+            }
+            return size;
+        }
+        if (value instanceof byte[]) {
+            return 16 + ((byte[]) value).length;
+        }
+        if (value instanceof Collection) {
+            long size = 40;
+            for (Object element : (Collection<?>) value) {
+                size += 8 + estimateSize(element);
+            }
+            return size;
+        }
+        return 16;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.zip.CRC32;
+
+import org.lsc.exception.LscServiceConfigurationException;
+import org.lsc.plugins.connectors.msgraphapi.generated.MsGraphApiResourceService;
+
+/**
+ * The share of the users handled by one LSC instance, when the synchronization of a
+ * tenant is spread over several instances.
+ *
+ * A user belongs to the partition its object id hashes into. The hash only depends on
+ * the id, so the partitions are the same on every instance and across runs.
+ */
+public class UsersPartition {
+    private final int index;
+    private final int count;
+
+    public UsersPartition(int index, int count) {
+        this.index = index;
+        this.count = count;
+    }
+
+    public static Optional<UsersPartition> fromConfiguration(MsGraphApiResourceService serviceConfiguration) throws LscServiceConfigurationException {
+        Integer index = serviceConfiguration.getPartitionIndex();
+        Integer count = serviceConfiguration.getPartitionCount();
+        // As other sizes, a count of 0 or less is not set
+        if (count == null || count < 1) {
+            if (index != null && index > 0) {
+                throw new LscServiceConfigurationException("Both partitionIndex and partitionCount must be set to partition the users");
+            }
+            return Optional.empty();
+        }
+        if (index == null) {
+            throw new LscServiceConfigurationException("Both partitionIndex and partitionCount must be set to partition the users");
+        }
+        if (index < 0 || index >= count) {
+            throw new LscServiceConfigurationException("Invalid partition " + index + " of " + count
+                + ", partitionIndex must be between 0 and partitionCount - 1");
+        }
+        return Optional.of(new UsersPartition(index, count));
+    }
+
+    public static int partitionOf(String id, int count) {
+        CRC32 crc = new CRC32();
+        crc.update(id.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8));
+        return (int) (crc.getValue() % count);
+    }
+
+    public boolean contains(String id) {
+        return partitionOf(id, count) == index;
+    }
+
+    @Override
+    public String toString() {
+        return index + "/" + count;
+    }
+}
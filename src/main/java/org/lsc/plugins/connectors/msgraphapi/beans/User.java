@@ -42,6 +42,8 @@
  */
 package org.lsc.plugins.connectors.msgraphapi.beans;
 
+import java.util.Optional;
+
 import org.lsc.LscDatasets;
 
 public class User {
@@ -49,11 +51,20 @@ public class User {
 	private final String pivotAttribute;
 	private final String value;
 	private final String id;
+	/**
+	 * The id of the manager, when expanded by the enumeration
+	 */
+	private final String managerId;
 
 	public User(String pivotAttribute, String value, String id) {
+		this(pivotAttribute, value, id, null);
+	}
+
+	public User(String pivotAttribute, String value, String id, String managerId) {
 		this.pivotAttribute = pivotAttribute;
 		this.value = value;
 		this.id = id;
+		this.managerId = managerId;
 	}
 
 	public LscDatasets toDatasets() {
@@ -74,4 +85,8 @@ public class User {
 	public String getId() {
 		return id;
 	}
+
+	public Optional<String> getManagerId() {
+		return Optional.ofNullable(managerId);
+	}
 }
@@ -8,6 +8,8 @@
 
 package org.lsc.plugins.connectors.msgraphapi.generated;
 
+import java.util.ArrayList;
+import java.util.List;
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlElement;
@@ -31,6 +33,12 @@ import javax.xml.bind.annotation.XmlType;
  *         &lt;element name="clientId" type="{http://www.w3.org/2001/XMLSchema}string"/>
  *         &lt;element name="clientSecret" type="{http://www.w3.org/2001/XMLSchema}string"/>
  *         &lt;element name="tenant" type="{http://www.w3.org/2001/XMLSchema}string"/>
+ *         &lt;element name="additionalTenant" type="{http://lsc-project.org/XSD/lsc-microsoft-graph-api-plugin-1.0.xsd}tenantType" minOccurs="0" maxOccurs="unbounded"/>
+ *         &lt;element name="apiURL" type="{http://www.w3.org/2001/XMLSchema}string" minOccurs="0"/>
+ *         &lt;element name="resilience" type="{http://lsc-project.org/XSD/lsc-microsoft-graph-api-plugin-1.0.xsd}resilienceType" minOccurs="0"/>
+ *         &lt;element name="slowRequestThreshold" type="{http://www.w3.org/2001/XMLSchema}int" minOccurs="0"/>
+ *         &lt;element name="additionalCredential" type="{http://lsc-project.org/XSD/lsc-microsoft-graph-api-plugin-1.0.xsd}credentialType" minOccurs="0" maxOccurs="unbounded"/>
+ *         &lt;element name="snapshotTtl" type="{http://www.w3.org/2001/XMLSchema}int" minOccurs="0"/>
  *       &lt;/sequence>
  *     &lt;/restriction>
  *   &lt;/complexContent>
@@ -46,7 +54,13 @@ import javax.xml.bind.annotation.XmlType;
     "scope",
     "clientId",
     "clientSecret",
-    "tenant"
+    "tenant",
+    "additionalTenant",
+    "apiURL",
+    "resilience",
+    "slowRequestThreshold",
+    "additionalCredential",
+    "snapshotTtl"
 })
 @XmlRootElement(name = "msGraphApiConnectionSettings", namespace = "http://lsc-project.org/XSD/lsc-microsoft-graph-api-plugin-1.0.xsd")
 public class MsGraphApiConnectionSettings {
@@ -63,6 +77,18 @@ public class MsGraphApiConnectionSettings {
     protected String clientSecret;
     @XmlElement(namespace = "http://lsc-project.org/XSD/lsc-microsoft-graph-api-plugin-1.0.xsd", required = true)
     protected String tenant;
+    @XmlElement(namespace = "http://lsc-project.org/XSD/lsc-microsoft-graph-api-plugin-1.0.xsd")
+    protected List<TenantType> additionalTenant;
+    @XmlElement(namespace = "http://lsc-project.org/XSD/lsc-microsoft-graph-api-plugin-1.0.xsd")
+    protected String apiURL;
+    @XmlElement(namespace = "http://lsc-project.org/XSD/lsc-microsoft-graph-api-plugin-1.0.xsd")
+    protected ResilienceType resilience;
+    @XmlElement(namespace = "http://lsc-project.org/XSD/lsc-microsoft-graph-api-plugin-1.0.xsd")
+    protected Integer slowRequestThreshold;
+    @XmlElement(namespace = "http://lsc-project.org/XSD/lsc-microsoft-graph-api-plugin-1.0.xsd")
+    protected List<CredentialType> additionalCredential;
+    @XmlElement(namespace = "http://lsc-project.org/XSD/lsc-microsoft-graph-api-plugin-1.0.xsd")
+    protected Integer snapshotTtl;
 
     /**
      * Gets the value of the authenticationURL property.
@@ -208,4 +234,158 @@ public class MsGraphApiConnectionSettings {
         this.tenant = value;
     }
 
+    /**
+     * Gets the value of the additionalTenant property.
+     * 
+     * <p>
+     * This accessor method returns a reference to the live list,
+     * not a snapshot. Therefore any modification you make to the
+     * returned list will be present inside the JAXB object.
+     * This is why there is not a <CODE>set</CODE> method for the additionalTenant property.
+     * 
+     * <p>
+     * For example, to add a new item, do as follows:
+     * <pre>
+     *    getAdditionalTenant().add(newItem);
+     * </pre>
+     * 
+     * 
+     * <p>
+     * Objects of the following type(s) are allowed in the list
+     * {@link TenantType }
+     * 
+     * 
+     */
+    public List<TenantType> getAdditionalTenant() {
+        if (additionalTenant == null) {
+            additionalTenant = new ArrayList<TenantType>();
+        }
+        return this.additionalTenant;
+    }
+
+    /**
+     * Gets the value of the apiURL property.
+     * 
+     * @return
+     *     possible object is
+     *     {@link String }
+     *     
+     */
+    public String getApiURL() {
+        return apiURL;
+    }
+
+    /**
+     * Sets the value of the apiURL property.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link String }
+     *     
+     */
+    public void setApiURL(String value) {
+        this.apiURL = value;
+    }
+
+    /**
+     * Gets the value of the resilience property.
+     * 
+     * @return
+     *     possible object is
+     *     {@link ResilienceType }
+     *     
+     */
+    public ResilienceType getResilience() {
+        return resilience;
+    }
+
+    /**
+     * Sets the value of the resilience property.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link ResilienceType }
+     *     
+     */
+    public void setResilience(ResilienceType value) {
+        this.resilience = value;
+    }
+
+    /**
+     * Gets the value of the slowRequestThreshold property.
+     * 
+     * @return
+     *     possible object is
+     *     {@link Integer }
+     *     
+     */
+    public Integer getSlowRequestThreshold() {
+        return slowRequestThreshold;
+    }
+
+    /**
+     * Sets the value of the slowRequestThreshold property.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link Integer }
+     *     
+     */
+    public void setSlowRequestThreshold(Integer value) {
+        this.slowRequestThreshold = value;
+    }
+
+    /**
+     * Gets the value of the additionalCredential property.
+     * 
+     * <p>
+     * This accessor method returns a reference to the live list,
+     * not a snapshot. Therefore any modification you make to the
+     * returned list will be present inside the JAXB object.
+     * This is why there is not a <CODE>set</CODE> method for the additionalCredential property.
+     * 
+     * <p>
+     * For example, to add a new item, do as follows:
+     * <pre>
+     *    getAdditionalCredential().add(newItem);
+     * </pre>
+     * 
+     * 
+     * <p>
+     * Objects of the following type(s) are allowed in the list
+     * {@link CredentialType }
+     * 
+     * 
+     */
+    public List<CredentialType> getAdditionalCredential() {
+        if (additionalCredential == null) {
+            additionalCredential = new ArrayList<CredentialType>();
+        }
+        return this.additionalCredential;
+    }
+
+    /**
+     * Gets the value of the snapshotTtl property.
+     * 
+     * @return
+     *     possible object is
+     *     {@link Integer }
+     *     
+     */
+    public Integer getSnapshotTtl() {
+        return snapshotTtl;
+    }
+
+    /**
+     * Sets the value of the snapshotTtl property.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link Integer }
+     *     
+     */
+    public void setSnapshotTtl(Integer value) {
+        this.snapshotTtl = value;
+    }
+
 }
@@ -35,7 +35,8 @@ import org.lsc.configuration.ServiceType;
 @XmlAccessorType(XmlAccessType.FIELD)
 @XmlType(name = "msGraphApiService", namespace = "http://lsc-project.org/XSD/lsc-microsoft-graph-api-plugin-1.0.xsd")
 @XmlSeeAlso({
-    MsGraphApiUsersService.class
+    MsGraphApiResourceService.class,
+    MsGraphApiSnapshotService.class
 })
 public abstract class MsGraphApiService
     extends ServiceType
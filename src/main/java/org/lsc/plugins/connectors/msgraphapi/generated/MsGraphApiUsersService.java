@@ -23,12 +23,9 @@ import javax.xml.bind.annotation.XmlType;
  * <pre>
  * &lt;complexType>
  *   &lt;complexContent>
- *     &lt;extension base="{http://lsc-project.org/XSD/lsc-microsoft-graph-api-plugin-1.0.xsd}msGraphApiService">
+ *     &lt;extension base="{http://lsc-project.org/XSD/lsc-microsoft-graph-api-plugin-1.0.xsd}msGraphApiResourceService">
  *       &lt;sequence>
- *         &lt;element name="filter" type="{http://www.w3.org/2001/XMLSchema}string" minOccurs="0"/>
- *         &lt;element name="pivot" type="{http://www.w3.org/2001/XMLSchema}string" minOccurs="0"/>
- *         &lt;element name="pageSize" type="{http://www.w3.org/2001/XMLSchema}int" minOccurs="0"/>
- *         &lt;element name="select" type="{http://www.w3.org/2001/XMLSchema}string" minOccurs="0"/>
+ *         &lt;element name="notifications" type="{http://lsc-project.org/XSD/lsc-microsoft-graph-api-plugin-1.0.xsd}notificationsType" minOccurs="0"/>
  *       &lt;/sequence>
  *     &lt;/extension>
  *   &lt;/complexContent>
@@ -39,119 +36,38 @@ import javax.xml.bind.annotation.XmlType;
  */
 @XmlAccessorType(XmlAccessType.FIELD)
 @XmlType(name = "", propOrder = {
-    "filter",
-    "pivot",
-    "pageSize",
-    "select"
+    "notifications"
 })
 @XmlRootElement(name = "msGraphApiUsersService", namespace = "http://lsc-project.org/XSD/lsc-microsoft-graph-api-plugin-1.0.xsd")
 public class MsGraphApiUsersService
-    extends MsGraphApiService
+    extends MsGraphApiResourceService
 {
 
     @XmlElement(namespace = "http://lsc-project.org/XSD/lsc-microsoft-graph-api-plugin-1.0.xsd")
-    protected String filter;
-    @XmlElement(namespace = "http://lsc-project.org/XSD/lsc-microsoft-graph-api-plugin-1.0.xsd")
-    protected String pivot;
-    @XmlElement(namespace = "http://lsc-project.org/XSD/lsc-microsoft-graph-api-plugin-1.0.xsd")
-    protected Integer pageSize;
-    @XmlElement(namespace = "http://lsc-project.org/XSD/lsc-microsoft-graph-api-plugin-1.0.xsd")
-    protected String select;
-
-    /**
-     * Gets the value of the filter property.
-     * 
-     * @return
-     *     possible object is
-     *     {@link String }
-     *     
-     */
-    public String getFilter() {
-        return filter;
-    }
-
-    /**
-     * Sets the value of the filter property.
-     * 
-     * @param value
-     *     allowed object is
-     *     {@link String }
-     *     
-     */
-    public void setFilter(String value) {
-        this.filter = value;
-    }
-
-    /**
-     * Gets the value of the pivot property.
-     * 
-     * @return
-     *     possible object is
-     *     {@link String }
-     *     
-     */
-    public String getPivot() {
-        return pivot;
-    }
-
-    /**
-     * Sets the value of the pivot property.
-     * 
-     * @param value
-     *     allowed object is
-     *     {@link String }
-     *     
-     */
-    public void setPivot(String value) {
-        this.pivot = value;
-    }
-
-    /**
-     * Gets the value of the pageSize property.
-     * 
-     * @return
-     *     possible object is
-     *     {@link Integer }
-     *     
-     */
-    public Integer getPageSize() {
-        return pageSize;
-    }
-
-    /**
-     * Sets the value of the pageSize property.
-     * 
-     * @param value
-     *     allowed object is
-     *     {@link Integer }
-     *     
-     */
-    public void setPageSize(Integer value) {
-        this.pageSize = value;
-    }
+    protected NotificationsType notifications;
 
     /**
-     * Gets the value of the select property.
+     * Gets the value of the notifications property.
      * 
      * @return
      *     possible object is
-     *     {@link String }
+     *     {@link NotificationsType }
      *     
      */
-    public String getSelect() {
-        return select;
+    public NotificationsType getNotifications() {
+        return notifications;
     }
 
     /**
-     * Sets the value of the select property.
+     * Sets the value of the notifications property.
      * 
      * @param value
      *     allowed object is
-     *     {@link String }
+     *     {@link NotificationsType }
      *     
      */
-    public void setSelect(String value) {
-        this.select = value;
+    public void setNotifications(NotificationsType value) {
+        this.notifications = value;
     }
 
 }
@@ -52,4 +52,92 @@ public class ObjectFactory {
         return new MsGraphApiConnectionSettings();
     }
 
+    /**
+     * Create an instance of {@link CacheType }
+     * 
+     */
+    public CacheType createCacheType() {
+        return new CacheType();
+    }
+
+    /**
+     * Create an instance of {@link TenantType }
+     * 
+     */
+    public TenantType createTenantType() {
+        return new TenantType();
+    }
+
+    /**
+     * Create an instance of {@link AdaptivePageSizeType }
+     * 
+     */
+    public AdaptivePageSizeType createAdaptivePageSizeType() {
+        return new AdaptivePageSizeType();
+    }
+
+    /**
+     * Create an instance of {@link MsGraphApiEntityService }
+     * 
+     */
+    public MsGraphApiEntityService createMsGraphApiEntityService() {
+        return new MsGraphApiEntityService();
+    }
+
+    /**
+     * Create an instance of {@link MsGraphApiSnapshotService }
+     * 
+     */
+    public MsGraphApiSnapshotService createMsGraphApiSnapshotService() {
+        return new MsGraphApiSnapshotService();
+    }
+
+    /**
+     * Create an instance of {@link PhotoType }
+     * 
+     */
+    public PhotoType createPhotoType() {
+        return new PhotoType();
+    }
+
+    /**
+     * Create an instance of {@link ResilienceType }
+     * 
+     */
+    public ResilienceType createResilienceType() {
+        return new ResilienceType();
+    }
+
+    /**
+     * Create an instance of {@link HedgingType }
+     * 
+     */
+    public HedgingType createHedgingType() {
+        return new HedgingType();
+    }
+
+    /**
+     * Create an instance of {@link DeletedItemsType }
+     * 
+     */
+    public DeletedItemsType createDeletedItemsType() {
+        return new DeletedItemsType();
+    }
+
+    /**
+     * Create an instance of {@link CredentialType }
+     * 
+     */
+    public CredentialType createCredentialType() {
+        return new CredentialType();
+    }
+
+    /**
+     * Create an instance of {@link NotificationsType }
+     * 
+     */
+    public NotificationsType createNotificationsType() {
+        return new NotificationsType();
+    }
+
 }
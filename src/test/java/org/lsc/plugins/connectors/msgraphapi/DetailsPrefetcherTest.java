@@ -0,0 +1,196 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jakarta.ws.rs.NotFoundException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+class DetailsPrefetcherTest {
+    private static final List<String> IDS = ImmutableList.of("1", "2", "3", "4", "5", "6", "7", "8", "9", "10");
+
+    private Map<String, AtomicInteger> loads;
+    /**
+     * Counted down by each load
+     */
+    private Map<String, CountDownLatch> loaded;
+    /**
+     * Loads of these ids wait for their latch
+     */
+    private Map<String, CountDownLatch> blocked;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setup() {
+        loads = new ConcurrentHashMap<>();
+        loaded = new ConcurrentHashMap<>();
+        blocked = new ConcurrentHashMap<>();
+        executor = DetailsPrefetcher.newExecutor();
+    }
+
+    @AfterEach
+    void tearDown() {
+        blocked.values().forEach(CountDownLatch::countDown);
+        executor.shutdownNow();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private CountDownLatch loaded(String id) {
+        return loaded.computeIfAbsent(id, key -> new CountDownLatch(1));
+    }
+
+    private Map<String, Object> load(String id) {
+        loads.computeIfAbsent(id, key -> new AtomicInteger()).incrementAndGet();
+        loaded(id).countDown();
+        if (blocked.containsKey(id)) {
+            await(blocked.get(id));
+        }
+        if (id.equals("missing")) {
+            throw new NotFoundException(id + " cannot be found");
+        }
+        return ImmutableMap.of("id", id);
+    }
+
+    @Test
+    void getShouldReturnDetailsInOrder() {
+        DetailsPrefetcher testee = new DetailsPrefetcher(this::load, 3, executor);
+        testee.setOrder(IDS);
+
+        for (String id : IDS) {
+            assertThat(testee.get(id)).containsEntry("id", id);
+        }
+        assertThat(testee.getHits()).isEqualTo(IDS.size());
+        assertThat(testee.getMisses()).isZero();
+        assertThat(loads.values()).allMatch(count -> count.get() == 1);
+    }
+
+    @Test
+    void setOrderShouldOnlyReadTheWindow() {
+        CountDownLatch release = new CountDownLatch(1);
+        IDS.forEach(id -> blocked.put(id, release));
+        DetailsPrefetcher testee = new DetailsPrefetcher(this::load, 3, executor);
+        testee.setOrder(IDS);
+
+        await(loaded("1"));
+        await(loaded("2"));
+        await(loaded("3"));
+        assertThat(loads.keySet()).containsOnly("1", "2", "3");
+        release.countDown();
+    }
+
+    @Test
+    void evictedLoadsShouldBeCancelled() {
+        CountDownLatch release = new CountDownLatch(1);
+        blocked.put("1", release);
+        blocked.put("2", release);
+        DetailsPrefetcher testee = new DetailsPrefetcher(this::load, 2, executor);
+        testee.setOrder(IDS);
+        await(loaded("1"));
+        await(loaded("2"));
+
+        // Both threads are busy: the loads of 6 and 7 are queued, then evicted by the jump to 9
+        assertThat(testee.get("5")).containsEntry("id", "5");
+        assertThat(testee.get("9")).containsEntry("id", "9");
+        release.countDown();
+
+        // The queue is read in order: 6 and 7 have been skipped once 10 is loaded
+        await(loaded("10"));
+        assertThat(loads.keySet()).containsOnly("1", "2", "5", "9", "10");
+    }
+
+    @Test
+    void getShouldSupportOutOfOrderRequests() {
+        DetailsPrefetcher testee = new DetailsPrefetcher(this::load, 2, executor);
+        testee.setOrder(IDS);
+
+        assertThat(testee.get("7")).containsEntry("id", "7");
+        assertThat(testee.get("8")).containsEntry("id", "8");
+        assertThat(testee.get("1")).containsEntry("id", "1");
+        assertThat(testee.get("9")).containsEntry("id", "9");
+
+        assertThat(testee.getHits()).isEqualTo(2);
+        assertThat(testee.getMisses()).isEqualTo(2);
+    }
+
+    @Test
+    void getShouldLoadIdsWhichAreNotInTheOrder() {
+        DetailsPrefetcher testee = new DetailsPrefetcher(this::load, 2, executor);
+        testee.setOrder(IDS);
+
+        assertThat(testee.get("unknown")).containsEntry("id", "unknown");
+        assertThat(testee.getMisses()).isEqualTo(1);
+    }
+
+    @Test
+    void getShouldPropagateNotFound() {
+        DetailsPrefetcher testee = new DetailsPrefetcher(this::load, 2, executor);
+        testee.setOrder(ImmutableList.of("missing", "1"));
+
+        assertThatThrownBy(() -> testee.get("missing")).isInstanceOf(NotFoundException.class);
+        assertThat(testee.get("1")).containsEntry("id", "1");
+    }
+}
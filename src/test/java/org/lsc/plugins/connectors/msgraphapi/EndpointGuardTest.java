@@ -0,0 +1,205 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jakarta.ws.rs.NotFoundException;
+import jakarta.ws.rs.ProcessingException;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.client.WebTarget;
+
+import org.junit.jupiter.api.Test;
+import org.lsc.plugins.connectors.msgraphapi.generated.MsGraphApiConnectionSettings;
+import org.lsc.plugins.connectors.msgraphapi.generated.ResilienceType;
+
+class EndpointGuardTest {
+    private static final long OPEN_DURATION = TimeUnit.SECONDS.toNanos(30);
+
+    private final AtomicLong now = new AtomicLong();
+
+    private EndpointGuard guard(int concurrency) {
+        return new EndpointGuard("details", concurrency, TimeUnit.MILLISECONDS.toNanos(50), 3, OPEN_DURATION, now::get);
+    }
+
+    private static void fail(EndpointGuard guard) {
+        assertThatThrownBy(() -> guard.execute(() -> {
+            throw new ProcessingException("timeout");
+        })).isInstanceOf(ProcessingException.class);
+    }
+
+    @Test
+    void breakerShouldOpenAfterConsecutiveFailures() {
+        EndpointGuard guard = guard(4);
+        fail(guard);
+        fail(guard);
+        assertThat(guard.isOpen()).isFalse();
+        fail(guard);
+
+        assertThat(guard.isOpen()).isTrue();
+        assertThatThrownBy(() -> guard.execute(() -> "sent"))
+            .isInstanceOf(EndpointUnavailableException.class);
+    }
+
+    @Test
+    void successShouldResetTheFailures() {
+        EndpointGuard guard = guard(4);
+        fail(guard);
+        fail(guard);
+        guard.execute(() -> "sent");
+        fail(guard);
+
+        assertThat(guard.isOpen()).isFalse();
+    }
+
+    @Test
+    void clientErrorsShouldNotCountAsFailures() {
+        EndpointGuard guard = guard(4);
+        for (int i = 0; i < 5; i++) {
+            assertThatThrownBy(() -> guard.execute(() -> {
+                throw new NotFoundException();
+            })).isInstanceOf(NotFoundException.class);
+        }
+
+        assertThat(guard.isOpen()).isFalse();
+    }
+
+    @Test
+    void cancelledRequestsShouldNotCountAsFailures() {
+        EndpointGuard guard = guard(4);
+        for (int i = 0; i < 5; i++) {
+            assertThatThrownBy(() -> guard.execute(() -> {
+                Thread.currentThread().interrupt();
+                throw new ProcessingException("interrupted");
+            })).isInstanceOf(ProcessingException.class);
+            assertThat(Thread.interrupted()).isTrue();
+        }
+
+        assertThat(guard.isOpen()).isFalse();
+    }
+
+    @Test
+    void successfulTrialShouldCloseTheBreaker() {
+        EndpointGuard guard = guard(4);
+        fail(guard);
+        fail(guard);
+        fail(guard);
+
+        now.addAndGet(OPEN_DURATION);
+        assertThat(guard.execute(() -> "sent")).isEqualTo("sent");
+        assertThat(guard.isOpen()).isFalse();
+    }
+
+    @Test
+    void failedTrialShouldOpenTheBreakerAgain() {
+        EndpointGuard guard = guard(4);
+        fail(guard);
+        fail(guard);
+        fail(guard);
+
+        now.addAndGet(OPEN_DURATION);
+        fail(guard);
+        assertThatThrownBy(() -> guard.execute(() -> "sent"))
+            .isInstanceOf(EndpointUnavailableException.class);
+    }
+
+    @Test
+    void fullBulkheadShouldFailFast() throws Exception {
+        EndpointGuard guard = guard(1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> pending = CompletableFuture.supplyAsync(() -> {
+            try {
+                return guard.execute(() -> {
+                    started.countDown();
+                    release.await();
+                    return "slow";
+                });
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        started.await();
+
+        assertThatThrownBy(() -> guard.execute(() -> "sent"))
+            .isInstanceOf(EndpointUnavailableException.class);
+        release.countDown();
+        assertThat(pending.get()).isEqualTo("slow");
+        assertThat(guard.getAvailableSlots()).isEqualTo(1);
+    }
+
+    @Test
+    void badRequestsThroughThePagerShouldNotOpenTheBreaker() throws Exception {
+        try (GraphStub graph = new GraphStub()) {
+            MsGraphApiConnectionSettings settings = new MsGraphApiConnectionSettings();
+            settings.setAuthenticationURL(graph.getURL());
+            settings.setUsersURL(graph.getUsersURL());
+            settings.setClientId("client");
+            settings.setClientSecret("secret");
+            settings.setTenant(GraphStub.TENANT);
+            ResilienceType resilience = new ResilienceType();
+            resilience.setFailureThreshold(2);
+            settings.setResilience(resilience);
+            MsGraphApiConnection connection = MsGraphApiConnection.of("guard", settings);
+            MsGraphApiPager pager = new MsGraphApiPager(connection, MsGraphApiTenant.fromSettings(settings).get(0), Optional.empty());
+            WebTarget target = connection.getClient().target(graph.getUsersURL()).queryParam("$filter", "startswith(jobTitle, 'Eng')");
+
+            for (int i = 0; i < 5; i++) {
+                assertThatThrownBy(() -> pager.readAll(target, Optional::of, Optional.empty(), OptionalInt.empty(), false))
+                    .isInstanceOfSatisfying(WebApplicationException.class, e -> assertThat(e.getResponse().getStatus()).isEqualTo(400));
+            }
+
+            assertThat(connection.getGuard(MsGraphApiEndpoint.LIST).isOpen()).isFalse();
+            // A token, then every request has been sent
+            assertThat(graph.getRequests()).isEqualTo(6);
+        }
+    }
+}
@@ -0,0 +1,450 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves a tenant of synthetic users as Graph does: tokens, pages of users following
+ * $top and $skiptoken, counts, details, and the deleted users. The users are found with
+ * filters made of equalities on their id or mail, other filters are rejected as
+ * unsupported queries. As some properties in Graph, the job title of the deleted users
+ * cannot be filtered. The users are generated
+ * from their index, so that large tenants take no memory. Other tenants may be added,
+ * each with its own token and users. A few domains are served as well, for collections
+ * whose ids are not object ids.
+ */
+class GraphStub implements Closeable {
+    static final String TENANT = "example.org";
+    private static final String USERS_PATH = "/v1.0/users";
+    private static final String DELETED_ITEMS_PATH = "/v1.0/directory/deletedItems/";
+    private static final String DELETED_USERS = "microsoft.graph.user";
+    private static final String PHOTO_VALUE_PATH = "/photo/$value";
+    private static final String TENANT_TOKEN = "token-";
+    private static final String DOMAINS_PATH = "/v1.0/domains";
+    /**
+     * The domains of the tenant, whose ids are their names and not object ids
+     */
+    static final Map<String, String> DOMAINS = ImmutableMap.of(TENANT, "Managed", "contoso.com", "Managed", "federated.example", "Federated");
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 999;
+    private static final Pattern ID = Pattern.compile("00005eed-0000-4000-8000-([0-9a-f]{12})");
+    private static final Pattern MAIL = Pattern.compile("user(\\d+)@example\\.org", Pattern.CASE_INSENSITIVE);
+    private static final Pattern EQUALS = Pattern.compile("(\\w+) eq '((?:[^']|'')*)'");
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder tokenRequests = new LongAdder();
+    private final LongAdder countRequests = new LongAdder();
+    private final AtomicInteger tokenFailures = new AtomicInteger();
+    private final Queue<String> photos = new ConcurrentLinkedQueue<>();
+    private volatile CountDownLatch photoGate = new CountDownLatch(0);
+    private volatile int photoStatus = 200;
+    private final Map<String, Integer> tenants = new ConcurrentHashMap<>();
+    private volatile int users;
+    private volatile int deleted;
+
+    GraphStub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    String getURL() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    String getUsersURL() {
+        return getURL() + USERS_PATH;
+    }
+
+    String getApiURL() {
+        return getURL() + "/v1.0/";
+    }
+
+    /**
+     * Serves another tenant, with its own token. Its users are the ones from the offset:
+     * the users of both tenants with the same index have the same pivots.
+     */
+    void addTenant(String tenant, int offset) {
+        tenants.put(tenant, offset);
+    }
+
+    void setUsers(int users) {
+        this.users = users;
+    }
+
+    /**
+     * @param deleted the number of deleted users, which follow the users
+     */
+    void setDeleted(int deleted) {
+        this.deleted = deleted;
+    }
+
+    /**
+     * @return the number of requests received, tokens included
+     */
+    long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * @return the number of tokens requested
+     */
+    long getTokenRequests() {
+        return tokenRequests.sum();
+    }
+
+    /**
+     * @return the number of $count requests
+     */
+    long getCountRequests() {
+        return countRequests.sum();
+    }
+
+    /**
+     * @param failures the number of the next token requests to refuse
+     */
+    void setTokenFailures(int failures) {
+        tokenFailures.set(failures);
+    }
+
+    /**
+     * @return the ids of the users whose photo has been downloaded
+     */
+    List<String> getPhotos() {
+        return new ArrayList<>(photos);
+    }
+
+    /**
+     * @param gate the latch the photo downloads wait for
+     */
+    void setPhotoGate(CountDownLatch gate) {
+        this.photoGate = gate;
+    }
+
+    /**
+     * @param status the status of the photo downloads, 200 to serve the photos
+     */
+    void setPhotoStatus(int status) {
+        this.photoStatus = status;
+    }
+
+    void resetRequests() {
+        requests.reset();
+    }
+
+    static String mail(int index) {
+        return "user" + index + "@example.org";
+    }
+
+    static String id(int index) {
+        return String.format("00005eed-0000-4000-8000-%012x", index);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.increment();
+        try {
+            String path = exchange.getRequestURI().getPath();
+            Map<String, String> query = query(exchange.getRequestURI());
+            if (path.endsWith("/oauth2/v2.0/token")) {
+                tokenRequests.increment();
+                if (tokenFailures.getAndUpdate(failures -> Math.max(failures - 1, 0)) > 0) {
+                    send(exchange, 401, ImmutableMap.of("error", "invalid_client"));
+                    return;
+                }
+                String tenant = StringUtils.substringBefore(StringUtils.removeStart(path, "/"), "/");
+                send(exchange, 200, ImmutableMap.of("token_type", "Bearer", "expires_in", 3599, "ext_expires_in", 3599,
+                    "access_token", tenants.containsKey(tenant) ? TENANT_TOKEN + tenant : "token"));
+                return;
+            }
+            String authorization = StringUtils.defaultString(exchange.getRequestHeaders().getFirst("Authorization"));
+            int first = tenants.getOrDefault(StringUtils.substringAfter(authorization, "Bearer " + TENANT_TOKEN), 0);
+            if (path.equals(USERS_PATH + "/$count")) {
+                countRequests.increment();
+                byte[] body = String.valueOf(users).getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "text/plain");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            } else if (path.equals(USERS_PATH)) {
+                list(exchange, query, first, first + users, false);
+            } else if (path.startsWith(USERS_PATH + "/") && path.endsWith(PHOTO_VALUE_PATH)) {
+                photo(exchange, path.substring(USERS_PATH.length() + 1, path.length() - PHOTO_VALUE_PATH.length()));
+            } else if (path.startsWith(USERS_PATH + "/")) {
+                entry(exchange, path.substring(USERS_PATH.length() + 1), query, first, first + users);
+            } else if (path.equals(DOMAINS_PATH)) {
+                domains(exchange, query);
+            } else if (path.startsWith(DOMAINS_PATH + "/")) {
+                String name = path.substring(DOMAINS_PATH.length() + 1);
+                if (DOMAINS.containsKey(name)) {
+                    send(exchange, 200, domain(name));
+                } else {
+                    send(exchange, 404, ImmutableMap.of("error", ImmutableMap.of("code", "Request_ResourceNotFound",
+                        "message", "Resource '" + name + "' does not exist or one of its queried reference-property objects are not present.")));
+                }
+            } else if (path.equals(DELETED_ITEMS_PATH + DELETED_USERS)) {
+                list(exchange, query, first + users, first + users + deleted, true);
+            } else if (path.startsWith(DELETED_ITEMS_PATH)) {
+                entry(exchange, path.substring(DELETED_ITEMS_PATH.length()), query, first + users, first + users + deleted);
+            } else {
+                exchange.sendResponseHeaders(404, -1);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void entry(HttpExchange exchange, String key, Map<String, String> query, int first, int end) throws IOException {
+        OptionalInt index = indexOf(key, first, end);
+        if (index.isPresent()) {
+            send(exchange, 200, user(index.getAsInt(), query.get("$select")));
+        } else {
+            send(exchange, 404, ImmutableMap.of("error", ImmutableMap.of("code", "Request_ResourceNotFound",
+                "message", "Resource '" + key + "' does not exist or one of its queried reference-property objects are not present.")));
+        }
+    }
+
+    private void photo(HttpExchange exchange, String key) throws IOException {
+        photos.add(key);
+        try {
+            photoGate.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (photoStatus != 200) {
+            send(exchange, photoStatus, ImmutableMap.of("error", ImmutableMap.of("code", "ErrorAccessDenied",
+                "message", "Access is denied. Check credentials and try again.")));
+            return;
+        }
+        OptionalInt index = indexOf(key, 0, users);
+        if (!index.isPresent()) {
+            exchange.sendResponseHeaders(404, -1);
+            return;
+        }
+        byte[] body = ("photo " + index.getAsInt()).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "image/jpeg");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private void list(HttpExchange exchange, Map<String, String> query, int first, int end, boolean deletedItems) throws IOException {
+        if (!query.containsKey("$filter")) {
+            send(exchange, 200, page(query, first, end, deletedItems));
+            return;
+        }
+        Optional<Map<String, String>> equalities = equalities(query.get("$filter"));
+        if (!equalities.isPresent() || !(equalities.get().containsKey("id") || equalities.get().containsKey("mail"))
+                || (deletedItems && equalities.get().containsKey("jobTitle"))) {
+            send(exchange, 400, ImmutableMap.of("error", ImmutableMap.of("code", "Request_UnsupportedQuery",
+                "message", "Unsupported Query.")));
+            return;
+        }
+        OptionalInt index = indexOf(equalities.get().getOrDefault("id", equalities.get().get("mail")), first, end);
+        List<Map<String, Object>> value = new ArrayList<>();
+        if (index.isPresent()) {
+            Map<String, Object> user = user(index.getAsInt(), null);
+            if (equalities.get().entrySet().stream().allMatch(equality -> equality.getValue().equalsIgnoreCase(String.valueOf(user.get(equality.getKey()))))) {
+                value.add(user(index.getAsInt(), query.get("$select")));
+            }
+        }
+        send(exchange, 200, ImmutableMap.of("value", value));
+    }
+
+    private void domains(HttpExchange exchange, Map<String, String> query) throws IOException {
+        Optional<Map<String, String>> equalities = query.containsKey("$filter") ? equalities(query.get("$filter")) : Optional.of(Map.of());
+        if (!equalities.isPresent()) {
+            send(exchange, 400, ImmutableMap.of("error", ImmutableMap.of("code", "Request_UnsupportedQuery",
+                "message", "Unsupported Query.")));
+            return;
+        }
+        List<Map<String, Object>> value = DOMAINS.keySet().stream()
+            .map(GraphStub::domain)
+            .filter(domain -> equalities.get().entrySet().stream()
+                .allMatch(equality -> equality.getValue().equalsIgnoreCase(String.valueOf(domain.get(equality.getKey())))))
+            .collect(Collectors.toList());
+        send(exchange, 200, ImmutableMap.of("value", value));
+    }
+
+    private static Map<String, Object> domain(String name) {
+        return ImmutableMap.of("id", name, "authenticationType", DOMAINS.get(name));
+    }
+
+    /**
+     * @return the values of a filter made of equalities joined by and, if it is one
+     */
+    private static Optional<Map<String, String>> equalities(String filter) {
+        Map<String, String> equalities = new HashMap<>();
+        Matcher equality = EQUALS.matcher(filter);
+        StringBuilder rest = new StringBuilder();
+        while (equality.find()) {
+            equalities.put(equality.group(1), equality.group(2).replace("''", "'"));
+            equality.appendReplacement(rest, "");
+        }
+        equality.appendTail(rest);
+        if (equalities.isEmpty() || !rest.toString().replaceAll("[()]|\\band\\b", "").isBlank()) {
+            return Optional.empty();
+        }
+        return Optional.of(equalities);
+    }
+
+    private Map<String, Object> page(Map<String, String> query, int first, int last, boolean deletedItems) {
+        String select = query.get("$select");
+        Map<String, Object> page = new LinkedHashMap<>();
+        int top = Math.min(Integer.parseInt(query.getOrDefault("$top", String.valueOf(DEFAULT_PAGE_SIZE))), MAX_PAGE_SIZE);
+        int start = first + Integer.parseInt(query.getOrDefault("$skiptoken", "0"));
+        int end = Math.min(start + top, last);
+        List<Map<String, Object>> value = new ArrayList<>(Math.max(end - start, 0));
+        for (int index = start; index < end; index++) {
+            value.add(user(index, select));
+        }
+        page.put("value", value);
+        if (end < last) {
+            page.put("@odata.nextLink", (!deletedItems ? getUsersURL() : getApiURL() + "directory/deletedItems/" + DELETED_USERS) + "?"
+                + (select != null ? "$select=" + URLEncoder.encode(select, StandardCharsets.UTF_8) + "&" : "")
+                + "$top=" + top + "&$skiptoken=" + (end - first));
+        }
+        return page;
+    }
+
+    private Map<String, Object> user(int index, String select) {
+        Map<String, Object> user = new LinkedHashMap<>();
+        user.put("id", id(index));
+        user.put("userPrincipalName", mail(index));
+        user.put("mail", mail(index));
+        user.put("displayName", "User " + index);
+        user.put("givenName", "User");
+        user.put("surname", String.valueOf(index));
+        user.put("jobTitle", "Engineer");
+        user.put("department", "Department " + index % 100);
+        user.put("businessPhones", List.of(String.format("+33 1 %08d", index)));
+        user.put("accountEnabled", true);
+        if (select != null) {
+            Set<String> selected = Arrays.stream(select.split(",")).map(String::trim).collect(Collectors.toSet());
+            user.keySet().retainAll(selected);
+        }
+        return user;
+    }
+
+    private static OptionalInt indexOf(String key, int first, int end) {
+        Matcher id = ID.matcher(key);
+        Matcher mail = MAIL.matcher(key);
+        long index = -1;
+        if (id.matches()) {
+            index = Long.parseLong(id.group(1), 16);
+        } else if (mail.matches()) {
+            index = Long.parseLong(mail.group(1));
+        }
+        return index >= first && index < end ? OptionalInt.of((int) index) : OptionalInt.empty();
+    }
+
+    private static Map<String, String> query(URI uri) {
+        Map<String, String> query = new HashMap<>();
+        if (uri.getRawQuery() != null) {
+            for (String parameter : uri.getRawQuery().split("&")) {
+                String[] nameAndValue = parameter.split("=", 2);
+                query.put(URLDecoder.decode(nameAndValue[0], StandardCharsets.UTF_8),
+                    nameAndValue.length > 1 ? URLDecoder.decode(nameAndValue[1], StandardCharsets.UTF_8) : "");
+            }
+        }
+        return query;
+    }
+
+    private void send(HttpExchange exchange, int status, Map<String, ?> body) throws IOException {
+        StringWriter json = new StringWriter();
+        objectMapper.writeValue(json, body);
+        byte[] bytes = json.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+class ManagerResolverTest {
+    private ManagerResolver resolver;
+
+    @BeforeEach
+    void setUp() {
+        resolver = new ManagerResolver("mail");
+        resolver.setEnumeration(
+            ImmutableMap.of("id-0", "boss@example.com", "id-1", "user@example.com"),
+            ImmutableMap.of("id-1", "id-0"));
+    }
+
+    @Test
+    void managerShouldBeResolvedThroughTheEnumeration() {
+        Map<String, Object> details = ImmutableMap.of("id", "id-2", "manager", ImmutableMap.of("id", "id-0", "mail", "Boss@example.com"));
+
+        assertThat(resolver.resolve("id-2", details))
+            .containsEntry("id", "id-2")
+            .containsEntry("manager", "boss@example.com");
+    }
+
+    @Test
+    void managerOfTheEnumerationShouldBeUsedWhenNotExpanded() {
+        assertThat(resolver.resolve("id-1", ImmutableMap.of("id", "id-1")))
+            .containsEntry("manager", "boss@example.com");
+    }
+
+    @Test
+    void expandedPivotShouldBeUsedForManagersOutOfTheEnumeration() {
+        Map<String, Object> details = ImmutableMap.of("id", "id-2", "manager", ImmutableMap.of("id", "id-9", "mail", "other@example.com"));
+
+        assertThat(resolver.resolve("id-2", details))
+            .containsEntry("manager", "other@example.com");
+    }
+
+    @Test
+    void entryWithoutManagerShouldHaveNoManager() {
+        assertThat(resolver.resolve("id-0", ImmutableMap.of("id", "id-0")))
+            .containsEntry("manager", null);
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.glassfish.jersey.client.JerseyClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.lsc.plugins.connectors.msgraphapi.generated.MsGraphApiConnectionSettings;
+
+class MsGraphApiConnectionTest {
+    private final GraphStub graph;
+
+    MsGraphApiConnectionTest() throws Exception {
+        graph = new GraphStub();
+    }
+
+    @AfterEach
+    void tearDown() {
+        MsGraphApiConnection.releaseAll();
+        graph.close();
+    }
+
+    private MsGraphApiConnectionSettings settings() {
+        MsGraphApiConnectionSettings settings = new MsGraphApiConnectionSettings();
+        settings.setAuthenticationURL(graph.getURL());
+        settings.setClientId("client");
+        settings.setClientSecret("secret");
+        settings.setTenant(GraphStub.TENANT);
+        return settings;
+    }
+
+    @Test
+    void servicesOfTheSameSettingsShouldShareTheirConnection() throws Exception {
+        MsGraphApiConnectionSettings settings = settings();
+
+        assertThat(MsGraphApiConnection.of("msgraphapi", settings)).isSameAs(MsGraphApiConnection.of("msgraphapi", settings));
+        assertThat(MsGraphApiConnection.of("other", settings)).isNotSameAs(MsGraphApiConnection.of("msgraphapi", settings));
+    }
+
+    @Test
+    void settingsLoadedAgainShouldReleaseThePreviousConnection() throws Exception {
+        MsGraphApiConnection previous = MsGraphApiConnection.of("msgraphapi", settings());
+
+        MsGraphApiConnection connection = MsGraphApiConnection.of("msgraphapi", settings());
+
+        assertThat(connection).isNotSameAs(previous);
+        assertThat(((JerseyClient) previous.getClient()).isClosed()).isTrue();
+        assertThat(((JerseyClient) connection.getClient()).isClosed()).isFalse();
+        assertThat(previous.getPrefetchExecutor().isShutdown()).isTrue();
+        assertThat(connection.getPrefetchExecutor().isShutdown()).isFalse();
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.ws.rs.NotFoundException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.lsc.exception.LscServiceConfigurationException;
+import org.lsc.plugins.connectors.msgraphapi.beans.User;
+import org.lsc.plugins.connectors.msgraphapi.generated.CacheType;
+import org.lsc.plugins.connectors.msgraphapi.generated.DeletedItemsType;
+import org.lsc.plugins.connectors.msgraphapi.generated.MsGraphApiConnectionSettings;
+import org.lsc.plugins.connectors.msgraphapi.generated.MsGraphApiEntityService;
+import org.lsc.plugins.connectors.msgraphapi.generated.MsGraphApiResourceService;
+import org.lsc.plugins.connectors.msgraphapi.generated.MsGraphApiUsersService;
+import org.lsc.plugins.connectors.msgraphapi.generated.PhotoType;
+
+class MsGraphApiDaoTest {
+    private GraphStub graph;
+
+    @AfterEach
+    void tearDown() {
+        if (graph != null) {
+            graph.close();
+        }
+    }
+
+    private MsGraphApiDao dao(String filter) throws IOException, LscServiceConfigurationException {
+        return dao(filter, null);
+    }
+
+    private MsGraphApiDao dao(String filter, String pivot) throws IOException, LscServiceConfigurationException {
+        return dao(filter, pivot, null);
+    }
+
+    private MsGraphApiDao dao(String filter, String pivot, DeletedItemsType deletedItems) throws IOException, LscServiceConfigurationException {
+        MsGraphApiUsersService service = new MsGraphApiUsersService();
+        service.setFilter(filter);
+        service.setPivot(pivot);
+        service.setDeletedItems(deletedItems);
+        return daoOf(service);
+    }
+
+    private MsGraphApiDao daoWithPhotos(CacheType cache) throws IOException, LscServiceConfigurationException {
+        PhotoType photo = new PhotoType();
+        photo.setConcurrency(1);
+        MsGraphApiUsersService service = new MsGraphApiUsersService();
+        service.setPhoto(photo);
+        service.setCache(cache);
+        return daoOf(service);
+    }
+
+    private MsGraphApiDao daoOf(MsGraphApiResourceService service) throws IOException, LscServiceConfigurationException {
+        graph = new GraphStub();
+        graph.setUsers(200);
+        graph.setDeleted(10);
+        MsGraphApiConnectionSettings settings = new MsGraphApiConnectionSettings();
+        settings.setAuthenticationURL(graph.getURL());
+        settings.setApiURL(graph.getApiURL());
+        settings.setClientId("client");
+        settings.setClientSecret("secret");
+        settings.setTenant(GraphStub.TENANT);
+        return new MsGraphApiDao(MsGraphApiConnection.of("dao", settings), MsGraphApiTenant.fromSettings(settings).get(0), service);
+    }
+
+    @Test
+    void usersShouldBeReadFromTheDefaultUsersURL() {
+        assertThat(MsGraphApiDao.resourceURL(new MsGraphApiConnectionSettings(), new MsGraphApiUsersService()))
+            .isEqualTo("https://graph.microsoft.com/v1.0/users");
+    }
+
+    @Test
+    void usersShouldBeReadFromTheConfiguredUsersURL() {
+        MsGraphApiConnectionSettings settings = new MsGraphApiConnectionSettings();
+        settings.setUsersURL("https://graph.microsoft.com/beta/users");
+        settings.setApiURL("https://graph.microsoft.com/v1.0");
+
+        assertThat(MsGraphApiDao.resourceURL(settings, new MsGraphApiUsersService()))
+            .isEqualTo("https://graph.microsoft.com/beta/users");
+    }
+
+    @Test
+    void usersShouldBeReadUnderTheApiURLWhenNoUsersURL() {
+        MsGraphApiConnectionSettings settings = new MsGraphApiConnectionSettings();
+        settings.setApiURL("https://graph.microsoft.com/beta");
+
+        assertThat(MsGraphApiDao.resourceURL(settings, new MsGraphApiUsersService()))
+            .isEqualTo("https://graph.microsoft.com/beta/users");
+    }
+
+    @Test
+    void entitiesShouldBeReadUnderTheApiURL() {
+        MsGraphApiConnectionSettings settings = new MsGraphApiConnectionSettings();
+        settings.setApiURL("https://graph.microsoft.com/beta/");
+        MsGraphApiEntityService service = new MsGraphApiEntityService();
+        service.setResource("/servicePrincipals");
+
+        assertThat(MsGraphApiDao.resourceURL(settings, service))
+            .isEqualTo("https://graph.microsoft.com/beta/servicePrincipals");
+    }
+
+    @Test
+    void entitiesShouldBeReadUnderTheDefaultApiURL() {
+        MsGraphApiEntityService service = new MsGraphApiEntityService();
+        service.setResource("devices");
+
+        assertThat(MsGraphApiDao.resourceURL(new MsGraphApiConnectionSettings(), service))
+            .isEqualTo("https://graph.microsoft.com/v1.0/devices");
+    }
+
+    @Test
+    void changedEntriesShouldBeReadFromTheDeletedItemsOnceDeleted() throws Exception {
+        MsGraphApiDao dao = dao(null);
+
+        assertThat(dao.getChanged(GraphStub.id(2)).map(User::getValue)).hasValue(GraphStub.mail(2));
+        assertThat(dao.getChanged(GraphStub.id(202)).map(User::getValue)).hasValue(GraphStub.mail(202));
+        assertThat(dao.getChanged(GraphStub.id(300))).isEmpty();
+    }
+
+    @Test
+    void changedEntriesShouldMatchTheFilter() throws Exception {
+        MsGraphApiDao dao = dao("department eq 'Department 1'");
+
+        assertThat(dao.getChanged(GraphStub.id(101)).map(User::getValue)).hasValue(GraphStub.mail(101));
+        assertThat(dao.getChanged(GraphStub.id(102))).isEmpty();
+        assertThat(dao.getChanged(GraphStub.id(201)).map(User::getValue)).hasValue(GraphStub.mail(201));
+        assertThat(dao.getChanged(GraphStub.id(202))).isEmpty();
+    }
+
+    @Test
+    void changedEntriesShouldBeIgnoredWhenTheDeletedItemsCannotBeFiltered() throws Exception {
+        MsGraphApiDao dao = dao("jobTitle eq 'Engineer'");
+
+        assertThat(dao.getChanged(GraphStub.id(2)).map(User::getValue)).hasValue(GraphStub.mail(2));
+        assertThat(dao.getChanged(GraphStub.id(202))).isEmpty();
+    }
+
+    @Test
+    void idPivotsWhichAreNotObjectIdsShouldNotBeLookedUp() throws Exception {
+        MsGraphApiDao dao = dao("department eq 'Department 1'", "id");
+        assertThat(dao.getFirstWithPivot(GraphStub.id(1)).map(User::getId)).hasValue(GraphStub.id(1));
+        graph.resetRequests();
+
+        assertThat(dao.getFirstWithPivot("not-an-id")).isEmpty();
+        assertThat(graph.getRequests()).isZero();
+    }
+
+    @Test
+    void idPivotsOfEntitiesShouldBeLookedUpWhateverTheirForm() throws Exception {
+        MsGraphApiEntityService service = new MsGraphApiEntityService();
+        service.setResource("domains");
+        service.setPivot("id");
+        MsGraphApiDao dao = daoOf(service);
+
+        assertThat(dao.getFirstWithPivot("contoso.com").map(User::getId)).hasValue("contoso.com");
+        assertThat(dao.getFirstWithPivot("unknown.example")).isEmpty();
+    }
+
+    @Test
+    void idPivotsOfFilteredEntitiesShouldBeQueriedWhateverTheirForm() throws Exception {
+        MsGraphApiEntityService service = new MsGraphApiEntityService();
+        service.setResource("domains");
+        service.setPivot("id");
+        service.setFilter("authenticationType eq 'Managed'");
+        MsGraphApiDao dao = daoOf(service);
+
+        assertThat(dao.getFirstWithPivot("contoso.com").map(User::getId)).hasValue("contoso.com");
+        assertThat(dao.getFirstWithPivot("federated.example")).isEmpty();
+        assertThat(dao.getList()).extracting(User::getId).containsExactlyInAnyOrder(GraphStub.TENANT, "contoso.com");
+    }
+
+    @Test
+    void concurrentCallersShouldShareTheBuildOfTheCleanIndex() throws Exception {
+        MsGraphApiDao dao = dao(null, null, new DeletedItemsType());
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Optional<CleanIndex>>> indexes = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                indexes.add(executor.submit(() -> {
+                    start.await();
+                    return dao.getCleanIndex();
+                }));
+            }
+            start.countDown();
+
+            CleanIndex index = indexes.get(0).get(10, TimeUnit.SECONDS).get();
+            for (Future<Optional<CleanIndex>> other : indexes) {
+                assertThat(other.get(10, TimeUnit.SECONDS)).containsSame(index);
+            }
+            assertThat(index.getId(GraphStub.mail(2))).hasValue(GraphStub.id(2));
+            assertThat(index.isDeleted(GraphStub.mail(202))).isTrue();
+            long requests = graph.getRequests();
+            assertThat(dao.getCleanIndex()).containsSame(index);
+            assertThat(graph.getRequests()).isEqualTo(requests);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void photosShouldBeCachedWithTheDetails() throws Exception {
+        MsGraphApiDao dao = daoWithPhotos(new CacheType());
+
+        Map<String, Object> details = dao.getDetails(GraphStub.id(1));
+
+        assertThat(details).containsEntry("mail", GraphStub.mail(1));
+        assertThat((byte[]) details.get(PhotoFetcher.DEFAULT_ATTRIBUTE)).asString(StandardCharsets.UTF_8).isEqualTo("photo 1");
+        assertThat(dao.getDetails(GraphStub.id(1))).isSameAs(details);
+        assertThat(graph.getPhotos()).containsExactly(GraphStub.id(1));
+    }
+
+    @Test
+    void photosShouldBeCancelledWhenTheDetailsCannotBeRead() throws Exception {
+        MsGraphApiDao dao = daoWithPhotos(null);
+        CountDownLatch gate = new CountDownLatch(1);
+        graph.setPhotoGate(gate);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // The single photo download blocks, so that the next photo waits in the queue
+            Future<Map<String, Object>> blocked = executor.submit(() -> dao.getDetails(GraphStub.id(1)));
+            while (graph.getPhotos().isEmpty()) {
+                Thread.onSpinWait();
+            }
+
+            assertThatThrownBy(() -> dao.getDetails(GraphStub.id(300))).isInstanceOf(NotFoundException.class);
+            gate.countDown();
+
+            assertThat(blocked.get(10, TimeUnit.SECONDS)).containsKey(PhotoFetcher.DEFAULT_ATTRIBUTE);
+            assertThat(dao.getDetails(GraphStub.id(2))).containsKey(PhotoFetcher.DEFAULT_ATTRIBUTE);
+            assertThat(graph.getPhotos()).containsExactly(GraphStub.id(1), GraphStub.id(2));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void detailsShouldBeReadWithoutThePhotoWhenThePhotoCannotBeRead() throws Exception {
+        MsGraphApiDao dao = daoWithPhotos(null);
+        graph.setPhotoStatus(403);
+
+        Map<String, Object> details = dao.getDetails(GraphStub.id(1));
+
+        assertThat(details).containsEntry("mail", GraphStub.mail(1)).doesNotContainKey(PhotoFetcher.DEFAULT_ATTRIBUTE);
+        assertThat(graph.getPhotos()).containsExactly(GraphStub.id(1));
+    }
+
+    @Test
+    void enumerationsShouldReportTheirProgressWithoutCountingWhenAdvancedQueriesAreNotAllowed() throws Exception {
+        MsGraphApiDao dao = dao(null);
+
+        assertThat(dao.getList()).hasSize(200);
+
+        EnumerationProgress progress = dao.getEnumerationProgress().get();
+        assertThat(progress.getEntries()).isEqualTo(200);
+        assertThat(progress.getPages()).isEqualTo(2);
+        assertThat(progress.isFinished()).isTrue();
+        assertThat(progress.getTotal()).isEmpty();
+        assertThat(progress.getEstimatedTimeRemaining()).isEmpty();
+        assertThat(graph.getCountRequests()).isZero();
+    }
+
+    @Test
+    void enumerationsShouldBeCountedFirstWhenAdvancedQueriesAreAllowed() throws Exception {
+        MsGraphApiUsersService service = new MsGraphApiUsersService();
+        service.setAllowAdvancedQuery(true);
+        MsGraphApiDao dao = daoOf(service);
+
+        assertThat(dao.getList()).hasSize(200);
+
+        EnumerationProgress progress = dao.getEnumerationProgress().get();
+        assertThat(progress.getTotal()).hasValue(200);
+        assertThat(progress.getEntries()).isEqualTo(200);
+        assertThat(progress.isFinished()).isTrue();
+        assertThat(progress.toString()).startsWith("users of " + GraphStub.TENANT + ": 200/200 entries in 2 pages");
+        assertThat(graph.getCountRequests()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.lsc.LscDatasets;
+import org.lsc.beans.IBean;
+import org.lsc.configuration.PluginConnectionType;
+import org.lsc.configuration.PluginSourceServiceType;
+import org.lsc.configuration.ServiceType;
+import org.lsc.configuration.TaskType;
+import org.lsc.exception.LscServiceException;
+import org.lsc.plugins.connectors.msgraphapi.generated.MsGraphApiConnectionSettings;
+import org.lsc.plugins.connectors.msgraphapi.generated.MsGraphApiUsersService;
+import org.lsc.plugins.connectors.msgraphapi.generated.PivotCollisionPolicyType;
+import org.lsc.plugins.connectors.msgraphapi.generated.TenantType;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Synchronizes two tenants served by the stub: the users of the second tenant start at
+ * the index 150, so that the users 150 to 199 exist in both tenants.
+ */
+class MsGraphApiEntitySrcServiceTest {
+    private static final String OTHER_TENANT = "fabrikam.example";
+    private static final boolean FROM_SAME_SERVICE = true;
+
+    private GraphStub graph;
+
+    @AfterEach
+    void tearDown() {
+        MsGraphApiConnection.releaseAll();
+        if (graph != null) {
+            graph.close();
+        }
+    }
+
+    private MsGraphApiEntitySrcService service(PivotCollisionPolicyType pivotCollisionPolicy, Integer prefetchWindow) throws Exception {
+        graph = new GraphStub();
+        graph.setUsers(200);
+        graph.addTenant(OTHER_TENANT, 150);
+        MsGraphApiConnectionSettings settings = new MsGraphApiConnectionSettings();
+        settings.setAuthenticationURL(graph.getURL());
+        settings.setApiURL(graph.getApiURL());
+        settings.setClientId("client");
+        settings.setClientSecret("secret");
+        settings.setTenant(GraphStub.TENANT);
+        TenantType otherTenant = new TenantType();
+        otherTenant.setTenant(OTHER_TENANT);
+        settings.getAdditionalTenant().add(otherTenant);
+        MsGraphApiUsersService service = new MsGraphApiUsersService();
+        service.setPivotCollisionPolicy(pivotCollisionPolicy);
+        service.setPrefetchWindow(prefetchWindow);
+
+        PluginConnectionType connectionType = mock(PluginConnectionType.class);
+        when(connectionType.getName()).thenReturn("tenants");
+        when(connectionType.getAny()).thenReturn(ImmutableList.of(settings));
+        ServiceType.Connection connection = mock(ServiceType.Connection.class);
+        when(connection.getReference()).thenReturn(connectionType);
+        PluginSourceServiceType pluginSourceService = mock(PluginSourceServiceType.class);
+        when(pluginSourceService.getAny()).thenReturn(ImmutableList.of(service));
+        when(pluginSourceService.getConnection()).thenReturn(connection);
+        TaskType task = mock(TaskType.class);
+        when(task.getName()).thenReturn("users");
+        when(task.getBean()).thenReturn("org.lsc.beans.SimpleBean");
+        when(task.getPluginSourceService()).thenReturn(pluginSourceService);
+        return new MsGraphApiEntitySrcService(task, MsGraphApiUsersService.class);
+    }
+
+    private static String tenantOf(Map<String, LscDatasets> pivots, int index) {
+        return pivots.get(GraphStub.mail(index)).getStringValueAttribute(MsGraphApiDao.TENANT);
+    }
+
+    @Test
+    void enumerationsOfTheTenantsShouldBeMerged() throws Exception {
+        MsGraphApiEntitySrcService service = service(null, null);
+
+        Map<String, LscDatasets> pivots = service.getListPivots();
+
+        assertThat(pivots).hasSize(350);
+        assertThat(pivots.keySet()).startsWith(GraphStub.mail(0)).endsWith(GraphStub.mail(349));
+        assertThat(tenantOf(pivots, 0)).isEqualTo(GraphStub.TENANT);
+        assertThat(tenantOf(pivots, 300)).isEqualTo(OTHER_TENANT);
+        assertThat(pivots.get(GraphStub.mail(300)).getStringValueAttribute(MsGraphApiDao.ID)).isEqualTo(GraphStub.id(300));
+    }
+
+    @Test
+    void sharedPivotsShouldBeKeptFromTheFirstTenantByDefault() throws Exception {
+        MsGraphApiEntitySrcService service = service(PivotCollisionPolicyType.FIRST, null);
+
+        Map<String, LscDatasets> pivots = service.getListPivots();
+
+        assertThat(tenantOf(pivots, 150)).isEqualTo(GraphStub.TENANT);
+        assertThat(tenantOf(pivots, 199)).isEqualTo(GraphStub.TENANT);
+    }
+
+    @Test
+    void sharedPivotsShouldBeIgnoredWhenSkipped() throws Exception {
+        MsGraphApiEntitySrcService service = service(PivotCollisionPolicyType.SKIP, null);
+
+        Map<String, LscDatasets> pivots = service.getListPivots();
+
+        assertThat(pivots).hasSize(300);
+        assertThat(pivots).containsKeys(GraphStub.mail(149), GraphStub.mail(200))
+            .doesNotContainKeys(GraphStub.mail(150), GraphStub.mail(199));
+    }
+
+    @Test
+    void sharedPivotsShouldFailTheListWhenConfigured() throws Exception {
+        MsGraphApiEntitySrcService service = service(PivotCollisionPolicyType.FAIL, null);
+
+        assertThatThrownBy(service::getListPivots)
+            .isInstanceOf(LscServiceException.class)
+            .hasMessageContaining(GraphStub.mail(150))
+            .hasMessageContaining(OTHER_TENANT);
+    }
+
+    @Test
+    void beansShouldBeReadFromTheirTenant() throws Exception {
+        MsGraphApiEntitySrcService service = service(null, null);
+        Map<String, LscDatasets> pivots = service.getListPivots();
+
+        IBean other = service.getBean("mail", pivots.get(GraphStub.mail(300)), FROM_SAME_SERVICE);
+        IBean first = service.getBean("mail", pivots.get(GraphStub.mail(1)), FROM_SAME_SERVICE);
+
+        assertThat(other.getDatasetFirstValueById("mail")).isEqualTo(GraphStub.mail(300));
+        assertThat(other.getDatasetFirstValueById(MsGraphApiDao.TENANT)).isEqualTo(OTHER_TENANT);
+        assertThat(first.getDatasetFirstValueById("mail")).isEqualTo(GraphStub.mail(1));
+        assertThat(first.getDatasetFirstValueById(MsGraphApiDao.TENANT)).isEqualTo(GraphStub.TENANT);
+    }
+
+    @Test
+    void prefetchedBeansShouldBeReadFromTheTenantOfTheirId() throws Exception {
+        MsGraphApiEntitySrcService service = service(null, 4);
+        Map<String, LscDatasets> pivots = service.getListPivots();
+
+        IBean other = service.getBean("mail", pivots.get(GraphStub.mail(300)), FROM_SAME_SERVICE);
+
+        assertThat(other.getDatasetFirstValueById("mail")).isEqualTo(GraphStub.mail(300));
+        assertThat(other.getDatasetFirstValueById(MsGraphApiDao.TENANT)).isEqualTo(OTHER_TENANT);
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.lsc.configuration.PluginSourceServiceType;
+import org.lsc.configuration.TaskType;
+import org.lsc.exception.LscServiceException;
+import org.lsc.plugins.connectors.msgraphapi.generated.MsGraphApiSnapshotService;
+import org.lsc.plugins.connectors.msgraphapi.generated.PivotCollisionPolicyType;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+class MsGraphApiSnapshotSrcServiceTest {
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void tearDown() {
+        MsGraphApiSnapshotSrcService.closeSnapshots();
+    }
+
+    private MsGraphApiSnapshotSrcService service(String file, PivotCollisionPolicyType pivotCollisionPolicy) throws Exception {
+        MsGraphApiSnapshotService service = new MsGraphApiSnapshotService();
+        service.setName("snapshot");
+        service.setFile(file);
+        service.setPivotCollisionPolicy(pivotCollisionPolicy);
+        PluginSourceServiceType pluginSourceService = mock(PluginSourceServiceType.class);
+        when(pluginSourceService.getAny()).thenReturn(ImmutableList.of(service));
+        TaskType task = mock(TaskType.class);
+        when(task.getName()).thenReturn("users");
+        when(task.getBean()).thenReturn("org.lsc.beans.SimpleBean");
+        when(task.getPluginSourceService()).thenReturn(pluginSourceService);
+        return new MsGraphApiSnapshotSrcService(task);
+    }
+
+    private String snapshotWithSharedPivot() throws IOException {
+        Path file = directory.resolve("users.ndjson");
+        Files.write(file, ImmutableList.of(
+            "{\"id\":\"id-0\",\"mail\":\"user0@example.com\"}",
+            "{\"id\":\"id-1\",\"mail\":\"shared@example.com\"}",
+            "{\"id\":\"id-2\",\"mail\":\"shared@example.com\"}"));
+        return file.toString();
+    }
+
+    private long temporaryFiles() throws IOException {
+        Predicate<Path> snapshot = path -> path.getFileName().toString().startsWith("msgraphapi-snapshot");
+        try (Stream<Path> files = Files.list(Path.of(System.getProperty("java.io.tmpdir")))) {
+            return files.filter(snapshot).count();
+        }
+    }
+
+    @Test
+    void sharedPivotShouldKeepTheFirstEntryByDefault() throws Exception {
+        MsGraphApiSnapshotSrcService service = service(snapshotWithSharedPivot(), null);
+
+        assertThat(service.getListPivots()).containsOnlyKeys("user0@example.com", "shared@example.com");
+        assertThat(service.getListPivots().get("shared@example.com").getStringValueAttribute("id")).isEqualTo("id-1");
+    }
+
+    @Test
+    void sharedPivotShouldBeIgnoredWhenSkipped() throws Exception {
+        MsGraphApiSnapshotSrcService service = service(snapshotWithSharedPivot(), PivotCollisionPolicyType.SKIP);
+
+        assertThat(service.getListPivots()).containsOnlyKeys("user0@example.com");
+    }
+
+    @Test
+    void sharedPivotShouldFailTheListWhenConfigured() throws Exception {
+        MsGraphApiSnapshotSrcService service = service(snapshotWithSharedPivot(), PivotCollisionPolicyType.FAIL);
+
+        assertThatThrownBy(service::getListPivots)
+            .isInstanceOf(LscServiceException.class)
+            .hasMessageContaining("shared@example.com");
+    }
+
+    @Test
+    void decompressedSnapshotShouldBeDeletedWhenTheTaskIsLoadedAgain() throws Exception {
+        NdjsonExporter exporter = new NdjsonExporter(new ObjectMapper(), directory.resolve("users"), 1, 10);
+        exporter.accept(ImmutableList.of(ImmutableMap.of("id", "id-0", "mail", "user0@example.com")));
+        exporter.close();
+        long before = temporaryFiles();
+
+        service(directory.resolve("users").toString(), null);
+        assertThat(temporaryFiles()).isEqualTo(before + 1);
+        service(directory.resolve("users").toString(), null);
+        assertThat(temporaryFiles()).isEqualTo(before + 1);
+
+        MsGraphApiSnapshotSrcService.closeSnapshots();
+        assertThat(temporaryFiles()).isEqualTo(before);
+    }
+}
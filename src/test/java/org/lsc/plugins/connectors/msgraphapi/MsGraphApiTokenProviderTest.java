@@ -0,0 +1,117 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jakarta.ws.rs.ProcessingException;
+import jakarta.ws.rs.client.Client;
+import jakarta.ws.rs.client.ClientBuilder;
+
+import org.glassfish.jersey.jackson.JacksonFeature;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.lsc.plugins.connectors.msgraphapi.generated.MsGraphApiConnectionSettings;
+
+class MsGraphApiTokenProviderTest {
+    /**
+     * The lifetime of the tokens of the stub
+     */
+    private static final long LIFETIME = TimeUnit.SECONDS.toNanos(3599);
+    private static final long REFRESH_MARGIN = TimeUnit.MINUTES.toNanos(5);
+
+    private final AtomicLong now = new AtomicLong();
+    private GraphStub graph;
+    private Client client;
+    private MsGraphApiTokenProvider provider;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        graph = new GraphStub();
+        client = ClientBuilder.newClient().register(JacksonFeature.class);
+        MsGraphApiConnectionSettings settings = new MsGraphApiConnectionSettings();
+        settings.setClientId("client");
+        settings.setClientSecret("secret");
+        settings.setTenant(GraphStub.TENANT);
+        // Tokens are requested in the calling thread
+        provider = new MsGraphApiTokenProvider(client, MsGraphApiTenant.fromSettings(settings).get(0), graph.getURL(), null, Runnable::run,
+            EndpointGuard.fromConfiguration(null).get(MsGraphApiEndpoint.TOKEN), now::get);
+    }
+
+    @AfterEach
+    void tearDown() {
+        client.close();
+        graph.close();
+    }
+
+    @Test
+    void tokenShouldBeRequestedAgainShortlyBeforeItExpires() {
+        assertThat(provider.getToken()).isEqualTo("token");
+        assertThat(graph.getTokenRequests()).isEqualTo(1);
+
+        now.set(LIFETIME - REFRESH_MARGIN - 1);
+        provider.getToken();
+        assertThat(graph.getTokenRequests()).isEqualTo(1);
+
+        now.set(LIFETIME - REFRESH_MARGIN);
+        assertThat(provider.getToken()).isEqualTo("token");
+        assertThat(graph.getTokenRequests()).isEqualTo(2);
+    }
+
+    @Test
+    void tokenShouldBeRequestedAgainAfterAFailure() {
+        graph.setTokenFailures(1);
+
+        assertThatThrownBy(provider::getToken).isInstanceOf(ProcessingException.class);
+        assertThat(provider.getToken()).isEqualTo("token");
+        assertThat(graph.getTokenRequests()).isEqualTo(2);
+
+        provider.getToken();
+        assertThat(graph.getTokenRequests()).isEqualTo(2);
+    }
+}
@@ -103,6 +103,7 @@ class MsGraphApiUsersServiceTest {
         PluginConnectionType connectionType = mock(PluginConnectionType.class);
         ServiceType.Connection connection = mock(ServiceType.Connection.class);
 
+        when(connectionType.getName()).thenReturn("msgraphapi");
         when(connectionType.getAny()).thenReturn(ImmutableList.of(connectionSettings));
         when(connection.getReference()).thenReturn(connectionType);
         when(pluginSourceService.getConnection()).thenReturn(connection);
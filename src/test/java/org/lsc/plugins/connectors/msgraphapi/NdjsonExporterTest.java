@@ -0,0 +1,170 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+
+class NdjsonExporterTest {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    @TempDir
+    Path directory;
+
+    private static List<Map<String, Object>> page(int first, int size) {
+        return IntStream.range(first, first + size)
+            .mapToObj(i -> ImmutableMap.<String, Object>of("id", "user-" + i, "department", "Department " + (i % 7)))
+            .collect(Collectors.toList());
+    }
+
+    private List<Path> files() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static List<Map<String, Object>> read(List<Path> parts) throws IOException {
+        List<Map<String, Object>> entries = new ArrayList<>();
+        for (Path part : parts) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(Files.newInputStream(part)), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    entries.add(OBJECT_MAPPER.readValue(line, new TypeReference<Map<String, Object>>() {}));
+                }
+            }
+        }
+        return entries;
+    }
+
+    @Test
+    void allEntriesShouldBeWrittenInOrder() throws IOException {
+        NdjsonExporter exporter = new NdjsonExporter(OBJECT_MAPPER, directory.resolve("users"), NdjsonExporter.DEFAULT_PART_SIZE, 2);
+        for (int i = 0; i < 10; i++) {
+            exporter.accept(page(i * 100, 100));
+        }
+        exporter.close();
+
+        assertThat(exporter.getParts()).containsExactly(directory.resolve("users-00000.ndjson.gz"));
+        assertThat(exporter.getEntries()).isEqualTo(1000);
+        List<Map<String, Object>> entries = read(exporter.getParts());
+        assertThat(entries).hasSize(1000);
+        assertThat(entries.get(0)).containsEntry("id", "user-0");
+        assertThat(entries.get(999)).containsEntry("id", "user-999");
+    }
+
+    @Test
+    void eachEntryShouldBeALine() throws IOException {
+        NdjsonExporter exporter = new NdjsonExporter(OBJECT_MAPPER, directory.resolve("users"), NdjsonExporter.DEFAULT_PART_SIZE, 2);
+        exporter.accept(page(0, 3));
+        exporter.close();
+
+        try (GZIPInputStream part = new GZIPInputStream(Files.newInputStream(exporter.getParts().get(0)))) {
+            assertThat(new String(part.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo(
+                "{\"id\":\"user-0\",\"department\":\"Department 0\"}\n"
+                + "{\"id\":\"user-1\",\"department\":\"Department 1\"}\n"
+                + "{\"id\":\"user-2\",\"department\":\"Department 2\"}\n");
+        }
+    }
+
+    @Test
+    void partsShouldBeSplitBySize() throws IOException {
+        NdjsonExporter exporter = new NdjsonExporter(OBJECT_MAPPER, directory.resolve("users"), 1, 2);
+        exporter.accept(page(0, 3));
+        exporter.close();
+
+        assertThat(exporter.getParts()).hasSize(3);
+        assertThat(read(exporter.getParts())).extracting(entry -> entry.get("id"))
+            .containsExactly("user-0", "user-1", "user-2");
+    }
+
+    @Test
+    void nothingShouldBeWrittenWithoutEntries() throws IOException {
+        NdjsonExporter exporter = new NdjsonExporter(OBJECT_MAPPER, directory.resolve("users"), 1, 2);
+        exporter.accept(new ArrayList<>());
+        exporter.close();
+
+        assertThat(exporter.getParts()).isEmpty();
+        assertThat(exporter.getEntries()).isZero();
+    }
+
+    @Test
+    void partsShouldOnlyGetTheirNamesOnceClosed() throws IOException {
+        NdjsonExporter exporter = new NdjsonExporter(OBJECT_MAPPER, directory.resolve("users"), 1, 2);
+        exporter.accept(page(0, 2));
+
+        assertThat(files()).doesNotContain(directory.resolve("users-00000.ndjson.gz"), directory.resolve("users-00001.ndjson.gz"));
+        exporter.close();
+        assertThat(files()).containsExactly(directory.resolve("users-00000.ndjson.gz"), directory.resolve("users-00001.ndjson.gz"));
+    }
+
+    @Test
+    void abortedExportShouldLeaveNoPart() throws IOException {
+        NdjsonExporter exporter = new NdjsonExporter(OBJECT_MAPPER, directory.resolve("users"), 1, 2);
+        exporter.accept(page(0, 3));
+
+        exporter.abort();
+        exporter.close();
+
+        assertThat(files()).isEmpty();
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class NotificationReceiverTest {
+    private static final String CLIENT_STATE = "d1b6c2e0-secret";
+
+    private final ChangeQueue queue = new ChangeQueue(3);
+    private final List<String> lifecycleEvents = new ArrayList<>();
+    private NotificationReceiver receiver;
+    private NotificationSimulator graph;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        receiver = new NotificationReceiver(new InetSocketAddress("localhost", 0), "/lsc/notifications", CLIENT_STATE, new ObjectMapper(),
+            new NotificationReceiver.Listener() {
+                @Override
+                public boolean onChange(String subscriptionId, String id, String changeType) {
+                    return queue.offer(new ChangeQueue.Change("tenant", id));
+                }
+
+                @Override
+                public synchronized void onLifecycleEvent(String subscriptionId, String lifecycleEvent) {
+                    lifecycleEvents.add(subscriptionId + " " + lifecycleEvent);
+                }
+            });
+        graph = new NotificationSimulator(URI.create("http://localhost:" + receiver.getPort() + "/lsc/notifications"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        receiver.close();
+    }
+
+    private List<String> drain() {
+        List<String> ids = new ArrayList<>();
+        Optional<ChangeQueue.Change> change;
+        while ((change = queue.poll()).isPresent()) {
+            ids.add(change.get().getId());
+        }
+        return ids;
+    }
+
+    @Test
+    void validationRequestsShouldBeAnsweredWithTheirToken() throws Exception {
+        HttpResponse<String> response = graph.validate("Validation: Testing client application reachability for subscription Request-Id: 42");
+
+        assertThat(response.statusCode()).isEqualTo(200);
+        assertThat(response.headers().firstValue("Content-Type")).hasValueSatisfying(type -> assertThat(type).startsWith("text/plain"));
+        assertThat(response.body()).isEqualTo("Validation: Testing client application reachability for subscription Request-Id: 42");
+    }
+
+    @Test
+    void changedUsersShouldBeQueuedOnce() throws Exception {
+        assertThat(graph.notifyChanges("subscription", CLIENT_STATE, "updated", "u1", "u2", "u1")).isEqualTo(202);
+        assertThat(graph.notifyChanges("subscription", CLIENT_STATE, "deleted", "u2")).isEqualTo(202);
+
+        assertThat(drain()).containsExactly("u1", "u2");
+    }
+
+    @Test
+    void notificationsWithAnotherClientStateShouldBeIgnored() throws Exception {
+        assertThat(graph.notifyChanges("subscription", "forged", "updated", "u1")).isEqualTo(202);
+
+        assertThat(drain()).isEmpty();
+    }
+
+    @Test
+    void notificationsShouldBeRefusedWhenTheQueueIsFull() throws Exception {
+        assertThat(graph.notifyChanges("subscription", CLIENT_STATE, "updated", "u1", "u2")).isEqualTo(202);
+        assertThat(graph.notifyChanges("subscription", CLIENT_STATE, "updated", "u3", "u4")).isEqualTo(503);
+        assertThat(drain()).containsExactly("u1", "u2", "u3");
+
+        // Graph sends the whole batch again later
+        assertThat(graph.notifyChanges("subscription", CLIENT_STATE, "updated", "u3", "u4")).isEqualTo(202);
+        assertThat(drain()).containsExactly("u3", "u4");
+    }
+
+    @Test
+    void lifecycleEventsShouldBeHandedOver() throws Exception {
+        assertThat(graph.notifyLifecycleEvent("subscription", CLIENT_STATE, "reauthorizationRequired")).isEqualTo(202);
+
+        assertThat(lifecycleEvents).containsExactly("subscription reauthorizationRequired");
+        assertThat(drain()).isEmpty();
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Posts requests to a notification URL as Graph does: validation requests and batches
+ * of change or lifecycle notifications.
+ */
+class NotificationSimulator {
+    private final HttpClient client = HttpClient.newHttpClient();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final URI notificationURL;
+
+    NotificationSimulator(URI notificationURL) {
+        this.notificationURL = notificationURL;
+    }
+
+    HttpResponse<String> validate(String validationToken) throws IOException, InterruptedException {
+        URI uri = URI.create(notificationURL + "?validationToken=" + URLEncoder.encode(validationToken, StandardCharsets.UTF_8));
+        return client.send(HttpRequest.newBuilder(uri)
+            .POST(HttpRequest.BodyPublishers.noBody())
+            .build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * @return the status of the response
+     */
+    int notifyChanges(String subscriptionId, String clientState, String changeType, String... ids) throws IOException, InterruptedException {
+        List<Map<String, Object>> notifications = new ArrayList<>();
+        for (String id : ids) {
+            Map<String, Object> notification = new LinkedHashMap<>();
+            notification.put("subscriptionId", subscriptionId);
+            notification.put("clientState", clientState);
+            notification.put("changeType", changeType);
+            notification.put("resource", "Users/" + id);
+            notification.put("resourceData", Map.of("@odata.type", "#Microsoft.Graph.User", "id", id));
+            notifications.add(notification);
+        }
+        return post(notifications);
+    }
+
+    int notifyLifecycleEvent(String subscriptionId, String clientState, String lifecycleEvent) throws IOException, InterruptedException {
+        Map<String, Object> notification = new LinkedHashMap<>();
+        notification.put("subscriptionId", subscriptionId);
+        notification.put("clientState", clientState);
+        notification.put("lifecycleEvent", lifecycleEvent);
+        return post(List.of(notification));
+    }
+
+    private int post(List<Map<String, Object>> notifications) throws IOException, InterruptedException {
+        StringWriter body = new StringWriter();
+        objectMapper.writeValue(body, Map.of("value", notifications));
+        return client.send(HttpRequest.newBuilder(notificationURL)
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+            .build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+}
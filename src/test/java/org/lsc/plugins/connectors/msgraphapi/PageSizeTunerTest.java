@@ -0,0 +1,143 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.lsc.plugins.connectors.msgraphapi.generated.AdaptivePageSizeType;
+
+class PageSizeTunerTest {
+
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    @Test
+    void pageSizeShouldNotChangeWithoutObservations() {
+        PageSizeTuner tuner = new PageSizeTuner("test", 100, 1000, 0, 1, 999);
+
+        assertThat(tuner.nextPageSize()).isEqualTo(100);
+        assertThat(tuner.getDecisions()).isZero();
+    }
+
+    @Test
+    void fastPagesShouldIncreaseThePageSizeAtMostTwice() {
+        PageSizeTuner tuner = new PageSizeTuner("test", 100, 1000, 0, 1, 999);
+        tuner.onPage(100, 100, millis(100), -1);
+        tuner.onPage(100, 100, millis(100), -1);
+
+        assertThat(tuner.nextPageSize()).isEqualTo(200);
+        assertThat(tuner.getLastResponseTime()).isEqualTo(100);
+    }
+
+    @Test
+    void slowPagesShouldDecreaseThePageSize() {
+        PageSizeTuner tuner = new PageSizeTuner("test", 400, 1000, 0, 1, 999);
+        tuner.onPage(400, 400, millis(1600), -1);
+
+        assertThat(tuner.nextPageSize()).isEqualTo(250);
+    }
+
+    @Test
+    void largePayloadsShouldDecreaseThePageSize() {
+        PageSizeTuner tuner = new PageSizeTuner("test", 400, 1000, 100_000, 1, 999);
+        tuner.onPage(400, 400, millis(100), 160_000);
+
+        assertThat(tuner.nextPageSize()).isEqualTo(250);
+        assertThat(tuner.getLastPayloadSize()).isEqualTo(160_000);
+    }
+
+    @Test
+    void lastPartialPageShouldBeIgnored() {
+        PageSizeTuner tuner = new PageSizeTuner("test", 100, 1000, 0, 1, 999);
+        tuner.onPage(3, 100, millis(10), -1);
+
+        assertThat(tuner.nextPageSize()).isEqualTo(100);
+    }
+
+    @Test
+    void throttlingShouldHalveThePageSize() {
+        PageSizeTuner tuner = new PageSizeTuner("test", 100, 1000, 0, 1, 999);
+        tuner.onPage(100, 100, millis(10), -1);
+        tuner.onThrottled();
+
+        assertThat(tuner.nextPageSize()).isEqualTo(50);
+    }
+
+    @Test
+    void pageSizeShouldStayWithinBounds() {
+        PageSizeTuner tuner = new PageSizeTuner("test", 100, 1000, 0, 80, 150);
+        tuner.onPage(100, 100, millis(10), -1);
+        assertThat(tuner.nextPageSize()).isEqualTo(150);
+
+        tuner.onThrottled();
+        tuner.nextPageSize();
+        tuner.onThrottled();
+        assertThat(tuner.nextPageSize()).isEqualTo(80);
+    }
+
+    @Test
+    void configurationShouldBeClampedToTheApiLimits() {
+        AdaptivePageSizeType configuration = new AdaptivePageSizeType();
+        configuration.setMaxPageSize(5000);
+
+        PageSizeTuner tuner = PageSizeTuner.fromConfiguration("test", configuration, Optional.empty()).get();
+        tuner.onPage(100, 100, millis(10), -1);
+        tuner.nextPageSize();
+        for (int i = 0; i < 5; i++) {
+            tuner.onPage(tuner.getPageSize(), tuner.getPageSize(), millis(10), -1);
+            tuner.nextPageSize();
+        }
+
+        assertThat(tuner.getPageSize()).isEqualTo(PageSizeTuner.GRAPH_MAX_PAGE_SIZE);
+    }
+
+    @Test
+    void noConfigurationShouldMeanNoTuning() {
+        assertThat(PageSizeTuner.fromConfiguration("test", null, Optional.of(100))).isEmpty();
+    }
+}
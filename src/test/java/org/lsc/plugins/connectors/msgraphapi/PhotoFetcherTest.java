@@ -0,0 +1,184 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import jakarta.ws.rs.NotFoundException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PhotoFetcherTest {
+
+    @TempDir
+    Path directory;
+
+    private static class FakePhotoSource implements PhotoFetcher.PhotoSource {
+        private final Map<String, byte[]> photos = new HashMap<>();
+        private final Map<String, String> etags = new HashMap<>();
+        private final AtomicInteger downloads = new AtomicInteger();
+
+        void put(String id, String etag, byte[] photo) {
+            photos.put(id, photo);
+            etags.put(id, etag);
+        }
+
+        @Override
+        public String readETag(String id) {
+            if (!etags.containsKey(id)) {
+                throw new NotFoundException();
+            }
+            return etags.get(id);
+        }
+
+        @Override
+        public Optional<byte[]> read(String id, int maxSize) {
+            downloads.incrementAndGet();
+            if (!photos.containsKey(id)) {
+                throw new NotFoundException();
+            }
+            return photos.get(id).length > maxSize ? Optional.empty() : Optional.of(photos.get(id));
+        }
+    }
+
+    private static byte[] image(int width, int height) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", out);
+        return out.toByteArray();
+    }
+
+    private PhotoFetcher fetcher(int maxSize, OptionalInt maxDimension, Optional<Path> cacheDirectory) {
+        return new PhotoFetcher("jpegPhoto", maxSize, maxDimension, cacheDirectory, 2);
+    }
+
+    @Test
+    void photoShouldBeAddedToTheAttributes() {
+        FakePhotoSource source = new FakePhotoSource();
+        source.put("id-0", "etag-0", new byte[] {1, 2, 3});
+
+        Map<String, Object> attributes = fetcher(1024, OptionalInt.empty(), Optional.empty()).fetch(source, "id-0").join();
+
+        assertThat(attributes).containsOnlyKeys("jpegPhoto");
+        assertThat((byte[]) attributes.get("jpegPhoto")).containsExactly(1, 2, 3);
+    }
+
+    @Test
+    void missingPhotoShouldBeEmpty() {
+        Map<String, Object> attributes = fetcher(1024, OptionalInt.empty(), Optional.empty()).fetch(new FakePhotoSource(), "id-0").join();
+
+        assertThat(attributes).containsOnlyKeys("jpegPhoto");
+        assertThat(attributes.get("jpegPhoto")).asList().isEmpty();
+    }
+
+    @Test
+    void tooLargePhotoShouldBeCleared() {
+        FakePhotoSource source = new FakePhotoSource();
+        source.put("id-0", "etag-0", new byte[2048]);
+        PhotoFetcher fetcher = fetcher(1024, OptionalInt.empty(), Optional.empty());
+
+        Map<String, Object> attributes = fetcher.fetch(source, "id-0").join();
+
+        assertThat(attributes).containsOnlyKeys("jpegPhoto");
+        assertThat(attributes.get("jpegPhoto")).asList().isEmpty();
+        assertThat(fetcher.getTooLarge()).isEqualTo(1);
+    }
+
+    @Test
+    void unchangedPhotoShouldBeReadFromTheCache() {
+        FakePhotoSource source = new FakePhotoSource();
+        source.put("id-0", "etag-0", new byte[] {1});
+        PhotoFetcher fetcher = fetcher(1024, OptionalInt.empty(), Optional.of(directory));
+
+        fetcher.fetch(source, "id-0").join();
+        Map<String, Object> attributes = fetcher.fetch(source, "id-0").join();
+
+        assertThat((byte[]) attributes.get("jpegPhoto")).containsExactly(1);
+        assertThat(source.downloads).hasValue(1);
+        assertThat(fetcher.getCacheHits()).isEqualTo(1);
+    }
+
+    @Test
+    void changedPhotoShouldBeDownloadedAgain() throws IOException {
+        FakePhotoSource source = new FakePhotoSource();
+        source.put("id-0", "etag-0", new byte[] {1});
+        PhotoFetcher fetcher = fetcher(1024, OptionalInt.empty(), Optional.of(directory));
+        fetcher.fetch(source, "id-0").join();
+
+        source.put("id-0", "etag-1", new byte[] {2});
+        Map<String, Object> attributes = fetcher.fetch(source, "id-0").join();
+
+        assertThat((byte[]) attributes.get("jpegPhoto")).containsExactly(2);
+        assertThat(source.downloads).hasValue(2);
+        assertThat(directory.toFile().list()).hasSize(1);
+    }
+
+    @Test
+    void largeImageShouldBeScaledDown() throws IOException {
+        byte[] resized = PhotoFetcher.resize(image(400, 200), 100);
+
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(resized));
+        assertThat(image.getWidth()).isEqualTo(100);
+        assertThat(image.getHeight()).isEqualTo(50);
+    }
+
+    @Test
+    void smallImageShouldBeKept() throws IOException {
+        byte[] photo = image(50, 50);
+
+        assertThat(PhotoFetcher.resize(photo, 100)).isSameAs(photo);
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+import org.lsc.plugins.connectors.msgraphapi.beans.User;
+
+import com.google.common.collect.ImmutableList;
+
+class PivotIndexTest {
+
+    private static List<User> users(int first, int count) {
+        return IntStream.range(first, first + count)
+            .mapToObj(i -> new User("mail", "user" + i + "@example.com", "id-" + i))
+            .collect(Collectors.toList());
+    }
+
+    @Test
+    void pivotsShouldBeFoundRegardlessOfCase() {
+        PivotIndex index = PivotIndex.of(users(0, 1000));
+
+        assertThat(index.size()).isEqualTo(1000);
+        assertThat(index.getId("User42@Example.com")).contains("id-42");
+        assertThat(index.contains("user999@example.com")).isTrue();
+        assertThat(index.contains("user1000@example.com")).isFalse();
+        assertThat(index.getId("user1000@example.com")).isEmpty();
+    }
+
+    @Test
+    void emptyIndexShouldContainNothing() {
+        assertThat(PivotIndex.of(ImmutableList.of()).contains("user0@example.com")).isFalse();
+    }
+
+    @Test
+    void enumeratedEntriesShouldNotBeDeleted() {
+        CleanIndex index = new CleanIndex(PivotIndex.of(users(0, 10)), PivotIndex.of(users(5, 10)), System.nanoTime());
+
+        assertThat(index.getId("user7@example.com")).contains("id-7");
+        assertThat(index.isDeleted("user7@example.com")).isFalse();
+        assertThat(index.isDeleted("user12@example.com")).isTrue();
+        assertThat(index.isDeleted("user20@example.com")).isFalse();
+        assertThat(index.getId("user20@example.com")).isEmpty();
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+import org.lsc.exception.LscServiceConfigurationException;
+import org.lsc.plugins.connectors.msgraphapi.generated.MsGraphApiUsersService;
+
+class QueryPlannerTest {
+    private static final String ID = "4c9d8a4e-6f2c-4b5e-9b4a-1f0f4e0c2d3a";
+
+    @Test
+    void simpleFiltersShouldBeBasicQueries() {
+        assertThat(QueryPlanner.requiresAdvancedQuery("startsWith(displayName, 'a')")).isFalse();
+        assertThat(QueryPlanner.requiresAdvancedQuery("accountEnabled eq true and mail eq 'ne@example.com'")).isFalse();
+        assertThat(QueryPlanner.requiresAdvancedQuery("proxyAddresses/any(x:startsWith(x, 'smtp:'))")).isFalse();
+        assertThat(QueryPlanner.requiresAdvancedQuery("displayName eq 'O''Neil not here'")).isFalse();
+    }
+
+    @Test
+    void expensiveFiltersShouldBeAdvancedQueries() {
+        assertThat(QueryPlanner.requiresAdvancedQuery("mail ne null")).isTrue();
+        assertThat(QueryPlanner.requiresAdvancedQuery("NOT(startsWith(mail, 'a'))")).isTrue();
+        assertThat(QueryPlanner.requiresAdvancedQuery("endsWith(mail, '@example.com')")).isTrue();
+        assertThat(QueryPlanner.requiresAdvancedQuery("proxyAddresses/any(x:endsWith(x, '@example.com'))")).isTrue();
+        assertThat(QueryPlanner.requiresAdvancedQuery("assignedLicenses/$count eq 0")).isTrue();
+        assertThat(QueryPlanner.requiresAdvancedQuery("onPremisesExtensionAttributes/extensionAttribute1 eq 'x'")).isTrue();
+    }
+
+    @Test
+    void invalidFiltersShouldBeRejected() {
+        assertThatThrownBy(() -> QueryPlanner.requiresAdvancedQuery("mail eq 'unterminated")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> QueryPlanner.requiresAdvancedQuery("(mail eq 'a'")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> QueryPlanner.requiresAdvancedQuery("mail eq 'a')")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void advancedFiltersShouldBeRejectedUnlessAllowed() throws LscServiceConfigurationException {
+        MsGraphApiUsersService configuration = new MsGraphApiUsersService();
+
+        assertThatThrownBy(() -> QueryPlanner.fromConfiguration(configuration, Optional.of("mail ne null"), "mail", true))
+            .isInstanceOf(LscServiceConfigurationException.class);
+
+        configuration.setAllowAdvancedQuery(true);
+        assertThat(QueryPlanner.fromConfiguration(configuration, Optional.of("mail ne null"), "mail", true).isAdvancedEnumeration()).isTrue();
+    }
+
+    @Test
+    void pivotsShouldBeLookedUpDirectlyWithoutFilter() {
+        assertThat(new QueryPlanner(Optional.empty(), "id", false).getLookupKey(ID)).contains(ID);
+        assertThat(new QueryPlanner(Optional.empty(), "userPrincipalName", true).getLookupKey("user@example.com")).contains("user@example.com");
+    }
+
+    @Test
+    void pivotsShouldBeQueriedWhenTheyCannotBeLookedUp() {
+        assertThat(new QueryPlanner(Optional.of("accountEnabled eq true"), "id", true).getLookupKey(ID)).isEmpty();
+        assertThat(new QueryPlanner(Optional.empty(), "id", true).getLookupKey("not-an-id")).isEmpty();
+        assertThat(new QueryPlanner(Optional.empty(), "mail", true).getLookupKey("user@example.com")).isEmpty();
+        assertThat(new QueryPlanner(Optional.empty(), "userPrincipalName", false).getLookupKey("user@example.com")).isEmpty();
+        assertThat(new QueryPlanner(Optional.empty(), "userPrincipalName", true).getLookupKey("$user@example.com")).isEmpty();
+    }
+
+    @Test
+    void idPivotsWhichAreNotObjectIdsShouldNotMatch() {
+        assertThat(new QueryPlanner(Optional.empty(), "id", true).canMatch(ID)).isTrue();
+        assertThat(new QueryPlanner(Optional.empty(), "id", true).canMatch("not-an-id")).isFalse();
+        assertThat(new QueryPlanner(Optional.of("accountEnabled eq true"), "id", true).canMatch("not-an-id")).isFalse();
+        assertThat(new QueryPlanner(Optional.empty(), "mail", true).canMatch("not-an-id")).isTrue();
+    }
+
+    @Test
+    void idPivotsOfOtherCollectionsShouldAlwaysBeLookedUp() {
+        assertThat(new QueryPlanner(Optional.empty(), "id", false).canMatch("contoso.com")).isTrue();
+        assertThat(new QueryPlanner(Optional.of("authenticationType eq 'Managed'"), "id", false).canMatch("contoso.com")).isTrue();
+        assertThat(new QueryPlanner(Optional.empty(), "id", false).getLookupKey("contoso.com,5f1c,8e2a")).contains("contoso.com,5f1c,8e2a");
+        assertThat(new QueryPlanner(Optional.empty(), "id", false).getLookupKey("a/b")).isEmpty();
+    }
+}
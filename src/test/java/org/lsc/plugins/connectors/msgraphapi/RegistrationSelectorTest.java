@@ -0,0 +1,113 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+class RegistrationSelectorTest {
+    private static final long RETRY_AFTER = TimeUnit.SECONDS.toNanos(10);
+
+    // nanoTime() may be negative
+    private final AtomicLong now = new AtomicLong(-TimeUnit.HOURS.toNanos(1));
+
+    private static List<MsGraphApiTokenProvider> registrations(int count) {
+        List<MsGraphApiTokenProvider> registrations = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            registrations.add(new MsGraphApiTokenProvider(null, new MsGraphApiTenant("tenant", "client" + i, "secret"), null, null, Runnable::run, null));
+        }
+        return registrations;
+    }
+
+    @Test
+    void requestsShouldBeSpreadOverTheRegistrations() {
+        List<MsGraphApiTokenProvider> registrations = registrations(3);
+        RegistrationSelector selector = new RegistrationSelector(registrations, now::get);
+
+        assertThat(List.of(selector.select(), selector.select(), selector.select(), selector.select()))
+            .containsExactly(registrations.get(0), registrations.get(1), registrations.get(2), registrations.get(0));
+        assertThat(selector.available()).isEqualTo(3);
+    }
+
+    @Test
+    void throttledRegistrationsShouldBeLeftAsideUntilRetryAfter() {
+        List<MsGraphApiTokenProvider> registrations = registrations(2);
+        RegistrationSelector selector = new RegistrationSelector(registrations, now::get);
+
+        assertThat(selector.onThrottled(registrations.get(0), RETRY_AFTER)).isTrue();
+        assertThat(List.of(selector.select(), selector.select(), selector.select())).containsOnly(registrations.get(1));
+
+        now.addAndGet(RETRY_AFTER);
+        assertThat(List.of(selector.select(), selector.select())).containsExactlyInAnyOrder(registrations.get(0), registrations.get(1));
+    }
+
+    @Test
+    void whenAllRegistrationsAreThrottledTheFirstAvailableShouldBeSelected() {
+        List<MsGraphApiTokenProvider> registrations = registrations(2);
+        RegistrationSelector selector = new RegistrationSelector(registrations, now::get);
+
+        assertThat(selector.onThrottled(registrations.get(0), 2 * RETRY_AFTER)).isTrue();
+        assertThat(selector.onThrottled(registrations.get(1), RETRY_AFTER)).isFalse();
+
+        assertThat(selector.available()).isZero();
+        assertThat(List.of(selector.select(), selector.select())).containsOnly(registrations.get(1));
+    }
+
+    @Test
+    void aShorterRetryAfterShouldNotShortenTheThrottling() {
+        List<MsGraphApiTokenProvider> registrations = registrations(2);
+        RegistrationSelector selector = new RegistrationSelector(registrations, now::get);
+
+        selector.onThrottled(registrations.get(0), 2 * RETRY_AFTER);
+        selector.onThrottled(registrations.get(0), RETRY_AFTER);
+        now.addAndGet(RETRY_AFTER);
+
+        assertThat(selector.available()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jakarta.ws.rs.NotFoundException;
+import jakarta.ws.rs.ProcessingException;
+
+import org.junit.jupiter.api.Test;
+
+class RequestHedgerTest {
+
+    private static void warmUp(RequestHedger hedger, long millis) {
+        for (int i = 0; i < 200; i++) {
+            hedger.record(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    void requestsShouldNotBeHedgedWhileWarmingUp() {
+        RequestHedger hedger = new RequestHedger("details", 95, 0, 100);
+
+        assertThat(hedger.execute(() -> "response")).isEqualTo("response");
+        assertThat(hedger.getDelay()).isEqualTo(-1);
+        assertThat(hedger.getHedges()).isZero();
+    }
+
+    @Test
+    void delayShouldFollowThePercentile() {
+        RequestHedger hedger = new RequestHedger("details", 95, 0, 100);
+        for (int i = 1; i <= 100; i++) {
+            hedger.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+
+        assertThat(hedger.getDelay()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(95));
+    }
+
+    @Test
+    void slowRequestShouldBeWonByTheHedgedRequest() {
+        RequestHedger hedger = new RequestHedger("details", 95, 0, 100);
+        warmUp(hedger, 10);
+        CountDownLatch hedged = new CountDownLatch(1);
+        AtomicInteger attempts = new AtomicInteger();
+
+        String response = hedger.execute(() -> {
+            if (attempts.incrementAndGet() == 1) {
+                await(hedged);
+                return "slow";
+            }
+            return "hedged";
+        });
+        hedged.countDown();
+
+        assertThat(response).isEqualTo("hedged");
+        assertThat(hedger.getHedges()).isEqualTo(1);
+        assertThat(hedger.getHedgeWins()).isEqualTo(1);
+    }
+
+    @Test
+    void losingRequestShouldBeCancelled() {
+        RequestHedger hedger = new RequestHedger("details", 95, 0, 100);
+        warmUp(hedger, 1);
+        CountDownLatch cancelled = new CountDownLatch(1);
+        AtomicInteger attempts = new AtomicInteger();
+
+        String response = hedger.execute(() -> {
+            if (attempts.incrementAndGet() == 1) {
+                try {
+                    new CountDownLatch(1).await();
+                } catch (InterruptedException e) {
+                    cancelled.countDown();
+                }
+                return "slow";
+            }
+            return "hedged";
+        });
+
+        assertThat(response).isEqualTo("hedged");
+        await(cancelled);
+    }
+
+    @Test
+    void hedgeAnsweredAfterTheRequestShouldNotCountAWin() {
+        RequestHedger hedger = new RequestHedger("details", 95, 0, 100);
+        warmUp(hedger, 1);
+        CountDownLatch hedged = new CountDownLatch(1);
+        CountDownLatch answered = new CountDownLatch(1);
+        CountDownLatch hedgeAnswered = new CountDownLatch(1);
+        AtomicInteger attempts = new AtomicInteger();
+
+        String response = hedger.execute(() -> {
+            if (attempts.incrementAndGet() == 1) {
+                await(hedged);
+                return "slow";
+            }
+            hedged.countDown();
+            await(answered);
+            hedgeAnswered.countDown();
+            return "hedged";
+        });
+        answered.countDown();
+        await(hedgeAnswered);
+
+        assertThat(response).isEqualTo("slow");
+        assertThat(hedger.getHedges()).isEqualTo(1);
+        assertThat(hedger.getHedgeWins()).isZero();
+    }
+
+    @Test
+    void requestFailedWhileHedgedShouldBeAnsweredByTheHedge() {
+        RequestHedger hedger = new RequestHedger("details", 95, 0, 100);
+        warmUp(hedger, 1);
+        CountDownLatch hedged = new CountDownLatch(1);
+        AtomicInteger attempts = new AtomicInteger();
+
+        String response = hedger.execute(() -> {
+            if (attempts.incrementAndGet() == 1) {
+                await(hedged);
+                throw new ProcessingException("Connection reset");
+            }
+            hedged.countDown();
+            return "hedged";
+        });
+
+        assertThat(response).isEqualTo("hedged");
+        assertThat(hedger.getHedgeWins()).isEqualTo(1);
+    }
+
+    @Test
+    void failedRequestShouldNotBeHedged() {
+        RequestHedger hedger = new RequestHedger("details", 95, 0, 100);
+        warmUp(hedger, 10_000);
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThatThrownBy(() -> hedger.execute(() -> {
+            attempts.incrementAndGet();
+            throw new NotFoundException();
+        })).isInstanceOf(NotFoundException.class);
+        assertThat(attempts).hasValue(1);
+        assertThat(hedger.getHedges()).isZero();
+        assertThat(hedger.getHedgeWins()).isZero();
+    }
+
+    @Test
+    void extraLoadShouldBeCapped() {
+        RequestHedger hedger = new RequestHedger("details", 95, 0, 0);
+        warmUp(hedger, 1);
+        CountDownLatch never = new CountDownLatch(1);
+
+        assertThat(hedger.execute(() -> {
+            // Slower than the delay, and never hedged
+            try {
+                never.await(50, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "slow";
+        })).isEqualTo("slow");
+        assertThat(hedger.getHedges()).isZero();
+    }
+
+    @Test
+    void failureShouldBeReportedWhenAllRequestsFail() {
+        RequestHedger hedger = new RequestHedger("details", 95, 0, 100);
+        warmUp(hedger, 1);
+        CountDownLatch hedged = new CountDownLatch(1);
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThatThrownBy(() -> hedger.execute(() -> {
+            if (attempts.incrementAndGet() == 1) {
+                await(hedged);
+            } else {
+                hedged.countDown();
+            }
+            throw new NotFoundException();
+        })).isInstanceOf(NotFoundException.class);
+        assertThat(hedger.getHedges()).isEqualTo(1);
+        assertThat(hedger.getHedgeWins()).isZero();
+    }
+}
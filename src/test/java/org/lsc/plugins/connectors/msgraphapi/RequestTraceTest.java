@@ -0,0 +1,119 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.ws.rs.client.Client;
+import jakarta.ws.rs.client.ClientBuilder;
+import jakarta.ws.rs.client.WebTarget;
+import jakarta.ws.rs.core.Response;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+class RequestTraceTest {
+    private HttpServer server;
+    private Client client;
+    private volatile String clientRequestId;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            clientRequestId = exchange.getRequestHeaders().getFirst(RequestTrace.CLIENT_REQUEST_ID);
+            exchange.getResponseHeaders().add(RequestTrace.REQUEST_ID, "6e1c3cf1-0d3b-4d7e-9f1c-2a4a1e2d3c4b");
+            exchange.getResponseHeaders().add(RequestTrace.CLIENT_REQUEST_ID, clientRequestId);
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        server.start();
+        client = ClientBuilder.newClient();
+    }
+
+    @AfterEach
+    void tearDown() {
+        client.close();
+        server.stop(0);
+    }
+
+    @Test
+    void requestsShouldBeSentWithAClientRequestIdAndRecordTheRequestId() {
+        WebTarget target = client.target("http://localhost:" + server.getAddress().getPort()).path("users");
+        RequestTrace trace = RequestTrace.start(MsGraphApiEndpoint.DETAILS, target, 0);
+        try (Response response = trace.request().get()) {
+            trace.onResponse(response);
+        } finally {
+            trace.finish();
+        }
+
+        assertThat(clientRequestId).isEqualTo(trace.getClientRequestId());
+        assertThat(trace.getRequestId()).isEqualTo("6e1c3cf1-0d3b-4d7e-9f1c-2a4a1e2d3c4b");
+        assertThat(trace.toString()).contains(trace.getClientRequestId(), trace.getRequestId());
+    }
+
+    @Test
+    void clientRequestIdsShouldBeRandomVersion4Uuids() {
+        UUID first = UUID.fromString(RequestTrace.randomId());
+        UUID second = UUID.fromString(RequestTrace.randomId());
+
+        assertThat(first.version()).isEqualTo(4);
+        assertThat(first.variant()).isEqualTo(2);
+        assertThat(first).isNotEqualTo(second);
+    }
+
+    @Test
+    void slowRequestThresholdShouldDefaultToTenSecondsAndBeDisabledWithZero() {
+        assertThat(RequestTrace.slowRequestThreshold(null)).isEqualTo(TimeUnit.SECONDS.toNanos(10));
+        assertThat(RequestTrace.slowRequestThreshold(500)).isEqualTo(TimeUnit.MILLISECONDS.toNanos(500));
+        assertThat(RequestTrace.slowRequestThreshold(0)).isZero();
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.lsc.plugins.connectors.msgraphapi.beans.User;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+class SnapshotFileTest {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    @TempDir
+    Path directory;
+
+    private static List<Map<String, Object>> page(int first, int size) {
+        return IntStream.range(first, first + size)
+            .mapToObj(i -> ImmutableMap.<String, Object>of("id", "id-" + i, "mail", "user" + i + "@example.com",
+                "proxyAddresses", ImmutableList.of("smtp:user" + i + "@example.com")))
+            .collect(Collectors.toList());
+    }
+
+    @Test
+    void entriesShouldBeIndexedByIdAndPivot() throws IOException {
+        Path file = directory.resolve("users.ndjson");
+        Files.write(file, ImmutableList.of(
+            "{\"id\":\"id-0\",\"mail\":\"user0@example.com\",\"manager\":{\"id\":\"id-1\"}}",
+            "",
+            "{\"id\":\"id-1\",\"mail\":\"User1@example.com\",\"department\":\"Sales\"}",
+            "{\"id\":\"id-2\"}"), StandardCharsets.UTF_8);
+
+        try (SnapshotFile snapshot = SnapshotFile.open(file, "mail", OBJECT_MAPPER)) {
+            assertThat(snapshot.size()).isEqualTo(2);
+            assertThat(snapshot.getPivots()).extracting(User::getValue)
+                .containsExactly("user0@example.com", "User1@example.com");
+            assertThat(snapshot.getIdByPivot("user1@example.com")).contains("id-1");
+            assertThat(snapshot.getById("ID-1").get()).containsEntry("department", "Sales");
+            assertThat(snapshot.getById("id-2")).isEmpty();
+            assertThat(snapshot.getIdByPivot("user2@example.com")).isEmpty();
+        }
+    }
+
+    @Test
+    void exportPartsShouldBeReadInOrder() throws IOException {
+        NdjsonExporter exporter = new NdjsonExporter(OBJECT_MAPPER, directory.resolve("users"), 1, 2);
+        exporter.accept(page(0, 3));
+        exporter.close();
+
+        try (SnapshotFile snapshot = SnapshotFile.open(directory.resolve("users"), "mail", OBJECT_MAPPER)) {
+            assertThat(snapshot.getPivots()).extracting(User::getId).containsExactly("id-0", "id-1", "id-2");
+            assertThat(snapshot.getById("id-2").get()).containsEntry("proxyAddresses", ImmutableList.of("smtp:user2@example.com"));
+        }
+        try (SnapshotFile snapshot = SnapshotFile.open(directory.resolve("users-00001.ndjson.gz"), "mail", OBJECT_MAPPER)) {
+            assertThat(snapshot.getPivots()).extracting(User::getId).containsExactly("id-1");
+        }
+    }
+
+    @Test
+    void missingSnapshotShouldFail() {
+        assertThatThrownBy(() -> SnapshotFile.open(directory.resolve("users"), "mail", OBJECT_MAPPER))
+            .isInstanceOf(NoSuchFileException.class);
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import jakarta.ws.rs.ProcessingException;
+
+class SnapshotRegistryTest {
+    private static final long TTL = TimeUnit.MINUTES.toNanos(5);
+
+    // nanoTime() may be negative
+    private final AtomicLong now = new AtomicLong(-TimeUnit.HOURS.toNanos(1));
+    private final AtomicInteger loads = new AtomicInteger();
+    private final SnapshotRegistry<List<String>> registry = new SnapshotRegistry<>("enumeration", TTL, now::get);
+
+    private List<String> load() {
+        return List.of("user" + loads.incrementAndGet());
+    }
+
+    @Test
+    void sameQueryShouldReuseTheSnapshotWhileItIsFresh() {
+        assertThat(registry.get("tenant users?$select=id", this::load)).containsExactly("user1");
+        now.addAndGet(TTL - 1);
+
+        assertThat(registry.get("tenant users?$select=id", this::load)).containsExactly("user1");
+        assertThat(registry.getHits()).isEqualTo(1);
+        assertThat(registry.getMisses()).isEqualTo(1);
+    }
+
+    @Test
+    void otherQueryShouldTakeItsOwnSnapshot() {
+        registry.get("tenant users?$select=id", this::load);
+
+        assertThat(registry.get("tenant users?$select=mail", this::load)).containsExactly("user2");
+    }
+
+    @Test
+    void expiredSnapshotShouldBeTakenAgain() {
+        registry.get("tenant users?$select=id", this::load);
+        now.addAndGet(TTL);
+
+        assertThat(registry.get("tenant users?$select=id", this::load)).containsExactly("user2");
+    }
+
+    @Test
+    void failedQueryShouldNotBeKept() {
+        assertThatThrownBy(() -> registry.get("tenant users?$select=id", () -> {
+            throw new ProcessingException("Connection reset");
+        })).isInstanceOf(ProcessingException.class);
+
+        assertThat(registry.get("tenant users?$select=id", this::load)).containsExactly("user1");
+    }
+
+    @Test
+    void tasksAskingWhileTheSnapshotIsTakenShouldWaitForIt() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch loaded = new CountDownLatch(1);
+        CompletableFuture<List<String>> first = CompletableFuture.supplyAsync(() -> registry.get("tenant users?$select=id", () -> {
+            loading.countDown();
+            try {
+                loaded.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return load();
+        }));
+        loading.await();
+        CompletableFuture<List<String>> second = CompletableFuture.supplyAsync(() -> registry.get("tenant users?$select=id", this::load));
+        loaded.countDown();
+
+        assertThat(first.get(10, TimeUnit.SECONDS)).containsExactly("user1");
+        assertThat(second.get(10, TimeUnit.SECONDS)).containsExactly("user1");
+        assertThat(loads).hasValue(1);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class StringDeduplicatorTest {
+
+    @Test
+    void equalStringsShouldShareOneInstance() {
+        StringDeduplicator deduplicator = new StringDeduplicator(10);
+        String first = new String("Marketing");
+        String second = new String("Marketing");
+
+        assertThat(deduplicator.deduplicate(first)).isSameAs(first);
+        assertThat(deduplicator.deduplicate(second)).isSameAs(first);
+        assertThat(deduplicator.getHits()).isEqualTo(1);
+        assertThat(deduplicator.getMisses()).isEqualTo(1);
+    }
+
+    @Test
+    void stringsShouldBeReturnedAsIsOnceTheBoundIsReached() {
+        StringDeduplicator deduplicator = new StringDeduplicator(2);
+        deduplicator.deduplicate("Paris");
+        deduplicator.deduplicate("Lyon");
+        String third = new String("Nantes");
+
+        assertThat(deduplicator.deduplicate(third)).isSameAs(third);
+        assertThat(deduplicator.deduplicate(new String("Nantes"))).isNotSameAs(third);
+        assertThat(deduplicator.deduplicate(new String("Paris"))).isEqualTo("Paris");
+        assertThat(deduplicator.size()).isEqualTo(2);
+    }
+
+    @Test
+    void nullShouldBeReturnedAsIs() {
+        assertThat(new StringDeduplicator(1).deduplicate(null)).isNull();
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class SubscriptionManagerTest {
+    private static final String URL = "https://lsc.example.com/notifications";
+    private static final Instant NOW = Instant.parse("2026-10-19T10:00:00Z");
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    private static class FakeSubscriptions implements SubscriptionManager.Subscriptions {
+        private final Map<String, Map<String, Object>> subscriptions = new LinkedHashMap<>();
+        private final List<String> deleted = new ArrayList<>();
+        private int created;
+
+        @Override
+        public synchronized List<Map<String, Object>> list() {
+            return new ArrayList<>(subscriptions.values());
+        }
+
+        @Override
+        public synchronized Map<String, Object> create(Map<String, Object> subscription) {
+            Map<String, Object> result = new LinkedHashMap<>(subscription);
+            result.put("id", "s" + ++created);
+            subscriptions.put("s" + created, result);
+            return result;
+        }
+
+        @Override
+        public synchronized void delete(String id) {
+            subscriptions.remove(id);
+            deleted.add(id);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    private SubscriptionManager manager(FakeSubscriptions subscriptions) {
+        return manager(subscriptions, "state");
+    }
+
+    private SubscriptionManager manager(FakeSubscriptions subscriptions, String clientState) {
+        return new SubscriptionManager("tenant", subscriptions, URL, "users", "updated,deleted", clientState, Duration.ofMinutes(60),
+            scheduler, Clock.fixed(NOW, ZoneOffset.UTC));
+    }
+
+    private void awaitScheduler() throws Exception {
+        scheduler.submit(() -> { }).get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void startShouldReplaceThePreviousSubscriptionsOfTheURL() throws Exception {
+        FakeSubscriptions subscriptions = new FakeSubscriptions();
+        subscriptions.create(Map.of("notificationUrl", URL, "resource", "users", "clientState", "state"));
+        subscriptions.create(Map.of("notificationUrl", "https://other.example.com/", "resource", "users", "clientState", "state"));
+        // Another instance, such as another partition
+        subscriptions.create(Map.of("notificationUrl", URL, "resource", "users", "clientState", "other"));
+        SubscriptionManager manager = manager(subscriptions);
+
+        manager.start();
+        awaitScheduler();
+
+        assertThat(subscriptions.deleted).containsExactly("s1");
+        assertThat(subscriptions.subscriptions).containsOnlyKeys("s2", "s3", "s4");
+        assertThat(subscriptions.subscriptions.get("s4"))
+            .containsEntry("changeType", "updated,deleted")
+            .containsEntry("notificationUrl", URL)
+            .containsEntry("lifecycleNotificationUrl", URL)
+            .containsEntry("resource", "users")
+            .containsEntry("clientState", "state")
+            .containsEntry("expirationDateTime", "2026-10-19T11:00:00Z");
+        assertThat(manager.owns("s4")).isTrue();
+        assertThat(manager.owns("s1")).isFalse();
+    }
+
+    @Test
+    void lifecycleEventsShouldReplaceTheSubscriptionBeforeDeletingIt() throws Exception {
+        FakeSubscriptions subscriptions = new FakeSubscriptions();
+        SubscriptionManager manager = manager(subscriptions);
+        manager.start();
+        awaitScheduler();
+
+        manager.onLifecycleEvent("s1", "reauthorizationRequired");
+        awaitScheduler();
+
+        assertThat(subscriptions.subscriptions).containsOnlyKeys("s2");
+        assertThat(subscriptions.deleted).containsExactly("s1");
+        assertThat(manager.owns("s2")).isTrue();
+    }
+
+    @Test
+    void closeShouldDeleteTheSubscription() throws Exception {
+        FakeSubscriptions subscriptions = new FakeSubscriptions();
+        SubscriptionManager manager = manager(subscriptions);
+        manager.start();
+        awaitScheduler();
+
+        manager.close();
+
+        assertThat(subscriptions.subscriptions).isEmpty();
+    }
+
+    @Test
+    void restartWithoutConfiguredClientStateShouldReplaceThePreviousSubscriptions() throws Exception {
+        FakeSubscriptions subscriptions = new FakeSubscriptions();
+        String firstRun = ChangeNotifications.defaultClientState("client secret 0/2", URL, List.of("tenant"));
+        manager(subscriptions, firstRun).start();
+        awaitScheduler();
+        // Another partition of the same application
+        manager(subscriptions, ChangeNotifications.defaultClientState("client secret 1/2", URL, List.of("tenant"))).start();
+        awaitScheduler();
+
+        // The process restarts: the client state is derived again
+        String secondRun = ChangeNotifications.defaultClientState("client secret 0/2", URL, List.of("tenant"));
+        SubscriptionManager manager = manager(subscriptions, secondRun);
+        manager.start();
+        awaitScheduler();
+
+        assertThat(secondRun).isEqualTo(firstRun);
+        assertThat(subscriptions.deleted).containsExactly("s1");
+        assertThat(subscriptions.subscriptions).containsOnlyKeys("s2", "s3");
+        assertThat(manager.owns("s3")).isTrue();
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.TestFactory;
+import org.lsc.Configuration;
+import org.lsc.SimpleSynchronize;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.listener.InMemoryListenerConfig;
+
+/**
+ * Runs the users task of the msgraphapi-to-ldap sample, synchronization then clean,
+ * against a Graph stub and an in-memory LDAP directory, both in this JVM, and reports
+ * the entries synchronized per second, the HTTP requests per entry, the peak heap and
+ * the time spent in garbage collection.
+ *
+ * Run with {@code mvn test -Pperformance}. The numbers of users are read from the
+ * TEST_PERFORMANCE_USERS environment variable, comma separated, and the threads of the
+ * synchronization from TEST_PERFORMANCE_THREADS. What the plugin keeps between
+ * synchronizations, the connections and the shared strings, is dropped before each
+ * number of users so that each one starts cold.
+ */
+@Tag("performance")
+class SynchronizationPerformanceTest {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SynchronizationPerformanceTest.class);
+    private static final Path SAMPLE = Paths.get("sample", "msgraphapi-to-ldap", "lsc.xml");
+    private static final Path REPORT = Paths.get("target", "performance-report.csv");
+    private static final String BASE_DN = "dc=example,dc=org";
+    private static final String USERS_DN = "ou=users," + BASE_DN;
+    private static final String TASK = "users";
+    private static final String DEFAULT_USERS = "10000,100000";
+    private static final int DEFAULT_THREADS = 5;
+
+    private static GraphStub graph;
+    private static InMemoryDirectoryServer directory;
+    private static Path configuration;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        graph = new GraphStub();
+        InMemoryDirectoryServerConfig directoryConfiguration = new InMemoryDirectoryServerConfig(BASE_DN);
+        directoryConfiguration.addAdditionalBindCredentials("cn=admin," + BASE_DN, "admin");
+        directoryConfiguration.setListenerConfigs(InMemoryListenerConfig.createLDAPConfig("ldap", 0));
+        // The destination looks each entry up by its mail, which would scan the whole directory
+        directoryConfiguration.setEqualityIndexAttributes("mail");
+        directory = new InMemoryDirectoryServer(directoryConfiguration);
+        directory.startListening();
+
+        // The sample itself, pointed at the stubs
+        configuration = Files.createTempDirectory("msgraphapi-performance");
+        String sample = Files.readString(SAMPLE, StandardCharsets.UTF_8)
+            .replace("ldap://localhost/", "ldap://localhost:" + directory.getListenPort() + "/")
+            .replace("${MS_GRAPH_API_AUTHENTICATION_URL}", graph.getURL())
+            .replace("${MS_GRAPH_API_USERS_URL}", graph.getUsersURL())
+            .replace("${MS_GRAPH_API_SCOPE}", "https://graph.microsoft.com/.default")
+            .replace("${MS_GRAPH_API_CLIENT_ID}", "performance")
+            .replace("${MS_GRAPH_API_CLIENT_SECRET}", "performance")
+            .replace("${MS_GRAPH_API_TENANT}", GraphStub.TENANT);
+        Files.writeString(configuration.resolve("lsc.xml"), sample, StandardCharsets.UTF_8);
+        System.setProperty("LSC.PLUGINS.PACKAGEPATH", "org.lsc.plugins.connectors.msgraphapi.generated");
+        Configuration.setUp(configuration.toString(), false);
+    }
+
+    @AfterAll
+    static void tearDown() throws Exception {
+        if (directory != null) {
+            directory.shutDown(true);
+        }
+        if (graph != null) {
+            graph.close();
+        }
+        if (configuration != null) {
+            Files.deleteIfExists(configuration.resolve("lsc.xml"));
+            Files.deleteIfExists(configuration);
+        }
+    }
+
+    @TestFactory
+    Stream<DynamicTest> synchronizeUsers() {
+        String users = Optional.ofNullable(System.getenv("TEST_PERFORMANCE_USERS")).orElse(DEFAULT_USERS);
+        int threads = Optional.ofNullable(System.getenv("TEST_PERFORMANCE_THREADS")).map(Integer::parseInt).orElse(DEFAULT_THREADS);
+        return Arrays.stream(users.split(","))
+            .map(String::trim)
+            .map(Integer::parseInt)
+            .map(count -> DynamicTest.dynamicTest(count + " users", () -> synchronize(count, threads)));
+    }
+
+    private void synchronize(int users, int threads) throws Exception {
+        directory.clear();
+        directory.add("dn: " + BASE_DN, "objectClass: top", "objectClass: domain", "dc: example");
+        directory.add("dn: " + USERS_DN, "objectClass: top", "objectClass: organizationalUnit", "ou: users");
+        graph.setUsers(users);
+        MsGraphApiConnection.releaseAll();
+        StringDeduplicator.KEYS.clear();
+        StringDeduplicator.VALUES.clear();
+        System.gc();
+        graph.resetRequests();
+        List<MemoryPoolMXBean> heap = ManagementFactory.getMemoryPoolMXBeans().stream()
+            .filter(pool -> pool.getType() == MemoryType.HEAP)
+            .toList();
+        heap.forEach(MemoryPoolMXBean::resetPeakUsage);
+        long gcTime = gcTime();
+        long start = System.nanoTime();
+
+        SimpleSynchronize synchronize = new SimpleSynchronize();
+        synchronize.setThreads(threads);
+        boolean success = synchronize.launch(Collections.emptyList(), List.of(TASK), List.of(TASK));
+
+        long duration = System.nanoTime() - start;
+        // The peaks of the pools may not be simultaneous: their sum is an upper bound
+        long peakHeap = heap.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+        long gcDuration = gcTime() - gcTime;
+        double entriesPerSecond = users / (duration / (double) TimeUnit.SECONDS.toNanos(1));
+        double requestsPerEntry = graph.getRequests() / (double) users;
+        LOGGER.info(String.format("%d users, %d threads: %.0f entries/s, %.2f HTTP requests/entry, %d MiB peak heap, %d ms GC in %d ms",
+            users, threads, entriesPerSecond, requestsPerEntry, peakHeap >> 20, gcDuration, TimeUnit.NANOSECONDS.toMillis(duration)));
+        report(users, threads, entriesPerSecond, requestsPerEntry, peakHeap, gcDuration, duration);
+
+        assertThat(success).isTrue();
+        // The users and their parent
+        assertThat(directory.countEntriesBelow(USERS_DN)).isEqualTo(users + 1);
+    }
+
+    private static long gcTime() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+            .mapToLong(GarbageCollectorMXBean::getCollectionTime)
+            .filter(time -> time > 0)
+            .sum();
+    }
+
+    private static void report(int users, int threads, double entriesPerSecond, double requestsPerEntry, long peakHeap, long gcDuration, long duration) throws Exception {
+        Files.createDirectories(REPORT.getParent());
+        if (!Files.exists(REPORT)) {
+            Files.writeString(REPORT, "users,threads,entriesPerSecond,requestsPerEntry,peakHeapBytes,gcMillis,durationMillis\n", StandardCharsets.UTF_8);
+        }
+        Files.writeString(REPORT, String.format(Locale.ROOT, "%d,%d,%.1f,%.3f,%d,%d,%d%n",
+            users, threads, entriesPerSecond, requestsPerEntry, peakHeap, gcDuration, TimeUnit.NANOSECONDS.toMillis(duration)),
+            StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+
+import jakarta.ws.rs.client.Client;
+import jakarta.ws.rs.client.ClientBuilder;
+import jakarta.ws.rs.client.WebTarget;
+import jakarta.ws.rs.core.GenericType;
+import jakarta.ws.rs.core.Response;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.glassfish.jersey.jackson.JacksonFeature;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.google.common.base.Strings;
+import com.sun.net.httpserver.HttpServer;
+
+class TrafficCounterTest {
+    private static final String BODY = "{\"proxyAddresses\":\"" + Strings.repeat("smtp:user@example.com;", 200) + "\"}";
+
+    private HttpServer server;
+    private TrafficCounter trafficCounter;
+    private Client client;
+    private volatile String acceptEncoding;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            byte[] body = BODY.getBytes(StandardCharsets.UTF_8);
+            if ("gzip".equals(acceptEncoding)) {
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                    gzip.write(body);
+                }
+                body = compressed.toByteArray();
+                exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            }
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        trafficCounter = new TrafficCounter();
+        client = ClientBuilder.newClient().register(JacksonFeature.class).register(trafficCounter);
+    }
+
+    @AfterEach
+    void tearDown() {
+        client.close();
+        server.stop(0);
+    }
+
+    @Test
+    void responsesShouldBeCompressedAndCountedPerEndpoint() {
+        Map<String, Object> user = client.target("http://localhost:" + server.getAddress().getPort())
+            .request()
+            .property(MsGraphApiEndpoint.PROPERTY, MsGraphApiEndpoint.DETAILS)
+            .get(new GenericType<Map<String, Object>>() {});
+
+        assertThat(acceptEncoding).isEqualTo("gzip");
+        assertThat(user.get("proxyAddresses").toString()).startsWith("smtp:user@example.com;");
+        assertThat(trafficCounter.getResponses(MsGraphApiEndpoint.DETAILS)).isEqualTo(1);
+        assertThat(trafficCounter.getDecodedBytes(MsGraphApiEndpoint.DETAILS)).isEqualTo(BODY.length());
+        assertThat(trafficCounter.getWireBytes(MsGraphApiEndpoint.DETAILS)).isPositive().isLessThan(BODY.length() / 10);
+        assertThat(trafficCounter.getResponses(MsGraphApiEndpoint.LIST)).isZero();
+    }
+
+    @Test
+    void bytesReceivedShouldBeRecordedInTheRequestEvent() throws IOException {
+        Path dump = Files.createTempFile("msgraphapi", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(GraphRequestEvent.class);
+            recording.start();
+            WebTarget target = client.target("http://localhost:" + server.getAddress().getPort()).path("users");
+            GraphRequestEvent event = GraphRequestEvent.start(MsGraphApiEndpoint.DETAILS, target);
+            Response response = target.request()
+                .property(MsGraphApiEndpoint.PROPERTY, MsGraphApiEndpoint.DETAILS)
+                .property(GraphRequestEvent.PROPERTY, event)
+                .get();
+            event.setStatus(response.getStatus());
+            response.readEntity(String.class);
+            response.close();
+            event.commit();
+            recording.stop();
+            recording.dump(dump);
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(dump).stream()
+                .filter(recorded -> recorded.getEventType().getName().equals("org.lsc.msgraphapi.GraphRequest"))
+                .collect(Collectors.toList());
+            assertThat(events).hasSize(1);
+            assertThat(events.get(0).getString("endpoint")).isEqualTo("DETAILS");
+            assertThat(events.get(0).getString("path")).isEqualTo("/users");
+            assertThat(events.get(0).getInt("status")).isEqualTo(200);
+            assertThat(events.get(0).getLong("bytes")).isEqualTo(trafficCounter.getWireBytes(MsGraphApiEndpoint.DETAILS));
+            assertThat(events.get(0).getBoolean("throttled")).isFalse();
+        } finally {
+            Files.deleteIfExists(dump);
+        }
+    }
+
+    @Test
+    void decompressedBytesOfAResponseShouldBeAddedToItsCounter() {
+        LongAdder responseBytes = new LongAdder();
+        Response response = client.target("http://localhost:" + server.getAddress().getPort())
+            .request()
+            .property(MsGraphApiEndpoint.PROPERTY, MsGraphApiEndpoint.LIST)
+            .property(TrafficCounter.RESPONSE_BYTES, responseBytes)
+            .get();
+        response.readEntity(String.class);
+        response.close();
+
+        // The length of a compressed response is not its payload
+        assertThat(response.getLength()).isNotEqualTo(BODY.length());
+        assertThat(responseBytes.sum()).isEqualTo(BODY.length());
+    }
+
+    @Test
+    void untaggedResponsesShouldBeCountedAsOther() {
+        client.target("http://localhost:" + server.getAddress().getPort())
+            .request()
+            .get(String.class);
+
+        assertThat(trafficCounter.getResponses(MsGraphApiEndpoint.OTHER)).isEqualTo(1);
+        assertThat(trafficCounter.getDecodedBytes(MsGraphApiEndpoint.OTHER)).isEqualTo(BODY.length());
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jakarta.ws.rs.NotFoundException;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.lsc.plugins.connectors.msgraphapi.generated.CacheType;
+
+import com.google.common.collect.ImmutableMap;
+
+class UserDetailsCacheTest {
+    private static final long TTL = 1000;
+
+    private AtomicLong clock;
+    private AtomicInteger loads;
+
+    @BeforeEach
+    void setup() {
+        clock = new AtomicLong();
+        loads = new AtomicInteger();
+    }
+
+    private Map<String, Object> load(String id) {
+        loads.incrementAndGet();
+        if (id.equals("missing")) {
+            throw new NotFoundException(id + " cannot be found");
+        }
+        return ImmutableMap.of("id", id, "displayName", "User " + id);
+    }
+
+    @Test
+    void getShouldLoadOnlyOnce() {
+        UserDetailsCache testee = new UserDetailsCache(10, 0, TTL, clock::get);
+
+        testee.get("1", this::load);
+        assertThat(testee.get("1", this::load)).containsEntry("id", "1");
+
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(testee.getHits()).isEqualTo(1);
+        assertThat(testee.getMisses()).isEqualTo(1);
+    }
+
+    @Test
+    void detailsInvalidatedDuringTheirLoadShouldNotBeCached() {
+        UserDetailsCache testee = new UserDetailsCache(10, 0, TTL, clock::get);
+
+        Map<String, Object> details = testee.get("1", id -> {
+            // A change notification received while the previous details are being read
+            testee.invalidate(id);
+            return load(id);
+        });
+
+        assertThat(details).containsEntry("id", "1");
+        assertThat(testee.getIfPresent("1")).isEmpty();
+        testee.get("1", this::load);
+        testee.get("1", this::load);
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    void getShouldLoadAgainWhenExpired() {
+        UserDetailsCache testee = new UserDetailsCache(10, 0, TTL, clock::get);
+
+        testee.get("1", this::load);
+        clock.addAndGet(TTL);
+        testee.get("1", this::load);
+
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    void putShouldEvictLeastRecentlyUsedWhenTooManyEntries() {
+        UserDetailsCache testee = new UserDetailsCache(2, 0, TTL, clock::get);
+
+        testee.get("1", this::load);
+        testee.get("2", this::load);
+        testee.get("1", this::load);
+        testee.get("3", this::load);
+
+        assertThat(testee.getIfPresent("1")).isPresent();
+        assertThat(testee.getIfPresent("2")).isEmpty();
+        assertThat(testee.getEvictions()).isEqualTo(1);
+    }
+
+    @Test
+    void putShouldEvictWhenTooManyBytes() {
+        long userSize = UserDetailsCache.estimateSize("1") + UserDetailsCache.estimateSize(load("1"));
+        UserDetailsCache testee = new UserDetailsCache(0, 2 * userSize, TTL, clock::get);
+
+        testee.get("1", this::load);
+        testee.get("2", this::load);
+        testee.get("3", this::load);
+
+        assertThat(testee.size()).isEqualTo(2);
+        assertThat(testee.getEstimatedBytes()).isLessThanOrEqualTo(2 * userSize);
+    }
+
+    @Test
+    void getShouldNotCacheFailures() {
+        UserDetailsCache testee = new UserDetailsCache(10, 0, TTL, clock::get);
+
+        assertThatThrownBy(() -> testee.get("missing", this::load)).isInstanceOf(NotFoundException.class);
+        assertThatThrownBy(() -> testee.get("missing", this::load)).isInstanceOf(NotFoundException.class);
+
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    void fromConfigurationShouldBeEmptyWhenNotConfigured() {
+        assertThat(UserDetailsCache.fromConfiguration(null)).isEmpty();
+    }
+
+    @Test
+    void fromConfigurationShouldDefaultToAMaximumNumberOfEntries() {
+        UserDetailsCache testee = UserDetailsCache.fromConfiguration(new CacheType()).get();
+
+        for (int i = 0; i < UserDetailsCache.DEFAULT_MAX_ENTRIES + 1; i++) {
+            testee.put(String.valueOf(i), ImmutableMap.of());
+        }
+        assertThat(testee.size()).isEqualTo(UserDetailsCache.DEFAULT_MAX_ENTRIES);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ * Copyright (c) 2008 - 2019 LSC Project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.msgraphapi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+import org.lsc.exception.LscServiceConfigurationException;
+import org.lsc.plugins.connectors.msgraphapi.generated.MsGraphApiUsersService;
+
+class UsersPartitionTest {
+    private static final int COUNT = 4;
+
+    @Test
+    void eachIdShouldBelongToExactlyOnePartition() {
+        List<UsersPartition> partitions = IntStream.range(0, COUNT)
+            .mapToObj(index -> new UsersPartition(index, COUNT))
+            .collect(Collectors.toList());
+
+        for (int i = 0; i < 1000; i++) {
+            String id = UUID.randomUUID().toString();
+            assertThat(partitions.stream().filter(partition -> partition.contains(id))).hasSize(1);
+        }
+    }
+
+    @Test
+    void partitionOfShouldBeStable() {
+        assertThat(UsersPartition.partitionOf("4c9d8a4e-6f2c-4b5e-9b4a-1f0f4e0c2d3a", COUNT))
+            .isEqualTo(UsersPartition.partitionOf("4C9D8A4E-6F2C-4B5E-9B4A-1F0F4E0C2D3A", COUNT))
+            .isEqualTo(0);
+    }
+
+    @Test
+    void partitionsShouldBeBalanced() {
+        int[] sizes = new int[COUNT];
+        for (int i = 0; i < 10000; i++) {
+            sizes[UsersPartition.partitionOf(UUID.randomUUID().toString(), COUNT)]++;
+        }
+        for (int size : sizes) {
+            assertThat(size).isBetween(2000, 3000);
+        }
+    }
+
+    @Test
+    void fromConfigurationShouldBeEmptyWhenNotConfigured() throws Exception {
+        assertThat(UsersPartition.fromConfiguration(new MsGraphApiUsersService())).isEmpty();
+    }
+
+    @Test
+    void fromConfigurationShouldBeEmptyWhenTheCountIsNotPositive() throws Exception {
+        MsGraphApiUsersService configuration = new MsGraphApiUsersService();
+        configuration.setPartitionIndex(0);
+        configuration.setPartitionCount(0);
+
+        assertThat(UsersPartition.fromConfiguration(configuration)).isEmpty();
+    }
+
+    @Test
+    void fromConfigurationShouldRejectAnIndexOutOfTheCount() {
+        MsGraphApiUsersService configuration = new MsGraphApiUsersService();
+        configuration.setPartitionIndex(4);
+        configuration.setPartitionCount(4);
+
+        assertThatThrownBy(() -> UsersPartition.fromConfiguration(configuration)).isInstanceOf(LscServiceConfigurationException.class);
+    }
+
+    @Test
+    void fromConfigurationShouldRejectAMissingCount() {
+        MsGraphApiUsersService configuration = new MsGraphApiUsersService();
+        configuration.setPartitionIndex(1);
+
+        assertThatThrownBy(() -> UsersPartition.fromConfiguration(configuration)).isInstanceOf(LscServiceConfigurationException.class);
+    }
+}